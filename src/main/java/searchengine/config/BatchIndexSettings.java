@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "batch-index-settings")
+public class BatchIndexSettings {
+    // Количество страниц, загружаемых одновременно по всем заданиям
+    private int parallelism = 8;
+    private int maxUrls = 10000;
+    // Сколько хранить сведения о завершённом задании
+    private long jobTtlMs = 3600000;
+}
@@ -0,0 +1,24 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "cluster-settings")
+public class ClusterSettings {
+    // В режиме кластера сайты раздаются узлам через таблицу crawl_lease
+    private boolean enabled = false;
+    // Узел берёт аренды и обходит сайты; при false узел только раздаёт задания и отвечает на поиск
+    private boolean worker = true;
+    // Имя узла; если не задано - host:pid
+    private String nodeId;
+    private int maxLeases = 2;
+    private int maxAttempts = 3;
+    private long leaseTtlMs = 60000;
+    private long heartbeatIntervalMs = 15000;
+    private long pollIntervalMs = 5000;
+}
@@ -5,6 +5,8 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Getter
 @Setter
 @Component
@@ -12,4 +14,9 @@ import org.springframework.stereotype.Component;
 public class ConnectionSettings {
     private String userAgent;
     private String referer;
+    // Таймауты и ограничения загрузчика; таймауты можно переопределить для сайта
+    private int connectTimeoutMs = 10000;
+    private int readTimeoutMs = 30000;
+    private int maxBodyKb = 5120;
+    private List<String> contentTypes = List.of("text/html", "application/xhtml+xml");
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawl-settings")
+public class CrawlSettings {
+    // Отбрасывать query-строку целиком; можно переопределить для сайта
+    private boolean dropQuery = false;
+    private List<String> ignoredQueryParams = List.of("utm_*", "gclid", "yclid", "fbclid", "_openstat", "from");
+    private boolean canonicalLinks = true;
+    // Поиск почти-дубликатов по SimHash; можно переопределить для сайта
+    private boolean nearDuplicates = true;
+    private int nearDuplicateDistance = 3;
+    private int shingleSize = 3;
+}
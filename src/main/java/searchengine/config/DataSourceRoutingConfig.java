@@ -0,0 +1,62 @@
+package searchengine.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import searchengine.utils.EngineMetrics;
+import searchengine.utils.ReadWriteRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Источники данных при включённой маршрутизации чтения: основная база из spring.datasource
+ * (с настройками spring.datasource.hikari) и пулы реплик из datasource-routing.replicas.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource-routing", name = "enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(HikariDataSource primaryDataSource, DataSourceRoutingSettings settings,
+                                                       DataSourceProperties properties, EngineMetrics metrics) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < settings.getReplicas().size(); i++) {
+            ReplicaDataSource replica = settings.getReplicas().get(i);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + i);
+            dataSource.setJdbcUrl(replica.getUrl());
+            // Учётные данные реплики по умолчанию совпадают с основной базой
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : properties.determineUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : properties.determinePassword());
+            dataSource.setMaximumPoolSize(settings.getReplicaPoolSize());
+            dataSource.setReadOnly(true);
+            // Недоступная при старте реплика не мешает запуску: её исключит проверка отставания
+            dataSource.setInitializationFailTimeout(-1);
+            // Ожидание соединения с реплики не дольше интервала проверки, чтобы проверка не задерживала планировщик
+            dataSource.setConnectionTimeout(Math.max(250, settings.getLagCheckIntervalMs()));
+            replicas.put(dataSource.getPoolName(), dataSource);
+        }
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicas, settings.getMaxLagSeconds(), metrics);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "datasource-routing")
+public class DataSourceRoutingSettings {
+    // Чтение поиска и статистики с реплик; запись и обход всегда идут в основную базу spring.datasource
+    private boolean enabled = false;
+    private List<ReplicaDataSource> replicas = new ArrayList<>();
+    // Реплика с отставанием больше maxLagSeconds или без репликации исключается до следующей проверки
+    private long maxLagSeconds = 5;
+    private long lagCheckIntervalMs = 2000;
+    private int replicaPoolSize = 10;
+}
@@ -0,0 +1,25 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "fetch-settings")
+public class FetchSettings {
+    // Скорость запросов к хосту, запросов в секунду: растёт на здоровых ответах и падает на 429/503 и медленных ответах
+    private double initialRate = 5;
+    private double minRate = 0.2;
+    private double maxRate = 20;
+    private double rateIncrease = 0.5;
+    private double rateDecreaseFactor = 0.5;
+    private long slowResponseMs = 5000;
+    // Повторы с экспоненциальной задержкой и случайным разбросом
+    private int maxRetries = 3;
+    private long backoffBaseMs = 500;
+    private long backoffMaxMs = 30000;
+    private long maxRetryAfterMs = 120000;
+}
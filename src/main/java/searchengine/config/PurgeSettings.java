@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "purge-settings")
+public class PurgeSettings {
+    // Страниц за одну транзакцию удаления вместе с их записями index_search
+    private int pageChunk = 200;
+    private int lemmaChunk = 5000;
+    // Частей за один запуск очистки: запуск не занимает поток планировщика надолго
+    private int chunksPerRun = 20;
+    private long intervalMs = 1000;
+}
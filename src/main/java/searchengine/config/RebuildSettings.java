@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "rebuild-settings")
+public class RebuildSettings {
+    // Потоков лемматизации; 0 - по числу ядер
+    private int parallelism = 0;
+    // Сколько прочитанных страниц может ждать лемматизации
+    private int queueCapacity = 256;
+    // Сколько хранить сведения о завершённом задании
+    private long jobTtlMs = 3600000;
+}
@@ -0,0 +1,12 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class ReplicaDataSource {
+    private String url;
+    private String username;
+    private String password;
+}
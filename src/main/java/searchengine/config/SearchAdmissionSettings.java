@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-admission-settings")
+public class SearchAdmissionSettings {
+    // Одновременных запросов меньше размера пула соединений БД, чтобы остальным запросам API хватало соединений
+    private int maxConcurrent = 6;
+    private int queueCapacity = 32;
+    // Срок запроса от поступления до ответа, включая ожидание в очереди
+    private long deadlineMs = 5000;
+    private int retryAfterSeconds = 2;
+}
@@ -0,0 +1,31 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    private int prefixMinLength = 3;
+    private int prefixMaxExpansions = 10;
+    private int fuzzyMaxExpansions = 3;
+    private int suggestLimit = 10;
+    private int suggestQueryWeight = 10;
+    // Вес запросов в подсказках умножается на этот коэффициент раз в suggestDecayIntervalMs
+    private double suggestQueryDecay = 0.5;
+    private long suggestDecayIntervalMs = 3600000;
+    private double frequentLemmaRatio = 0.8;
+    private long pageCountCacheMs = 60000;
+    // Длина сниппета в символах
+    private int snippetLength = 240;
+    // Журнал медленных запросов с профилем; 0 - выключен. Пишется только доля sampleRate медленных запросов
+    private long slowQueryMs = 0;
+    private double slowQuerySampleRate = 0.1;
+    // Число сегментов пути в разделах сайта для подсчёта результатов; 0 - только по сайтам
+    private int pathFacetDepth = 0;
+    private int pathFacetLimit = 10;
+}
@@ -0,0 +1,20 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "seed-settings")
+public class SeedSettings {
+    private boolean respectRobots = true;
+    private boolean useSitemaps = true;
+    // Сколько самых свежих адресов из карт сайта ставить в очередь обхода
+    private int maxSitemapUrls = 50000;
+    // Допустимая вложенность индексов карт сайта
+    private int maxSitemapDepth = 2;
+    private int timeoutMs = 30000;
+}
@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "segment-settings")
+public class SegmentSettings {
+    private boolean enabled = true;
+    private String directory = "index";
+    private int flushPages = 500;
+    private int mergeFactor = 4;
+    private long maxSegmentMb = 1024;
+}
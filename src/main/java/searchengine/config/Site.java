@@ -9,4 +9,9 @@ import java.net.URL;
 public class Site {
     private URL url;
     private String name;
+    // Настройки обхода сайта; если не заданы, действуют значения из crawl-settings
+    private Boolean dropQuery;
+    private Boolean nearDuplicates;
+    private Integer connectTimeoutMs;
+    private Integer readTimeoutMs;
 }
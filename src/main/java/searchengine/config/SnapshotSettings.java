@@ -0,0 +1,22 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "snapshot-settings")
+public class SnapshotSettings {
+    // Каталог снимков; имя файла задаётся в запросе
+    private String directory = "snapshots";
+    private int blockSizeKb = 1024;
+    // Уровень сжатия Deflater от 1 (быстрее) до 9 (компактнее)
+    private int compressionLevel = 1;
+    // Страниц в одном insert при импорте
+    private int importBatchPages = 200;
+    // Сколько хранить сведения о завершённом задании
+    private long jobTtlMs = 3600000;
+}
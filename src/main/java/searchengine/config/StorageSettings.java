@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "storage-settings")
+public class StorageSettings {
+    // Хранилище лемм и постингов: jpa или file
+    private String engine = "jpa";
+    private String directory = "storage";
+    // Журнал страниц переписывается при открытии, если устаревшие записи занимают больше этой доли
+    private double compactGarbageRatio = 0.5;
+}
@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "wal-settings")
+public class WalSettings {
+    private String directory = "wal";
+    private int batchSize = 200;
+    private long commitIntervalMs = 500;
+    private int queueCapacity = 5000;
+    private int maxApplyAttempts = 5;
+}
@@ -2,36 +2,59 @@ package searchengine.controllers;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.dto.indexing.IndexPagesRequest;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.responses.IndexJobResponse;
 import searchengine.responses.NotOkResponse;
 import searchengine.responses.OkResponse;
+import searchengine.services.BatchIndexingService;
+import searchengine.services.IndexRebuildService;
+import searchengine.services.IndexingProgressService;
 import searchengine.services.IndexingService;
-import searchengine.services.SearchService;
+import searchengine.services.SearchAdmissionService;
+import searchengine.services.SnapshotService;
 import searchengine.services.StatisticsService;
+import searchengine.services.SuggestService;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
 public class ApiController {
 
-    private final SearchService searchService;
+    private final SearchAdmissionService searchAdmissionService;
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
+    private final SuggestService suggestService;
+    private final IndexingProgressService indexingProgressService;
+    private final BatchIndexingService batchIndexingService;
+    private final IndexRebuildService indexRebuildService;
+    private final SnapshotService snapshotService;
 
     @GetMapping("/statistics")
     public ResponseEntity<StatisticsResponse> statistics() throws MalformedURLException {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
 
+    @GetMapping(value = "/statistics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter statisticsStream() {
+        return indexingProgressService.subscribe();
+    }
+
     @GetMapping("/startIndexing")
     public ResponseEntity startIndexing() {
         if (indexingService.isIndexingInProgress()) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse("Индексация уже запущена"));
+        } else if (isExclusiveJobRunning()) {
+            return exclusiveJobConflict();
         } else {
             indexingService.startIndexing();
             return ResponseEntity.status(HttpStatus.OK).body(new OkResponse());
@@ -45,6 +68,9 @@ public class ApiController {
 
     @PostMapping("/indexPage")
     public ResponseEntity indexPage(@RequestParam(name = "url") String url) {
+        if (isExclusiveJobRunning()) {
+            return exclusiveJobConflict();
+        }
         try {
             indexingService.indexPage(url);
             return ResponseEntity.status(HttpStatus.OK).body(new OkResponse());
@@ -59,13 +85,123 @@ public class ApiController {
         }
     }
 
+    @PostMapping("/indexPages")
+    public ResponseEntity indexPages(@RequestBody IndexPagesRequest request) {
+        if (indexingService.isIndexingInProgress()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse("Индексация уже запущена"));
+        }
+        if (isExclusiveJobRunning()) {
+            return exclusiveJobConflict();
+        }
+        try {
+            return ResponseEntity.ok(batchIndexingService.startJob(request));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new NotOkResponse(ex.getMessage()));
+        }
+    }
+
+    @GetMapping("/indexPages/{jobId}")
+    public ResponseEntity indexPagesJob(@PathVariable String jobId) {
+        IndexJobResponse job = batchIndexingService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new NotOkResponse("Задание не найдено"));
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    @GetMapping("/rebuildIndex")
+    public ResponseEntity rebuildIndex() {
+        if (indexingService.isIndexingInProgress()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse("Индексация уже запущена"));
+        }
+        if (snapshotService.isSnapshotInProgress()) {
+            return exclusiveJobConflict();
+        }
+        try {
+            return ResponseEntity.ok(indexRebuildService.startJob());
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse(ex.getMessage()));
+        }
+    }
+
+    @GetMapping("/rebuildIndex/{jobId}")
+    public ResponseEntity rebuildIndexJob(@PathVariable String jobId) {
+        IndexJobResponse job = indexRebuildService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new NotOkResponse("Задание не найдено"));
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    @PostMapping("/snapshot/export")
+    public ResponseEntity exportSnapshot(@RequestParam(name = "name") String name) {
+        if (indexingService.isIndexingInProgress()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse("Индексация уже запущена"));
+        }
+        if (isExclusiveJobRunning()) {
+            return exclusiveJobConflict();
+        }
+        return startSnapshotJob(() -> snapshotService.startExport(name));
+    }
+
+    @PostMapping("/snapshot/import")
+    public ResponseEntity importSnapshot(@RequestParam(name = "name") String name) {
+        if (indexingService.isIndexingInProgress()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse("Индексация уже запущена"));
+        }
+        if (isExclusiveJobRunning()) {
+            return exclusiveJobConflict();
+        }
+        return startSnapshotJob(() -> snapshotService.startImport(name));
+    }
+
+    @GetMapping("/snapshot/{jobId}")
+    public ResponseEntity snapshotJob(@PathVariable String jobId) {
+        IndexJobResponse job = snapshotService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new NotOkResponse("Задание не найдено"));
+        }
+        return ResponseEntity.ok(job);
+    }
+
     @GetMapping("/search")
-    public ResponseEntity<Object> search(
+    public CompletableFuture<ResponseEntity<Object>> search(
             @RequestParam(name = "query", required = false, defaultValue = "") String query,
             @RequestParam(name = "site", required = false, defaultValue = "") String site,
             @RequestParam(name = "offset", required = false, defaultValue = "0") Integer offset,
-            @RequestParam(name = "limit", required = false, defaultValue = "10") Integer limit
-    ) throws IOException {
-        return searchService.search(query, site, offset, limit);
+            @RequestParam(name = "limit", required = false, defaultValue = "10") Integer limit,
+            @RequestParam(name = "profile", required = false, defaultValue = "false") boolean profile
+    ) {
+        return searchAdmissionService.search(query, site, offset, limit, profile);
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<Object> suggest(
+            @RequestParam(name = "prefix", required = false, defaultValue = "") String prefix,
+            @RequestParam(name = "site", required = false, defaultValue = "") String site,
+            @RequestParam(name = "limit", required = false) Integer limit
+    ) {
+        return suggestService.suggest(prefix, site, limit);
+    }
+
+    private ResponseEntity startSnapshotJob(Supplier<IndexJobResponse> start) {
+        try {
+            return ResponseEntity.ok(start.get());
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new NotOkResponse(ex.getMessage()));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse(ex.getMessage()));
+        }
+    }
+
+    // Перестроение индекса заменяет его целиком, снимок выгружается и загружается целиком: с индексацией они не совместимы
+    private boolean isExclusiveJobRunning() {
+        return indexRebuildService.isRebuildInProgress() || snapshotService.isSnapshotInProgress();
+    }
+
+    private ResponseEntity exclusiveJobConflict() {
+        String message = indexRebuildService.isRebuildInProgress()
+                ? "Выполняется перестроение индекса" : "Выполняется выгрузка или загрузка снимка индекса";
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(new NotOkResponse(message));
     }
 }
\ No newline at end of file
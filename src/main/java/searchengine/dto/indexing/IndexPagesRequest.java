@@ -0,0 +1,11 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class IndexPagesRequest {
+    private List<String> urls;
+    private String sitemap;
+}
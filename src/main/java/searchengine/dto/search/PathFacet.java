@@ -0,0 +1,13 @@
+package searchengine.dto.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class PathFacet {
+    private String prefix;
+    private int count;
+}
@@ -0,0 +1,48 @@
+package searchengine.dto.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Профиль выполнения поискового запроса: время этапов, частоты лемм, размеры списков постингов и число запросов к БД
+@Data
+public class SearchProfile {
+    private String query;
+    private double totalMs;
+    private Map<String, Double> stagesMs = new LinkedHashMap<>();
+    private List<LemmaStat> lemmas = new ArrayList<>();
+    private List<IntersectionStep> intersections = new ArrayList<>();
+    private int candidatePages;
+    private int pagesParsed;
+    private long dbQueries;
+
+    // Метод фиксации времени этапа; возвращает начало следующего этапа
+    public long stage(String name, long stageStartNanos) {
+        long now = System.nanoTime();
+        stagesMs.merge(name, (now - stageStartNanos) / 1_000_000.0, Double::sum);
+        return now;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class LemmaStat {
+        private String lemma;
+        private int siteId;
+        private int frequency;
+        private long postings;
+    }
+
+    // Шаг пересечения: страниц до шага, постингов терма и страниц после пересечения
+    @Data
+    @AllArgsConstructor
+    public static class IntersectionStep {
+        private List<String> lemmas;
+        private int pagesBefore;
+        private long postings;
+        private int pagesAfter;
+    }
+}
@@ -0,0 +1,20 @@
+package searchengine.dto.search;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+// Число найденных страниц сайта и, если включено, его разделов
+@Getter
+@Setter
+@AllArgsConstructor
+public class SiteFacet {
+    private String site;
+    private String siteName;
+    private int count;
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<PathFacet> paths;
+}
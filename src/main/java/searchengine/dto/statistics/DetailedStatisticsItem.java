@@ -2,6 +2,8 @@ package searchengine.dto.statistics;
 
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 public class DetailedStatisticsItem {
     private String url;
@@ -11,4 +13,8 @@ public class DetailedStatisticsItem {
     private String error;
     private int pages;
     private int lemmas;
+    private long errors;
+    private long bytesFetched;
+    private Map<Integer, Long> errorsByCode;
+    private Map<String, Long> skippedByReason;
 }
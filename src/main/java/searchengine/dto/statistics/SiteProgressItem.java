@@ -0,0 +1,17 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class SiteProgressItem {
+    private int siteId;
+    private String url;
+    private String name;
+    private String status;
+    private long pages;
+    private int queued;
+    private long errors;
+    private double errorRate;
+    private double pagesPerSecond;
+    private long statusTime;
+}
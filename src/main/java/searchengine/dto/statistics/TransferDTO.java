@@ -10,6 +10,7 @@ import searchengine.model.PageEntity;
 @NoArgsConstructor
 public class TransferDTO {
     private Integer pageId;
+    private int siteId;
     private PageEntity pageEntity;
     private double absRelevance = 0.0;
     private double relativeRelevance = 0.0;
@@ -0,0 +1,11 @@
+package searchengine.dto.suggest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class LemmaWeightDTO {
+    private String lemma;
+    private int weight;
+}
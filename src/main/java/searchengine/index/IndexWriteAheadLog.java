@@ -0,0 +1,162 @@
+package searchengine.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал предзаписи индексатора.
+ * Запись: длина, затем номер, сайт, страница и леммы страницы, в конце CRC32.
+ * Номер последней применённой к БД записи хранится в отдельном файле checkpoint;
+ * когда применено всё, журнал обрезается до нуля.
+ */
+@Slf4j
+public class IndexWriteAheadLog implements Closeable {
+    private static final String LOG_FILE = "index.wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path directory;
+    private FileChannel channel;
+    private long nextSequence = 1;
+    private long checkpoint;
+
+    public IndexWriteAheadLog(Path directory) {
+        this.directory = directory;
+    }
+
+    // Метод открытия журнала; возвращает записи, ещё не применённые к БД
+    public synchronized List<PageDelta> open() throws IOException {
+        Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpointFile)) {
+            checkpoint = Long.parseLong(Files.readString(checkpointFile).trim());
+        }
+        channel = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        List<PageDelta> pending = new ArrayList<>();
+        long validEnd = 0;
+        long lastSequence = checkpoint;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        while (true) {
+            lengthBuffer.clear();
+            if (channel.read(lengthBuffer, validEnd) < Integer.BYTES) {
+                break;
+            }
+            int length = lengthBuffer.flip().getInt();
+            if (length <= 0 || validEnd + Integer.BYTES + length + Integer.BYTES > channel.size()) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length + Integer.BYTES);
+            channel.read(record, validEnd + Integer.BYTES);
+            record.flip();
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != record.getInt(length)) {
+                break;
+            }
+            PageDelta delta = decode(record);
+            lastSequence = Math.max(lastSequence, delta.getSequence());
+            if (delta.getSequence() > checkpoint) {
+                pending.add(delta);
+            }
+            validEnd += Integer.BYTES + length + Integer.BYTES;
+        }
+        if (validEnd < channel.size()) {
+            log.warn("Журнал индексации обрезан после повреждённой записи, позиция {}", validEnd);
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+        nextSequence = lastSequence + 1;
+        return pending;
+    }
+
+    public synchronized PageDelta append(int siteId, int pageId, Map<String, Integer> lemmas) throws IOException {
+        PageDelta delta = new PageDelta(nextSequence++, siteId, pageId, lemmas);
+        ByteBuffer payload = encode(delta);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payload.limit());
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + payload.limit() + Integer.BYTES);
+        record.putInt(payload.limit()).put(payload).putInt((int) crc.getValue()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        return delta;
+    }
+
+    public synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    // Сброс журнала на диск выполняется один раз на пачку перед фиксацией пачки в БД
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    public synchronized void checkpoint(long sequence) throws IOException {
+        if (sequence <= checkpoint) {
+            return;
+        }
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(temp, Long.toString(sequence));
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        checkpoint = sequence;
+        if (checkpoint >= nextSequence - 1) {
+            channel.truncate(0);
+            channel.position(0);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private ByteBuffer encode(PageDelta delta) {
+        List<byte[]> lemmaBytes = new ArrayList<>(delta.getLemmas().size());
+        int size = Long.BYTES + Integer.BYTES * 3;
+        for (String lemma : delta.getLemmas().keySet()) {
+            byte[] bytes = lemma.getBytes(StandardCharsets.UTF_8);
+            lemmaBytes.add(bytes);
+            size += Short.BYTES + bytes.length + Integer.BYTES;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(delta.getSequence()).putInt(delta.getSiteId()).putInt(delta.getPageId()).putInt(lemmaBytes.size());
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : delta.getLemmas().entrySet()) {
+            byte[] bytes = lemmaBytes.get(i++);
+            buffer.putShort((short) bytes.length).put(bytes).putInt(entry.getValue());
+        }
+        return buffer.flip();
+    }
+
+    private PageDelta decode(ByteBuffer buffer) {
+        long sequence = buffer.getLong();
+        int siteId = buffer.getInt();
+        int pageId = buffer.getInt();
+        int count = buffer.getInt();
+        Map<String, Integer> lemmas = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getShort()];
+            buffer.get(bytes);
+            lemmas.put(new String(bytes, StandardCharsets.UTF_8), buffer.getInt());
+        }
+        return new PageDelta(sequence, siteId, pageId, lemmas);
+    }
+}
@@ -0,0 +1,20 @@
+package searchengine.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Полный набор лемм страницы, записанный в журнал индексации.
+ * Применение дельты заменяет индекс страницы целиком, поэтому повторное
+ * применение при восстановлении после сбоя безопасно.
+ */
+@Getter
+@AllArgsConstructor
+public class PageDelta {
+    private final long sequence;
+    private final int siteId;
+    private final int pageId;
+    private final Map<String, Integer> lemmas;
+}
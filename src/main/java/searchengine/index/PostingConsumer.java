@@ -0,0 +1,6 @@
+package searchengine.index;
+
+@FunctionalInterface
+public interface PostingConsumer {
+    void accept(int pageId, int rank);
+}
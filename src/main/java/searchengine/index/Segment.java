@@ -0,0 +1,124 @@
+package searchengine.index;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+
+/**
+ * Сегмент индекса, отображённый в память только для чтения.
+ * Данные не копируются в кучу: словарь термов и постинги читаются
+ * абсолютными обращениями к MappedByteBuffer, поэтому объект безопасно
+ * использовать из нескольких потоков одновременно.
+ */
+public class Segment {
+    @Getter
+    private final long generation;
+    @Getter
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final long termsOffset;
+    private final int termCount;
+    private final long pagesOffset;
+    private final int pageCount;
+
+    private Segment(long generation, Path file, MappedByteBuffer buffer) throws IOException {
+        this.generation = generation;
+        this.file = file;
+        this.buffer = buffer;
+        int footer = buffer.capacity() - SegmentWriter.FOOTER_BYTES;
+        if (footer < 0 || buffer.getInt(footer + SegmentWriter.FOOTER_BYTES - Integer.BYTES) != SegmentWriter.MAGIC) {
+            throw new IOException("Повреждён файл сегмента: " + file);
+        }
+        this.termsOffset = buffer.getLong(footer);
+        this.termCount = buffer.getInt(footer + Long.BYTES);
+        this.pagesOffset = buffer.getLong(footer + Long.BYTES + Integer.BYTES);
+        this.pageCount = buffer.getInt(footer + Long.BYTES + Integer.BYTES + Long.BYTES);
+    }
+
+    public static Segment open(Path file, long generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Сегмент больше 2 ГБ не может быть отображён в память: " + file);
+            }
+            return new Segment(generation, file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public void forEachPosting(int lemmaId, PostingConsumer consumer) {
+        int term = findTerm(lemmaId);
+        if (term < 0) {
+            return;
+        }
+        int entry = termEntry(term);
+        int offset = (int) buffer.getLong(entry + Integer.BYTES);
+        int count = buffer.getInt(entry + Integer.BYTES + Long.BYTES);
+        for (int i = 0; i < count; i++) {
+            int posting = offset + i * SegmentWriter.POSTING_BYTES;
+            consumer.accept(buffer.getInt(posting), buffer.getInt(posting + Integer.BYTES));
+        }
+    }
+
+    public int postingCount(int lemmaId) {
+        int term = findTerm(lemmaId);
+        return term < 0 ? 0 : buffer.getInt(termEntry(term) + Integer.BYTES + Long.BYTES);
+    }
+
+    public boolean containsPage(int pageId) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = buffer.getInt((int) pagesOffset + middle * Integer.BYTES);
+            if (value < pageId) {
+                low = middle + 1;
+            } else if (value > pageId) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void forEachLemmaId(IntConsumer consumer) {
+        for (int i = 0; i < termCount; i++) {
+            consumer.accept(buffer.getInt(termEntry(i)));
+        }
+    }
+
+    public void forEachPage(IntConsumer consumer) {
+        for (int i = 0; i < pageCount; i++) {
+            consumer.accept(buffer.getInt((int) pagesOffset + i * Integer.BYTES));
+        }
+    }
+
+    public long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    private int findTerm(int lemmaId) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = buffer.getInt(termEntry(middle));
+            if (value < lemmaId) {
+                low = middle + 1;
+            } else if (value > lemmaId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int termEntry(int term) {
+        return (int) termsOffset + term * SegmentWriter.TERM_ENTRY_BYTES;
+    }
+}
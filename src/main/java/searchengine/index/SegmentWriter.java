@@ -0,0 +1,97 @@
+package searchengine.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Последовательная запись неизменяемого сегмента индекса.
+ * Формат файла: блок постингов (pageId, rank) по возрастанию lemmaId и pageId,
+ * словарь термов фиксированной ширины (lemmaId, смещение, количество),
+ * отсортированный список страниц сегмента и footer со смещениями блоков.
+ */
+public class SegmentWriter implements Closeable {
+    static final int MAGIC = 0x5345474D;
+    static final int TERM_ENTRY_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    static final int FOOTER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    static final int POSTING_BYTES = Integer.BYTES * 2;
+
+    private final DataOutputStream output;
+    private final BitSet pages = new BitSet();
+    private int[] termLemmaIds = new int[1024];
+    private long[] termOffsets = new long[1024];
+    private int[] termCounts = new int[1024];
+    private int termCount;
+    private int lastLemmaId = -1;
+    private long position;
+
+    public SegmentWriter(Path file) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    // Постинги одного терма; pageIds по возрастанию, термы - по возрастанию lemmaId
+    public void addTerm(int lemmaId, int[] pageIds, int[] ranks, int count) throws IOException {
+        if (lemmaId <= lastLemmaId) {
+            throw new IllegalStateException("Термы сегмента должны идти по возрастанию lemmaId: " + lemmaId);
+        }
+        if (count == 0) {
+            return;
+        }
+        ensureTermCapacity();
+        termLemmaIds[termCount] = lemmaId;
+        termOffsets[termCount] = position;
+        termCounts[termCount] = count;
+        termCount++;
+        lastLemmaId = lemmaId;
+        for (int i = 0; i < count; i++) {
+            output.writeInt(pageIds[i]);
+            output.writeInt(ranks[i]);
+            pages.set(pageIds[i]);
+        }
+        position += (long) count * POSTING_BYTES;
+    }
+
+    // Страница без постингов тоже принадлежит сегменту и вытесняет свои старые версии
+    public void addPage(int pageId) {
+        pages.set(pageId);
+    }
+
+    public void finish() throws IOException {
+        long termsOffset = position;
+        for (int i = 0; i < termCount; i++) {
+            output.writeInt(termLemmaIds[i]);
+            output.writeLong(termOffsets[i]);
+            output.writeInt(termCounts[i]);
+        }
+        position += (long) termCount * TERM_ENTRY_BYTES;
+        long pagesOffset = position;
+        for (int pageId = pages.nextSetBit(0); pageId >= 0; pageId = pages.nextSetBit(pageId + 1)) {
+            output.writeInt(pageId);
+        }
+        output.writeLong(termsOffset);
+        output.writeInt(termCount);
+        output.writeLong(pagesOffset);
+        output.writeInt(pages.cardinality());
+        output.writeInt(MAGIC);
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private void ensureTermCapacity() {
+        if (termCount == termLemmaIds.length) {
+            int capacity = termLemmaIds.length * 2;
+            termLemmaIds = Arrays.copyOf(termLemmaIds, capacity);
+            termOffsets = Arrays.copyOf(termOffsets, capacity);
+            termCounts = Arrays.copyOf(termCounts, capacity);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package searchengine.index;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Набор сегментов одного сайта и буфер ещё не сброшенных на диск страниц.
+ * Более новая версия страницы (буфер или более поздний сегмент) вытесняет
+ * постинги этой страницы из старых сегментов, поэтому удалять их не нужно -
+ * устаревшие постинги отбрасываются при чтении и при слиянии.
+ */
+@Slf4j
+public class SiteSegments {
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String COMPLETE_MARKER = "complete";
+
+    @Getter
+    private final int siteId;
+    private final Path directory;
+    private final Object writeLock = new Object();
+    private final ReadWriteLock bufferLock = new ReentrantReadWriteLock();
+    private final AtomicLong nextGeneration = new AtomicLong(1);
+    private volatile List<Segment> segments = Collections.emptyList();
+    private volatile Map<Integer, Map<Integer, Integer>> buffer = new ConcurrentHashMap<>();
+    private volatile Map<Integer, Map<Integer, Integer>> flushing = Collections.emptyMap();
+    // Удалённые сегменты больше не пишутся: запоздавшая фоновая запись не должна попасть в каталог нового набора
+    private volatile boolean dropped;
+
+    public SiteSegments(int siteId, Path directory) {
+        this.siteId = siteId;
+        this.directory = directory;
+    }
+
+    // Метод открытия сохранённых сегментов сайта, старые первыми
+    public void load() throws IOException {
+        dropped = false;
+        Files.createDirectories(directory);
+        List<Segment> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    loaded.add(Segment.open(file, generationOf(name)));
+                }
+            }
+        }
+        loaded.sort(Comparator.comparingLong(Segment::getGeneration));
+        if (!loaded.isEmpty()) {
+            nextGeneration.set(loaded.get(loaded.size() - 1).getGeneration() + 1);
+        }
+        segments = Collections.unmodifiableList(loaded);
+    }
+
+    // Сегменты сайта полны, если построены индексатором с нуля или первичная загрузка из БД завершилась
+    public boolean isComplete() {
+        return Files.exists(directory.resolve(COMPLETE_MARKER));
+    }
+
+    public void markComplete() throws IOException {
+        synchronized (writeLock) {
+            ensureNotDropped();
+            Files.createDirectories(directory);
+            if (!isComplete()) {
+                Files.createFile(directory.resolve(COMPLETE_MARKER));
+            }
+        }
+    }
+
+    public void addPage(int pageId, Map<Integer, Integer> lemmaRanks) {
+        Map<Integer, Integer> copy = Map.copyOf(lemmaRanks);
+        bufferLock.readLock().lock();
+        try {
+            buffer.put(pageId, copy);
+        } finally {
+            bufferLock.readLock().unlock();
+        }
+    }
+
+    public int bufferedPages() {
+        return buffer.size();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    // Порядок чтения важен: сначала буфер, затем сбрасываемый буфер и только потом сегменты
+    public void forEachPosting(int lemmaId, PostingConsumer consumer) {
+        Map<Integer, Map<Integer, Integer>> currentBuffer = buffer;
+        Map<Integer, Map<Integer, Integer>> currentFlushing = flushing;
+        List<Segment> currentSegments = segments;
+
+        currentBuffer.forEach((pageId, lemmaRanks) -> {
+            Integer rank = lemmaRanks.get(lemmaId);
+            if (rank != null) {
+                consumer.accept(pageId, rank);
+            }
+        });
+        currentFlushing.forEach((pageId, lemmaRanks) -> {
+            Integer rank = lemmaRanks.get(lemmaId);
+            if (rank != null && !currentBuffer.containsKey(pageId)) {
+                consumer.accept(pageId, rank);
+            }
+        });
+        for (int i = currentSegments.size() - 1; i >= 0; i--) {
+            int segmentIndex = i;
+            currentSegments.get(i).forEachPosting(lemmaId, (pageId, rank) -> {
+                if (!currentBuffer.containsKey(pageId) && !currentFlushing.containsKey(pageId)
+                        && !containsInNewer(currentSegments, segmentIndex, currentSegments.size(), pageId)) {
+                    consumer.accept(pageId, rank);
+                }
+            });
+        }
+    }
+
+    // Метод сброса буфера в новый сегмент
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (dropped || buffer.isEmpty()) {
+                return;
+            }
+            bufferLock.writeLock().lock();
+            try {
+                flushing = buffer;
+                buffer = new ConcurrentHashMap<>();
+            } finally {
+                bufferLock.writeLock().unlock();
+            }
+            Map<Integer, Map<Integer, Integer>> pages = flushing;
+
+            Map<Integer, List<int[]>> postingsByLemma = new TreeMap<>();
+            pages.forEach((pageId, lemmaRanks) -> lemmaRanks.forEach((lemmaId, rank) ->
+                    postingsByLemma.computeIfAbsent(lemmaId, id -> new ArrayList<>()).add(new int[]{pageId, rank})));
+
+            long generation = nextGeneration.getAndIncrement();
+            Path file = segmentFile(generation);
+            Path temp = tempFile(generation);
+            boolean written = false;
+            try {
+                try (SegmentWriter writer = new SegmentWriter(temp)) {
+                    PostingBuffer postingBuffer = new PostingBuffer();
+                    for (Map.Entry<Integer, List<int[]>> entry : postingsByLemma.entrySet()) {
+                        postingBuffer.clear();
+                        entry.getValue().forEach(posting -> postingBuffer.add(posting[0], posting[1]));
+                        postingBuffer.sortByPage();
+                        writer.addTerm(entry.getKey(), postingBuffer.pageIds, postingBuffer.ranks, postingBuffer.size);
+                    }
+                    pages.keySet().forEach(writer::addPage);
+                    writer.finish();
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                List<Segment> updated = new ArrayList<>(segments);
+                updated.add(Segment.open(file, generation));
+                segments = Collections.unmodifiableList(updated);
+                written = true;
+            } finally {
+                // Страницы незаписанного сегмента возвращаются в буфер, не затирая более новые версии
+                if (!written) {
+                    bufferLock.writeLock().lock();
+                    try {
+                        pages.forEach(buffer::putIfAbsent);
+                    } finally {
+                        bufferLock.writeLock().unlock();
+                    }
+                    Files.deleteIfExists(temp);
+                }
+                flushing = Collections.emptyMap();
+            }
+            log.debug("Сайт {}: записан сегмент {}, страниц {}", siteId, generation, pages.size());
+        }
+    }
+
+    // Метод записи базового сегмента из потока постингов {lemmaId, pageId, rank}, упорядоченного по lemmaId и pageId.
+    // Базовый сегмент получает нулевое поколение и уступает всем сегментам, записанным индексатором
+    public void writeBaseSegment(Stream<int[]> sortedPostings) throws IOException {
+        synchronized (writeLock) {
+            ensureNotDropped();
+            long generation = 0;
+            Path file = segmentFile(generation);
+            Path temp = tempFile(generation);
+            try (SegmentWriter writer = new SegmentWriter(temp)) {
+                PostingBuffer postingBuffer = new PostingBuffer();
+                int[] currentLemma = {-1};
+                for (int[] posting : (Iterable<int[]>) sortedPostings::iterator) {
+                    ensureNotDropped();
+                    if (posting[0] != currentLemma[0]) {
+                        if (currentLemma[0] >= 0) {
+                            writer.addTerm(currentLemma[0], postingBuffer.pageIds, postingBuffer.ranks, postingBuffer.size);
+                        }
+                        postingBuffer.clear();
+                        currentLemma[0] = posting[0];
+                    }
+                    postingBuffer.add(posting[1], posting[2]);
+                }
+                if (currentLemma[0] >= 0) {
+                    writer.addTerm(currentLemma[0], postingBuffer.pageIds, postingBuffer.ranks, postingBuffer.size);
+                }
+                writer.finish();
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            List<Segment> updated = new ArrayList<>(segments);
+            updated.add(Segment.open(file, generation));
+            updated.sort(Comparator.comparingLong(Segment::getGeneration));
+            segments = Collections.unmodifiableList(updated);
+        }
+    }
+
+    // Метод слияния mergeFactor соседних сегментов с наименьшим суммарным размером
+    public boolean mergeSmallest(int mergeFactor, long maxSegmentBytes) throws IOException {
+        synchronized (writeLock) {
+            List<Segment> current = segments;
+            if (dropped || current.size() < mergeFactor || mergeFactor < 2) {
+                return false;
+            }
+            int bestStart = -1;
+            long bestSize = Long.MAX_VALUE;
+            for (int start = 0; start + mergeFactor <= current.size(); start++) {
+                long size = current.subList(start, start + mergeFactor).stream().mapToLong(Segment::sizeInBytes).sum();
+                if (size < bestSize && size <= maxSegmentBytes) {
+                    bestSize = size;
+                    bestStart = start;
+                }
+            }
+            if (bestStart < 0) {
+                return false;
+            }
+            int windowStart = bestStart;
+            int windowEnd = bestStart + mergeFactor;
+            List<Segment> window = current.subList(windowStart, windowEnd);
+            long generation = window.get(window.size() - 1).getGeneration();
+            Path temp = tempFile(generation);
+
+            try (SegmentWriter writer = new SegmentWriter(temp)) {
+                PostingBuffer postingBuffer = new PostingBuffer();
+                for (int lemmaId : collectLemmaIds(window)) {
+                    postingBuffer.clear();
+                    for (int i = windowEnd - 1; i >= windowStart; i--) {
+                        int segmentIndex = i;
+                        current.get(i).forEachPosting(lemmaId, (pageId, rank) -> {
+                            if (!containsInNewer(current, segmentIndex, current.size(), pageId)) {
+                                postingBuffer.add(pageId, rank);
+                            }
+                        });
+                    }
+                    postingBuffer.sortByPage();
+                    writer.addTerm(lemmaId, postingBuffer.pageIds, postingBuffer.ranks, postingBuffer.size);
+                }
+                for (int i = windowStart; i < windowEnd; i++) {
+                    current.get(i).forEachPage(pageId -> {
+                        if (!containsInNewer(current, windowEnd - 1, current.size(), pageId)) {
+                            writer.addPage(pageId);
+                        }
+                    });
+                }
+                writer.finish();
+            }
+            // Сначала атомарно заменяем самый новый сегмент окна, затем удаляем остальные:
+            // после сбоя между шагами лишние старые сегменты просто будут вытеснены новым
+            Path target = segmentFile(generation);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            List<Segment> updated = new ArrayList<>(current.subList(0, windowStart));
+            updated.add(Segment.open(target, generation));
+            updated.addAll(current.subList(windowEnd, current.size()));
+            segments = Collections.unmodifiableList(updated);
+            for (int i = windowStart; i < windowEnd - 1; i++) {
+                Files.deleteIfExists(current.get(i).getFile());
+            }
+            log.debug("Сайт {}: слито сегментов {} в сегмент {}", siteId, mergeFactor, generation);
+            return true;
+        }
+    }
+
+    public void drop() throws IOException {
+        // Флаг ставится до захвата блокировки, чтобы идущая запись базового сегмента прервалась, а не дописывалась
+        dropped = true;
+        synchronized (writeLock) {
+            segments = Collections.emptyList();
+            buffer = new ConcurrentHashMap<>();
+            flushing = Collections.emptyMap();
+            if (!Files.exists(directory)) {
+                return;
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private void ensureNotDropped() throws IOException {
+        if (dropped) {
+            throw new IOException("Сегменты сайта " + siteId + " удалены");
+        }
+    }
+
+    private int[] collectLemmaIds(List<Segment> window) {
+        PostingBuffer lemmaIds = new PostingBuffer();
+        window.forEach(segment -> segment.forEachLemmaId(lemmaId -> lemmaIds.add(lemmaId, 0)));
+        return Arrays.stream(lemmaIds.pageIds, 0, lemmaIds.size).sorted().distinct().toArray();
+    }
+
+    private boolean containsInNewer(List<Segment> list, int segmentIndex, int size, int pageId) {
+        for (int i = segmentIndex + 1; i < size; i++) {
+            if (list.get(i).containsPage(pageId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Path segmentFile(long generation) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, generation, SEGMENT_SUFFIX));
+    }
+
+    private Path tempFile(long generation) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, generation, TEMP_SUFFIX));
+    }
+
+    private static long generationOf(String fileName) {
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Растущие массивы постингов без упаковки в Integer
+    private static final class PostingBuffer {
+        private int[] pageIds = new int[256];
+        private int[] ranks = new int[256];
+        private int size;
+
+        private void add(int pageId, int rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void sortByPage() {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) pageIds[i] << 32) | (ranks[i] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < size; i++) {
+                pageIds[i] = (int) (packed[i] >>> 32);
+                ranks[i] = (int) packed[i];
+            }
+        }
+    }
+}
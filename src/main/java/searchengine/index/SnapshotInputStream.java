@@ -0,0 +1,129 @@
+package searchengine.index;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение потока, записанного SnapshotOutputStream. Каждый блок проверяется по CRC32 до выдачи данных,
+ * поэтому повреждённый или обрезанный снимок обнаруживается до того, как его данные попадут в индекс.
+ */
+public class SnapshotInputStream extends InputStream {
+    // Ограничение размера блока защищает от выделения памяти по испорченному заголовку
+    private static final int MAX_BLOCK_BYTES = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer header = ByteBuffer.allocate(SnapshotOutputStream.BLOCK_HEADER_BYTES);
+    private byte[] block = new byte[0];
+    private byte[] compressed = new byte[0];
+    private int size;
+    private int position;
+    private boolean finished;
+
+    public SnapshotInputStream(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer start = ByteBuffer.allocate(Integer.BYTES * 2);
+        readFully(start);
+        start.flip();
+        if (start.getInt() != SnapshotOutputStream.MAGIC) {
+            throw new IOException("Файл не является снимком индекса");
+        }
+        int version = start.getInt();
+        if (version != SnapshotOutputStream.VERSION) {
+            throw new IOException("Неподдерживаемая версия снимка индекса: " + version);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == size && !readBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == size && !readBlock()) {
+            return -1;
+        }
+        int chunk = Math.min(length, size - position);
+        System.arraycopy(block, position, bytes, offset, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        if (finished) {
+            return false;
+        }
+        header.clear();
+        readFully(header);
+        header.flip();
+        int rawSize = header.getInt();
+        int compressedSize = header.getInt();
+        int checksum = header.getInt();
+        if (rawSize == 0) {
+            finished = true;
+            return false;
+        }
+        if (rawSize < 0 || rawSize > MAX_BLOCK_BYTES || compressedSize <= 0 || compressedSize > MAX_BLOCK_BYTES) {
+            throw new IOException("Снимок индекса повреждён: неверный заголовок блока");
+        }
+        if (compressed.length < compressedSize) {
+            compressed = new byte[compressedSize];
+        }
+        if (block.length < rawSize) {
+            block = new byte[rawSize];
+        }
+        readFully(ByteBuffer.wrap(compressed, 0, compressedSize));
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedSize);
+        try {
+            int inflated = 0;
+            while (inflated < rawSize && !inflater.finished()) {
+                int count = inflater.inflate(block, inflated, rawSize - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != rawSize) {
+                throw new IOException("Снимок индекса повреждён: неверная длина блока");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Снимок индекса повреждён: " + ex.getMessage(), ex);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, rawSize);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Снимок индекса повреждён: не совпала контрольная сумма блока");
+        }
+        size = rawSize;
+        position = 0;
+        return true;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Снимок индекса обрезан");
+            }
+        }
+    }
+}
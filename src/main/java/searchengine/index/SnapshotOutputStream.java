@@ -0,0 +1,105 @@
+package searchengine.index;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Сжатый поток снимка индекса. Данные копятся в блок заданного размера, блок сжимается Deflater
+ * и дописывается в канал последовательно: исходная длина, длина сжатых данных, CRC32 исходных данных, данные.
+ * Файл начинается с сигнатуры и версии, конец потока - блок нулевой длины.
+ */
+public class SnapshotOutputStream extends OutputStream {
+    static final int MAGIC = 0x534E4150;
+    static final int VERSION = 1;
+    static final int BLOCK_HEADER_BYTES = Integer.BYTES * 3;
+
+    private final FileChannel channel;
+    private final Deflater deflater;
+    private final byte[] block;
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+    private byte[] compressed;
+    private int size;
+
+    public SnapshotOutputStream(FileChannel channel, int blockSize, int compressionLevel) throws IOException {
+        this.channel = channel;
+        this.deflater = new Deflater(compressionLevel);
+        this.block = new byte[blockSize];
+        this.compressed = new byte[blockSize + blockSize / 8 + 64];
+        ByteBuffer start = ByteBuffer.allocate(Integer.BYTES * 2);
+        start.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(start);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (size == block.length) {
+            writeBlock();
+        }
+        block[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (size == block.length) {
+                writeBlock();
+            }
+            int chunk = Math.min(length, block.length - size);
+            System.arraycopy(bytes, offset, block, size, chunk);
+            size += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            writeBlock();
+            header.clear();
+            header.putInt(0).putInt(0).putInt(0).flip();
+            writeFully(header);
+            channel.force(true);
+        } finally {
+            channel.close();
+            deflater.end();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, size);
+        deflater.reset();
+        deflater.setInput(block, 0, size);
+        deflater.finish();
+        int compressedSize = 0;
+        while (!deflater.finished()) {
+            if (compressedSize == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+        }
+        header.clear();
+        header.putInt(size).putInt(compressedSize).putInt((int) crc.getValue()).flip();
+        writeFully(header);
+        writeFully(ByteBuffer.wrap(compressed, 0, compressedSize));
+        size = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.index;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Последовательное чтение снимка индекса, записанного SnapshotWriter.
+ */
+public class SnapshotReader implements Closeable {
+    private final DataInputStream input;
+
+    public SnapshotReader(Path file) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(
+                new SnapshotInputStream(FileChannel.open(file, StandardOpenOption.READ)), 1 << 16));
+    }
+
+    public interface Handler {
+        void site(int siteId, String url, String name, String status, int generation, boolean active) throws IOException;
+
+        void page(int siteId, int pageId, String path, int code, String content) throws IOException;
+
+        void lemma(int siteId, String lemma, int[] pageIds, int[] ranks) throws IOException;
+    }
+
+    public void read(Handler handler) throws IOException {
+        int siteId = -1;
+        while (true) {
+            int record = input.readInt();
+            switch (record) {
+                case SnapshotWriter.SITE:
+                    siteId = input.readInt();
+                    handler.site(siteId, input.readUTF(), input.readUTF(), input.readUTF(), input.readInt(), input.readBoolean());
+                    break;
+                case SnapshotWriter.PAGE:
+                    int pageId = input.readInt();
+                    String path = input.readUTF();
+                    int code = input.readInt();
+                    byte[] content = new byte[input.readInt()];
+                    input.readFully(content);
+                    handler.page(siteId, pageId, path, code, new String(content, StandardCharsets.UTF_8));
+                    break;
+                case SnapshotWriter.LEMMA:
+                    String lemma = input.readUTF();
+                    int count = input.readInt();
+                    int[] pageIds = new int[count];
+                    int[] ranks = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        pageIds[i] = input.readInt();
+                        ranks[i] = input.readInt();
+                    }
+                    handler.lemma(siteId, lemma, pageIds, ranks);
+                    break;
+                case SnapshotWriter.END:
+                    // За последней записью должен идти блок конца потока, иначе файл обрезан
+                    if (input.read() != -1) {
+                        throw new IOException("Снимок индекса повреждён: данные после конца снимка");
+                    }
+                    return;
+                default:
+                    throw new IOException("Снимок индекса повреждён: неизвестная запись " + record);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
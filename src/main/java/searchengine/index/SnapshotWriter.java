@@ -0,0 +1,73 @@
+package searchengine.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Запись снимка индекса. Для каждого сайта пишется его запись, затем страницы (адрес, код, текст)
+ * и словарь лемм сайта с постингами (pageId, rank) каждой леммы. Id сайтов и страниц сохраняются.
+ * Частоты лемм не пишутся: они восстанавливаются из постингов при импорте.
+ */
+public class SnapshotWriter implements Closeable {
+    static final int SITE = 1;
+    static final int PAGE = 2;
+    static final int LEMMA = 3;
+    static final int END = 0;
+
+    private final DataOutputStream output;
+
+    public SnapshotWriter(Path file, int blockSize, int compressionLevel) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.output = new DataOutputStream(new BufferedOutputStream(
+                new SnapshotOutputStream(channel, blockSize, compressionLevel), 1 << 16));
+    }
+
+    public void site(int siteId, String url, String name, String status, int generation, boolean active) throws IOException {
+        output.writeInt(SITE);
+        output.writeInt(siteId);
+        output.writeUTF(url);
+        output.writeUTF(name);
+        output.writeUTF(status);
+        output.writeInt(generation);
+        output.writeBoolean(active);
+    }
+
+    // Страница относится к последнему записанному сайту
+    public void page(int pageId, String path, int code, String content) throws IOException {
+        output.writeInt(PAGE);
+        output.writeInt(pageId);
+        output.writeUTF(path);
+        output.writeInt(code);
+        byte[] bytes = content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    // Лемма относится к последнему записанному сайту
+    public void lemma(String lemma, int[] pageIds, int[] ranks, int count) throws IOException {
+        output.writeInt(LEMMA);
+        output.writeUTF(lemma);
+        output.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            output.writeInt(pageIds[i]);
+            output.writeInt(ranks[i]);
+        }
+    }
+
+    // Без маркера конца снимок при чтении считается обрезанным
+    public void finish() throws IOException {
+        output.writeInt(END);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,40 @@
+package searchengine.model;
+
+import com.sun.istack.NotNull;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.sql.Timestamp;
+
+// Аренда обхода сайта узлом кластера; узел продлевает lease_until, пока обход идёт
+@Entity
+@Table(name = "crawl_lease", indexes = {@Index(name = "lease_status_index", columnList = "status, lease_until")})
+@NoArgsConstructor
+@Setter
+@Getter
+public class CrawlLeaseEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @NotNull
+    private int id;
+    @NotNull
+    @Column(name = "site_url", columnDefinition = "VARCHAR(255)", unique = true)
+    private String siteUrl;
+    @NotNull
+    @Column(name = "site_name", columnDefinition = "VARCHAR(255)")
+    private String siteName;
+    // Поколение сайта, в которое пишет текущий владелец
+    @Column(name = "site_id")
+    private Integer siteId;
+    @Enumerated(EnumType.STRING)
+    @Column(columnDefinition = "ENUM('PENDING', 'RUNNING', 'DONE', 'FAILED', 'CANCELLED')", nullable = false)
+    private LeaseStatus status;
+    @Column(columnDefinition = "VARCHAR(255)")
+    private String owner;
+    @Column(name = "lease_until", columnDefinition = "DATETIME(3)")
+    private Timestamp leaseUntil;
+    @NotNull
+    private int attempts;
+}
@@ -10,7 +10,9 @@ import org.hibernate.annotations.OnDeleteAction;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "index_search")
+@Table(name = "index_search", indexes = {
+        @Index(name = "idx_index_lemma_page_rank", columnList = "lemma_id, page_id, lemma_rank"),
+        @Index(name = "idx_index_page_lemma", columnList = "page_id, lemma_id")})
 @NoArgsConstructor
 @Setter
 @Getter
@@ -11,7 +11,8 @@ import javax.persistence.*;
 
 
 @Entity
-@Table(name = "lemma", uniqueConstraints = @UniqueConstraint(columnNames = {"lemma","site_id"}))
+@Table(name = "lemma", uniqueConstraints = @UniqueConstraint(name = "uk_lemma_site", columnNames = {"lemma","site_id"}),
+        indexes = {@Index(name = "idx_lemma_site_lemma_freq", columnList = "site_id, lemma, frequency")})
 @NoArgsConstructor
 @Setter
 @Getter
@@ -20,8 +21,13 @@ public class LemmaEntity {
     @NotNull
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
+    // Количество страниц сайта, на которых встречается лемма
     @NotNull
     private int frequency;
+    // Общее количество вхождений леммы на всех страницах сайта
+    @NotNull
+    @Column(name = "term_frequency")
+    private int termFrequency;
     @NotNull
     @Column(columnDefinition = "VARCHAR(255)")
     private String lemma;
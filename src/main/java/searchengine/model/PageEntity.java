@@ -8,7 +8,7 @@ import lombok.Setter;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "page", indexes = {@Index(name = "path_index", columnList = "path")})
+@Table(name = "page", indexes = {@Index(name = "idx_page_site_path", columnList = "site_id, path")})
 @NoArgsConstructor
 @Setter
 @Getter
@@ -11,7 +11,7 @@ import java.util.List;
 
 
 @Entity
-@Table(name = "site")
+@Table(name = "site", indexes = {@Index(name = "idx_site_url_generation", columnList = "url, active, generation")})
 @NoArgsConstructor
 @Setter
 @Getter
@@ -35,6 +35,25 @@ public class SiteEntity {
     @NotNull
     @Column(columnDefinition = "VARCHAR(255)")
     private String name;
+    // Каждая полная индексация пишет новое поколение сайта; поиск обслуживает только активное поколение
+    @Column(columnDefinition = "INT NOT NULL DEFAULT 1")
+    private int generation = 1;
+    @Column(columnDefinition = "BIT(1) NOT NULL DEFAULT 1")
+    private boolean active = true;
+    // Время вывода поколения из работы; такие поколения удаляются фоновой очисткой частями
+    @Column(name = "retired_at")
+    private Timestamp retiredAt;
+    // Счётчики статистики пишутся только отдельным запросом updateCounters, поэтому не затираются при save()
+    @Column(name = "page_count", columnDefinition = "BIGINT NOT NULL DEFAULT 0", insertable = false, updatable = false)
+    private long pageCount;
+    @Column(name = "lemma_count", columnDefinition = "BIGINT NOT NULL DEFAULT 0", insertable = false, updatable = false)
+    private long lemmaCount;
+    @Column(name = "error_count", columnDefinition = "BIGINT NOT NULL DEFAULT 0", insertable = false, updatable = false)
+    private long errorCount;
+    @Column(name = "bytes_fetched", columnDefinition = "BIGINT NOT NULL DEFAULT 0", insertable = false, updatable = false)
+    private long bytesFetched;
+    @Column(name = "error_codes", columnDefinition = "VARCHAR(1024)", insertable = false, updatable = false)
+    private String errorCodes;
     @OneToMany(orphanRemoval = true)
     @JoinColumn(name = "site_id")
     private List<PageEntity> pageEntities;
@@ -0,0 +1,76 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.CrawlLeaseEntity;
+
+import javax.transaction.Transactional;
+import java.util.List;
+
+// Время аренды считается по часам БД, поэтому расхождение часов узлов на аренду не влияет
+@Repository
+public interface CrawlLeaseRepository extends JpaRepository<CrawlLeaseEntity, Integer> {
+    @Query(value = "select * from crawl_lease l where l.site_url = :siteUrl limit 1", nativeQuery = true)
+    CrawlLeaseEntity findBySiteUrl(@Param("siteUrl") String siteUrl);
+
+    // Свободные аренды: новые и брошенные упавшими узлами
+    @Query(value = "select * from crawl_lease l where (l.status = 'PENDING' or (l.status = 'RUNNING' " +
+            "and l.lease_until < current_timestamp(3))) and l.attempts < :maxAttempts order by l.id limit :limit", nativeQuery = true)
+    List<CrawlLeaseEntity> findClaimable(@Param("maxAttempts") int maxAttempts, @Param("limit") int limit);
+
+    // Захват аренды: выигрывает узел, чей UPDATE изменил строку
+    @Modifying
+    @Transactional
+    @Query(value = "update crawl_lease set owner = :owner, status = 'RUNNING', attempts = attempts + 1, site_id = null, " +
+            "lease_until = timestampadd(MICROSECOND, :ttlMs * 1000, current_timestamp(3)) where id = :id " +
+            "and (status = 'PENDING' or (status = 'RUNNING' and lease_until < current_timestamp(3)))", nativeQuery = true)
+    int claim(@Param("id") int id, @Param("owner") String owner, @Param("ttlMs") long ttlMs);
+
+    // Продление аренды; 0 строк - аренда отменена или перехвачена другим узлом
+    @Modifying
+    @Transactional
+    @Query(value = "update crawl_lease set lease_until = timestampadd(MICROSECOND, :ttlMs * 1000, current_timestamp(3)) " +
+            "where id = :id and owner = :owner and status = 'RUNNING'", nativeQuery = true)
+    int heartbeat(@Param("id") int id, @Param("owner") String owner, @Param("ttlMs") long ttlMs);
+
+    // Повторный запуск не сбрасывает аренду, по которой обход ещё идёт: иначе сайт обходили бы два узла сразу
+    @Modifying
+    @Transactional
+    @Query(value = "update crawl_lease set site_name = :siteName, site_id = null, status = 'PENDING', owner = null, " +
+            "lease_until = null, attempts = 0 where id = :id " +
+            "and not (status = 'RUNNING' and lease_until >= current_timestamp(3))", nativeQuery = true)
+    int reschedule(@Param("id") int id, @Param("siteName") String siteName);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update crawl_lease set site_id = :siteId where id = :id and owner = :owner and status = 'RUNNING'", nativeQuery = true)
+    int assignGeneration(@Param("id") int id, @Param("owner") String owner, @Param("siteId") int siteId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update crawl_lease set status = :status where id = :id and owner = :owner and status = 'RUNNING'", nativeQuery = true)
+    int finish(@Param("id") int id, @Param("owner") String owner, @Param("status") String status);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update crawl_lease set status = 'CANCELLED' where status in ('PENDING', 'RUNNING')", nativeQuery = true)
+    int cancelAll();
+
+    // Аренды, исчерпавшие попытки, снимаются, чтобы не считаться активными вечно
+    @Modifying
+    @Transactional
+    @Query(value = "update crawl_lease set status = 'FAILED' where status = 'RUNNING' " +
+            "and lease_until < current_timestamp(3) and attempts >= :maxAttempts", nativeQuery = true)
+    int failExhausted(@Param("maxAttempts") int maxAttempts);
+
+    @Query(value = "select count(*) from crawl_lease l where l.status = 'PENDING' or l.status = 'RUNNING'", nativeQuery = true)
+    long countActive();
+
+    // Аренды, обход по которым идёт сейчас на каком-либо узле
+    @Query(value = "select count(*) from crawl_lease l where l.status = 'RUNNING' " +
+            "and l.lease_until >= current_timestamp(3)", nativeQuery = true)
+    long countRunning();
+}
@@ -3,12 +3,17 @@ package searchengine.repositories;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.IndexSearchEntity;
 
+import javax.persistence.QueryHint;
 import javax.transaction.Transactional;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface IndexSearchRepository extends JpaRepository<IndexSearchEntity, Integer> {
@@ -21,7 +26,21 @@ public interface IndexSearchRepository extends JpaRepository<IndexSearchEntity,
     @Query(value = "select i from IndexSearchEntity i where i.pageId = :pageId")
     List<IndexSearchEntity> findAllByPageId(@Param("pageId") Integer pageId);
 
+    @Query(value = "select i.page_id, i.lemma_rank from index_search i where i.lemma_id = :lemmaId", nativeQuery = true)
+    List<Object[]> findPostingsByLemma(@Param("lemmaId") Integer lemmaId);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query(value = "select i.lemma_id, i.page_id, i.lemma_rank from index_search i join lemma l on l.id = i.lemma_id " +
+            "where l.site_id = :siteId order by i.lemma_id, i.page_id", nativeQuery = true)
+    Stream<Object[]> streamPostingsBySiteId(@Param("siteId") Integer siteId);
+
     @Modifying
     @Transactional
     @Query(value = "delete from IndexSearchEntity i where i.pageId = :pageId")
-    void deleteAllByPageId(@Param("pageId") Integer pageId);}
+    void deleteAllByPageId(@Param("pageId") Integer pageId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from IndexSearchEntity i where i.pageId in :pageIds")
+    int deleteAllByPageIds(@Param("pageIds") List<Integer> pageIds);
+}
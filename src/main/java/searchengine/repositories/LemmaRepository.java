@@ -1,9 +1,13 @@
 package searchengine.repositories;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import searchengine.dto.suggest.LemmaWeightDTO;
 import searchengine.model.LemmaEntity;
 
+import javax.transaction.Transactional;
 import java.util.List;
 
 @Repository
@@ -14,12 +18,20 @@ public interface LemmaRepository extends JpaRepository<LemmaEntity, Integer> {
     @Query(value = "select count(l) from LemmaEntity l where l.siteId = :siteId")
     Integer findCountRecordBySiteId(Integer siteId);
 
-    @Query(value = "select l.frequency from LemmaEntity l where l.lemma = :lemma and (:siteId is null or l.siteId = :siteId)")
-    Integer findCountPageByLemma(String lemma, Integer siteId);
-
     @Query(value = "select l.id from LemmaEntity l where l.lemma = :lemma")
     Integer findIdLemma(String lemma);
 
-    @Query(value = "select l from LemmaEntity l where lower(l.lemma) = lower(:lemma) and (:siteId is null or l.siteId = :siteId)")
+    @Query(value = "select l from LemmaEntity l where l.lemma = :lemma and (:siteId is null or l.siteId = :siteId)")
     List<LemmaEntity> findLemmasByLemmaAndSiteId(String lemma, Integer siteId);
+
+    @Query(value = "select new searchengine.dto.suggest.LemmaWeightDTO(l.lemma, l.frequency) from LemmaEntity l where l.siteId = :siteId")
+    List<LemmaWeightDTO> findLemmaWeightsBySiteId(Integer siteId);
+
+    @Query(value = "select l.id, l.lemma from lemma l where l.site_id = :siteId", nativeQuery = true)
+    List<Object[]> findLemmaNamesBySiteId(@Param("siteId") int siteId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from lemma where site_id = :siteId limit :limit", nativeQuery = true)
+    int deleteChunkBySiteId(@Param("siteId") int siteId, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -1,10 +1,20 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.PageEntity;
+
+import javax.persistence.QueryHint;
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 @Repository
 public interface PageRepository extends JpaRepository<PageEntity, Integer> {
     @Query(value = "select * from page t where t.site_id = :siteId and t.path = :path limit 1", nativeQuery = true)
@@ -15,4 +25,26 @@ public interface PageRepository extends JpaRepository<PageEntity, Integer> {
 
     @Query(value = "select count(p) from PageEntity p where (:siteId is null or siteId = :siteId)")
     Integer getCountPages(@Param("siteId")Integer siteId);
+
+    @Query(value = "select p.id from page p where p.site_id = :siteId limit :limit", nativeQuery = true)
+    List<Integer> findIdsBySiteId(@Param("siteId") int siteId, @Param("limit") int limit);
+
+    // Страницы живых сайтов, попадающие в индекс, для его перестроения; читаются курсором на сервере
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query(value = "select p.id, p.site_id, p.content from page p join site s on s.id = p.site_id " +
+            "where s.retired_at is null and p.code < 400 and p.content <> ''", nativeQuery = true)
+    Stream<Object[]> streamIndexablePages();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query(value = "select p.id, p.path, p.code, p.content from page p where p.site_id = :siteId", nativeQuery = true)
+    Stream<Object[]> streamPagesBySiteId(@Param("siteId") int siteId);
+
+    @Query(value = "select count(*) from page p join site s on s.id = p.site_id " +
+            "where s.retired_at is null and p.code < 400 and p.content <> ''", nativeQuery = true)
+    int countIndexablePages();
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from PageEntity p where p.id in :ids")
+    int deleteAllByIds(@Param("ids") List<Integer> ids);
 }
@@ -1,14 +1,90 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.SiteEntity;
 
+import javax.transaction.Transactional;
+import java.sql.Timestamp;
+import java.util.List;
+
 @Repository
 public interface SiteRepository extends JpaRepository<SiteEntity, Integer> {
-    @Query(value = "select * from site s where s.url = :host limit 1", nativeQuery = true)
+    // Активное поколение сайта, а если его нет - самое новое
+    @Query(value = "select * from site s where s.url = :host and s.retired_at is null order by s.active desc, s.generation desc limit 1", nativeQuery = true)
     SiteEntity getSitePageByUrl(@Param("host") String host);
 
+    @Query(value = "select s from SiteEntity s where s.active = true")
+    List<SiteEntity> findActiveSites();
+
+    @Query(value = "select s from SiteEntity s where s.url = :url")
+    List<SiteEntity> findGenerationsByUrl(@Param("url") String url);
+
+    // Самое новое поколение каждого сайта, в том числе ещё индексируемое
+    @Query(value = "select s from SiteEntity s where s.retiredAt is null and s.generation = " +
+            "(select max(g.generation) from SiteEntity g where g.url = s.url and g.retiredAt is null)")
+    List<SiteEntity> findLatestGenerations();
+
+    @Query(value = "select s from SiteEntity s where s.retiredAt is null")
+    List<SiteEntity> findLiveSites();
+
+    @Query(value = "select s from SiteEntity s where s.retiredAt is not null order by s.retiredAt")
+    List<SiteEntity> findRetiredSites();
+
+    @Modifying
+    @Transactional
+    // Поколение, в которое ещё пишет узел по живой аренде, не выводится
+    @Query(value = "update site set retired_at = current_timestamp(6) where id = :siteId and active = false " +
+            "and not exists (select 1 from crawl_lease l where l.site_id = :siteId and l.status = 'RUNNING' " +
+            "and l.lease_until >= current_timestamp(3))", nativeQuery = true)
+    int markRetired(@Param("siteId") int siteId);
+
+    // Удаление самой строки сайта после очистки его данных, без загрузки связанных коллекций
+    @Modifying
+    @Transactional
+    @Query(value = "delete from site where id = :siteId", nativeQuery = true)
+    int deleteSiteRow(@Param("siteId") int siteId);
+
+    // Переключение поколения одним UPDATE: активным становится только siteId
+    @Modifying
+    @Transactional
+    @Query(value = "update site set active = (id = :siteId) where url = :url", nativeQuery = true)
+    int activateGeneration(@Param("siteId") int siteId, @Param("url") String url);
+
+    // Снятие поколения с обслуживания поиска, например частично загруженного из снимка
+    @Modifying
+    @Transactional
+    @Query(value = "update site set active = false where id = :siteId", nativeQuery = true)
+    int deactivate(@Param("siteId") int siteId);
+
+    // Переключение поколения по аренде: UPDATE срабатывает, только пока аренда принадлежит узлу и не истекла
+    @Modifying
+    @Transactional
+    @Query(value = "update site s join crawl_lease l on l.site_url = s.url " +
+            "set s.active = (s.id = :siteId), s.status = if(s.id = :siteId, 'INDEXED', s.status) " +
+            "where s.url = :url and l.id = :leaseId and l.owner = :owner and l.status = 'RUNNING' " +
+            "and l.site_id = :siteId and l.lease_until >= current_timestamp(3)", nativeQuery = true)
+    int activateLeasedGeneration(@Param("siteId") int siteId, @Param("url") String url,
+                                 @Param("leaseId") int leaseId, @Param("owner") String owner);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update SiteEntity s set s.pageCount = :pages, s.lemmaCount = :lemmas, s.errorCount = :errors, " +
+            "s.bytesFetched = :bytes, s.errorCodes = :errorCodes where s.id = :siteId")
+    int updateCounters(@Param("siteId") int siteId, @Param("pages") long pages, @Param("lemmas") long lemmas,
+                       @Param("errors") long errors, @Param("bytes") long bytes, @Param("errorCodes") String errorCodes);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update SiteEntity s set s.statusTime = :statusTime where s.id = :siteId")
+    int updateStatusTime(@Param("siteId") int siteId, @Param("statusTime") Timestamp statusTime);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update SiteEntity s set s.lastError = :lastError where s.id = :siteId")
+    int updateLastError(@Param("siteId") int siteId, @Param("lastError") String lastError);
+
 }
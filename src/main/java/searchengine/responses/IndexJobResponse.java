@@ -0,0 +1,18 @@
+package searchengine.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class IndexJobResponse {
+    private Boolean result;
+    private String jobId;
+    private String status;
+    private int total;
+    private int done;
+    private int failed;
+    private int skipped;
+}
@@ -1,8 +1,11 @@
 package searchengine.responses;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
+import searchengine.dto.search.SearchProfile;
+import searchengine.dto.search.SiteFacet;
 
 import java.util.List;
 
@@ -13,4 +16,19 @@ public class SearchResponse {
     private Boolean result;
     private Integer count;
     private List<SearchDataResponse> data;
+    // Срок запроса истёк во время построения сниппетов: возвращены не все результаты
+    private Boolean partial;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private SearchProfile profile;
+    // Число найденных страниц по сайтам, без учёта постраничного вывода
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<SiteFacet> facets;
+
+    public SearchResponse(Boolean result, Integer count, List<SearchDataResponse> data) {
+        this(result, count, data, false);
+    }
+
+    public SearchResponse(Boolean result, Integer count, List<SearchDataResponse> data, Boolean partial) {
+        this(result, count, data, partial, null, null);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package searchengine.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class SuggestResponse {
+    private Boolean result;
+    private List<String> suggestions;
+}
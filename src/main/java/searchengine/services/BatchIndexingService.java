@@ -0,0 +1,9 @@
+package searchengine.services;
+
+import searchengine.dto.indexing.IndexPagesRequest;
+import searchengine.responses.IndexJobResponse;
+
+public interface BatchIndexingService {
+    IndexJobResponse startJob(IndexPagesRequest request);
+    IndexJobResponse getJob(String jobId);
+}
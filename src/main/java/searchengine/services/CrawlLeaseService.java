@@ -0,0 +1,11 @@
+package searchengine.services;
+
+import searchengine.config.Site;
+
+import java.util.List;
+
+public interface CrawlLeaseService {
+    void scheduleSites(List<Site> sites);
+    void cancelAll();
+    boolean isCrawlInProgress();
+}
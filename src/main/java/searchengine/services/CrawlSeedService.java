@@ -0,0 +1,12 @@
+package searchengine.services;
+
+import searchengine.utils.SiteCrawlContext;
+
+import java.util.List;
+
+public interface CrawlSeedService {
+    SiteCrawlContext prepareCrawl(String siteUrl);
+    SiteCrawlContext prepareRefresh(String siteUrl);
+    List<String> readSitemap(String sitemapUrl);
+    List<String> findSeedPaths(String siteUrl, SiteCrawlContext crawlContext);
+}
@@ -0,0 +1,8 @@
+package searchengine.services;
+
+import searchengine.model.SiteEntity;
+
+public interface GenerationPurgeService {
+    void retire(SiteEntity siteEntity);
+    void purge();
+}
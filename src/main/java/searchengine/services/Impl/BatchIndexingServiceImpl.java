@@ -0,0 +1,257 @@
+package searchengine.services.Impl;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.BatchIndexSettings;
+import searchengine.config.ConnectionSettings;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+import searchengine.dto.indexing.IndexPagesRequest;
+import searchengine.model.SiteEntity;
+import searchengine.model.SiteStatus;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.responses.IndexJobResponse;
+import searchengine.services.BatchIndexingService;
+import searchengine.services.CrawlSeedService;
+import searchengine.services.IndexingProgressService;
+import searchengine.services.LemmaService;
+import searchengine.services.PageIndexerService;
+import searchengine.services.SegmentIndexService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.utils.EngineMetrics;
+import searchengine.utils.PageFinder;
+import searchengine.utils.SiteCrawlContext;
+import searchengine.utils.UrlNormalizer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пакетная переиндексация страниц. Адреса из списка и карты сайта очищаются от повторов,
+ * группируются по сайтам и загружаются общим пулом ограниченного размера.
+ * Изменения индекса фиксируются пачками через журнал индексатора.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BatchIndexingServiceImpl implements BatchIndexingService {
+    private static final String STATUS_RUNNING = "RUNNING";
+    private static final String STATUS_DONE = "DONE";
+    private static final String STATUS_FAILED = "FAILED";
+
+    private final SitesList sitesToIndexing;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final ConnectionSettings connection;
+    private final LemmaService lemmaService;
+    private final PageIndexerService pageIndexerService;
+    private final SegmentIndexService segmentIndexService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final IndexingProgressService indexingProgressService;
+    private final CrawlSeedService crawlSeedService;
+    private final EngineMetrics metrics;
+    private final BatchIndexSettings batchIndexSettings;
+    private final Map<String, IndexJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshProcessing = new AtomicBoolean(true);
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+    private ExecutorService fetchExecutor;
+
+    @PostConstruct
+    public void start() {
+        fetchExecutor = Executors.newFixedThreadPool(batchIndexSettings.getParallelism());
+    }
+
+    @PreDestroy
+    public void stop() {
+        jobExecutor.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+
+    // Карта сайта загружается уже в задании, запрос проверяет только сам список адресов
+    @Override
+    public IndexJobResponse startJob(IndexPagesRequest request) {
+        removeExpiredJobs();
+        List<String> urls = request.getUrls() == null ? List.of() : request.getUrls();
+        String sitemap = request.getSitemap() == null || request.getSitemap().isBlank() ? null : request.getSitemap();
+        if (urls.isEmpty() && sitemap == null) {
+            throw new IllegalArgumentException("Не задан список страниц или карта сайта");
+        }
+        if (urls.size() > batchIndexSettings.getMaxUrls()) {
+            throw new IllegalArgumentException("Слишком много страниц в задании: " + urls.size());
+        }
+
+        IndexJob job = new IndexJob(UUID.randomUUID().toString());
+        Map<Site, Set<String>> pathsBySite = new LinkedHashMap<>();
+        Map<Site, SiteCrawlContext> contextsBySite = new LinkedHashMap<>();
+        addUrls(job, urls, pathsBySite, contextsBySite);
+        if (sitemap == null && job.getTotal().get() == 0) {
+            throw new IllegalArgumentException("Страницы находятся за пределами сайтов указанных в конфигурационном файле");
+        }
+        jobs.put(job.getId(), job);
+        jobExecutor.submit(() -> runJob(job, sitemap, pathsBySite, contextsBySite));
+        log.info("Запущено задание переиндексации {}: страниц {}, пропущено {}", job.getId(), job.getTotal(), job.getSkipped());
+        return toResponse(job);
+    }
+
+    @Override
+    public IndexJobResponse getJob(String jobId) {
+        IndexJob job = jobs.get(jobId);
+        return job == null ? null : toResponse(job);
+    }
+
+    private void runJob(IndexJob job, String sitemap, Map<Site, Set<String>> pathsBySite, Map<Site, SiteCrawlContext> contextsBySite) {
+        String status = STATUS_DONE;
+        try {
+            if (sitemap != null) {
+                List<String> sitemapUrls = crawlSeedService.readSitemap(sitemap);
+                if (sitemapUrls.isEmpty()) {
+                    throw new IllegalStateException("Не удалось загрузить карту сайта " + sitemap);
+                }
+                if (job.getTotal().get() + sitemapUrls.size() > batchIndexSettings.getMaxUrls()) {
+                    throw new IllegalStateException("Слишком много страниц в задании: " + (job.getTotal().get() + sitemapUrls.size()));
+                }
+                addUrls(job, sitemapUrls, pathsBySite, contextsBySite);
+            }
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            List<SiteEntity> siteEntities = new ArrayList<>();
+            pathsBySite.forEach((site, paths) -> {
+                SiteEntity siteEntity = findOrCreateSite(site);
+                SiteCrawlContext crawlContext = contextsBySite.get(site);
+                siteEntities.add(siteEntity);
+                for (String path : paths) {
+                    tasks.add(CompletableFuture.runAsync(() -> refreshPage(job, siteEntity, crawlContext, path), fetchExecutor));
+                }
+            });
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+            Map<Integer, Integer> failedPages = pageIndexerService.awaitIndexed();
+            for (SiteEntity siteEntity : siteEntities) {
+                if (failedPages.containsKey(siteEntity.getId())) {
+                    log.warn("Задание {}: на сайте {} не проиндексировано страниц {}", job.getId(),
+                            siteEntity.getUrl(), failedPages.get(siteEntity.getId()));
+                }
+                segmentIndexService.flush(siteEntity.getId());
+                if (siteEntity.getStatus() == SiteStatus.INDEXING) {
+                    siteEntity.setStatus(SiteStatus.INDEXED);
+                    siteRepository.save(siteEntity);
+                    indexingProgressService.siteChanged(siteEntity);
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.error("Ошибка задания переиндексации {}", job.getId(), ex);
+            status = STATUS_FAILED;
+        } finally {
+            job.finish(status);
+            log.info("Задание переиндексации {} завершено: готово {}, ошибок {}", job.getId(), job.getDone(), job.getFailed());
+        }
+    }
+
+    // Повторы и адреса вне сайтов из конфигурации отбрасываются до загрузки
+    private void addUrls(IndexJob job, List<String> urls, Map<Site, Set<String>> pathsBySite,
+                         Map<Site, SiteCrawlContext> contextsBySite) {
+        for (String url : urls) {
+            Optional<URL> pageUrl = parseUrl(url);
+            Optional<Site> site = pageUrl.flatMap(this::findSite);
+            if (site.isEmpty()) {
+                job.getSkipped().incrementAndGet();
+                continue;
+            }
+            SiteCrawlContext crawlContext = contextsBySite.computeIfAbsent(site.get(),
+                    key -> crawlSeedService.prepareRefresh(key.getUrl().toString()));
+            String path = crawlContext.getUrlNormalizer().normalize(pageUrl.get().getFile());
+            if (pathsBySite.computeIfAbsent(site.get(), key -> new LinkedHashSet<>()).add(path)) {
+                job.getTotal().incrementAndGet();
+            } else {
+                job.getSkipped().incrementAndGet();
+            }
+        }
+    }
+
+    private void refreshPage(IndexJob job, SiteEntity siteEntity, SiteCrawlContext crawlContext, String path) {
+        try {
+            PageFinder pageFinder = new PageFinder(siteRepository, pageRepository, siteEntity, path, new ConcurrentHashMap<>(),
+                    connection, lemmaService, pageIndexerService, refreshProcessing, metrics, siteStatisticsService, crawlContext);
+            if (pageFinder.refreshPage()) {
+                job.getDone().incrementAndGet();
+            } else {
+                job.getFailed().incrementAndGet();
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Страница {} сайта {} не переиндексирована: {}", path, siteEntity.getUrl(), ex.getMessage());
+            job.getFailed().incrementAndGet();
+        }
+    }
+
+    private synchronized SiteEntity findOrCreateSite(Site site) {
+        SiteEntity siteEntity = siteRepository.getSitePageByUrl(site.getUrl().toString());
+        if (siteEntity != null) {
+            return siteEntity;
+        }
+        siteEntity = new SiteEntity();
+        siteEntity.setName(site.getName());
+        siteEntity.setUrl(site.getUrl().toString());
+        siteEntity.setStatus(SiteStatus.INDEXING);
+        siteEntity = siteRepository.save(siteEntity);
+        indexingProgressService.siteChanged(siteEntity);
+        return siteEntity;
+    }
+
+    private Optional<URL> parseUrl(String url) {
+        try {
+            return Optional.of(new URL(url.trim()));
+        } catch (MalformedURLException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Site> findSite(URL url) {
+        return sitesToIndexing.getSites().stream()
+                .filter(site -> UrlNormalizer.sameHost(url.getHost(), site.getUrl().getHost()))
+                .findFirst();
+    }
+
+    private void removeExpiredJobs() {
+        long expiredBefore = System.currentTimeMillis() - batchIndexSettings.getJobTtlMs();
+        jobs.values().removeIf(job -> job.getFinishedAt() > 0 && job.getFinishedAt() < expiredBefore);
+    }
+
+    private IndexJobResponse toResponse(IndexJob job) {
+        return new IndexJobResponse(true, job.getId(), job.getFinishedAt() > 0 ? job.getStatus() : STATUS_RUNNING,
+                job.getTotal().get(), job.getDone().get(), job.getFailed().get(), job.getSkipped().get());
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class IndexJob {
+        private final String id;
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private volatile String status;
+        private volatile long finishedAt;
+
+        private void finish(String status) {
+            this.status = status;
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+}
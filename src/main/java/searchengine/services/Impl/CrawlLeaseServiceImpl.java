@@ -0,0 +1,180 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.ClusterSettings;
+import searchengine.config.Site;
+import searchengine.model.CrawlLeaseEntity;
+import searchengine.model.LeaseStatus;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.CrawlLeaseRepository;
+import searchengine.services.CrawlLeaseService;
+import searchengine.services.IndexRebuildService;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.SiteCrawlService;
+import searchengine.services.SiteGenerationService;
+import searchengine.services.SnapshotService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Распределённый обход. Запуск индексации на любом узле создаёт по аренде на сайт в таблице crawl_lease,
+ * узлы-обработчики захватывают свободные аренды и продлевают их, пока идёт обход.
+ * Аренда упавшего узла истекает, и сайт переобходится другим узлом в новое поколение.
+ * Для локальной проверки достаточно запустить несколько экземпляров с разными server.port и общей БД.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CrawlLeaseServiceImpl implements CrawlLeaseService {
+    private final ClusterSettings clusterSettings;
+    private final CrawlLeaseRepository leaseRepository;
+    private final SiteCrawlService siteCrawlService;
+    private final SiteGenerationService siteGenerationService;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final IndexRebuildService indexRebuildService;
+    private final SnapshotService snapshotService;
+    // Обходы этого узла: id аренды -> флаг продолжения обхода
+    private final Map<Integer, AtomicBoolean> runningLeases = new ConcurrentHashMap<>();
+    private ExecutorService workerExecutor;
+    private String nodeId;
+
+    @PostConstruct
+    public void init() {
+        nodeId = clusterSettings.getNodeId() == null || clusterSettings.getNodeId().isBlank()
+                ? ManagementFactory.getRuntimeMXBean().getName()
+                : clusterSettings.getNodeId();
+        if (clusterSettings.isEnabled() && clusterSettings.isWorker()) {
+            workerExecutor = Executors.newFixedThreadPool(clusterSettings.getMaxLeases());
+            log.info("Узел {} обрабатывает до {} сайтов одновременно", nodeId, clusterSettings.getMaxLeases());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Аренды не освобождаются: они истекут и перейдут к другим узлам
+        runningLeases.values().forEach(processing -> processing.set(false));
+        if (workerExecutor != null) {
+            workerExecutor.shutdownNow();
+        }
+    }
+
+    // Повторный запуск сбрасывает завершённые и истёкшие аренды; сайт, который ещё обходится, не трогается
+    @Override
+    public void scheduleSites(List<Site> sites) {
+        int scheduled = 0;
+        for (Site site : sites) {
+            String url = site.getUrl().toString();
+            CrawlLeaseEntity lease = leaseRepository.findBySiteUrl(url);
+            if (lease == null) {
+                lease = new CrawlLeaseEntity();
+                lease.setSiteUrl(url);
+                lease.setSiteName(site.getName());
+                lease.setStatus(LeaseStatus.PENDING);
+                leaseRepository.save(lease);
+                scheduled++;
+            } else if (leaseRepository.reschedule(lease.getId(), site.getName()) == 1) {
+                scheduled++;
+            } else {
+                log.info("Сайт {} уже обходится узлом {}, аренда не сброшена", url, lease.getOwner());
+            }
+        }
+        log.info("Созданы аренды обхода для сайтов: {} из {}", scheduled, sites.size());
+    }
+
+    @Override
+    public void cancelAll() {
+        int cancelled = leaseRepository.cancelAll();
+        runningLeases.values().forEach(processing -> processing.set(false));
+        log.info("Отменено аренд обхода: {}", cancelled);
+    }
+
+    @Override
+    public boolean isCrawlInProgress() {
+        return leaseRepository.countActive() > 0;
+    }
+
+    // Метод захвата свободных аренд в пределах maxLeases; во время перестроения индекса
+    // и выгрузки или загрузки снимка аренды не захватываются
+    @Scheduled(fixedDelayString = "${cluster-settings.poll-interval-ms:5000}")
+    public void poll() {
+        if (workerExecutor == null || indexRebuildService.isRebuildInProgress() || snapshotService.isSnapshotInProgress()) {
+            return;
+        }
+        leaseRepository.failExhausted(clusterSettings.getMaxAttempts());
+        int free = clusterSettings.getMaxLeases() - runningLeases.size();
+        if (free <= 0) {
+            return;
+        }
+        for (CrawlLeaseEntity lease : leaseRepository.findClaimable(clusterSettings.getMaxAttempts(), free)) {
+            if (leaseRepository.claim(lease.getId(), nodeId, clusterSettings.getLeaseTtlMs()) == 1) {
+                AtomicBoolean processing = new AtomicBoolean(true);
+                runningLeases.put(lease.getId(), processing);
+                workerExecutor.submit(() -> runLease(lease, processing));
+            }
+        }
+    }
+
+    // Метод продления аренд; потерянная или отменённая аренда останавливает обход на этом узле
+    @Scheduled(fixedDelayString = "${cluster-settings.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        runningLeases.forEach((leaseId, processing) -> {
+            if (processing.get() && leaseRepository.heartbeat(leaseId, nodeId, clusterSettings.getLeaseTtlMs()) == 0) {
+                log.warn("Аренда {} потеряна узлом {}, обход остановлен", leaseId, nodeId);
+                processing.set(false);
+            }
+        });
+    }
+
+    // Поколения, переключённые другими узлами, подхватываются поиском этого узла
+    @Scheduled(fixedDelayString = "${cluster-settings.poll-interval-ms:5000}")
+    public void syncGenerations() {
+        if (!clusterSettings.isEnabled()) {
+            return;
+        }
+        for (Integer siteId : siteGenerationService.refreshServingSites()) {
+            lemmaDictionaryService.reloadSite(siteId);
+        }
+    }
+
+    private void runLease(CrawlLeaseEntity lease, AtomicBoolean processing) {
+        try {
+            log.info("Узел {} получил аренду обхода {}", nodeId, lease.getSiteUrl());
+            // Поколение, брошенное упавшим узлом, выводится из работы: обход начинается заново
+            siteCrawlService.retireGenerations(lease.getSiteUrl());
+            SiteEntity generation = siteGenerationService.createGeneration(toSite(lease));
+            if (leaseRepository.assignGeneration(lease.getId(), nodeId, generation.getId()) == 0) {
+                log.warn("Аренда {} потеряна узлом {} до начала обхода", lease.getSiteUrl(), nodeId);
+                return;
+            }
+            boolean indexed = siteCrawlService.crawlLeased(generation, processing, lease.getId(), nodeId);
+            if (processing.get()) {
+                leaseRepository.finish(lease.getId(), nodeId, (indexed ? LeaseStatus.DONE : LeaseStatus.FAILED).name());
+            }
+        } catch (RuntimeException | MalformedURLException ex) {
+            log.error("Ошибка обхода по аренде {}", lease.getSiteUrl(), ex);
+            leaseRepository.finish(lease.getId(), nodeId, LeaseStatus.FAILED.name());
+        } finally {
+            runningLeases.remove(lease.getId());
+        }
+    }
+
+    private Site toSite(CrawlLeaseEntity lease) throws MalformedURLException {
+        Site site = new Site();
+        site.setUrl(new URL(lease.getSiteUrl()));
+        site.setName(lease.getSiteName());
+        return site;
+    }
+}
@@ -0,0 +1,222 @@
+package searchengine.services.Impl;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.stereotype.Service;
+import searchengine.config.ConnectionSettings;
+import searchengine.config.CrawlSettings;
+import searchengine.config.FetchSettings;
+import searchengine.config.SeedSettings;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+import searchengine.services.CrawlSeedService;
+import searchengine.utils.HttpClientPool;
+import searchengine.utils.NearDuplicateIndex;
+import searchengine.utils.PageFetcher;
+import searchengine.utils.RobotsRules;
+import searchengine.utils.SiteCrawlContext;
+import searchengine.utils.SitemapParser;
+import searchengine.utils.UrlNormalizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Подготовка обхода сайта: правила robots.txt, нормализация адресов, поиск дубликатов
+ * и начальное наполнение очереди адресами из карт сайта.
+ * Из карт сайта берутся самые свежие по lastmod адреса, запрещённые robots.txt отбрасываются до загрузки.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CrawlSeedServiceImpl implements CrawlSeedService {
+    private final ConnectionSettings connection;
+    private final SeedSettings seedSettings;
+    private final CrawlSettings crawlSettings;
+    private final FetchSettings fetchSettings;
+    private final SitesList sitesList;
+    private final HttpClientPool httpClientPool;
+
+    @Override
+    public SiteCrawlContext prepareCrawl(String siteUrl) {
+        Optional<Site> site = findSite(siteUrl);
+        boolean nearDuplicates = site.map(Site::getNearDuplicates).orElse(crawlSettings.isNearDuplicates());
+        RobotsRules robotsRules = loadRobots(siteUrl);
+        // Crawl-delay ограничивает скорость сверху, адаптивная скорость его не превышает
+        httpClientPool.rateLimiter(hostOf(siteUrl)).limitByCrawlDelay(robotsRules.getCrawlDelayMs());
+        return new SiteCrawlContext(createFetcher(siteUrl, site), robotsRules, createNormalizer(site), crawlSettings.isCanonicalLinks(),
+                nearDuplicates ? new NearDuplicateIndex(crawlSettings.getNearDuplicateDistance()) : null,
+                crawlSettings.getShingleSize());
+    }
+
+    // Для точечной переиндексации страниц robots.txt, канонические адреса и дубликаты не учитываются
+    @Override
+    public SiteCrawlContext prepareRefresh(String siteUrl) {
+        Optional<Site> site = findSite(siteUrl);
+        return new SiteCrawlContext(createFetcher(siteUrl, site), RobotsRules.allowAll(), createNormalizer(site), false, null,
+                crawlSettings.getShingleSize());
+    }
+
+    private PageFetcher createFetcher(String siteUrl, Optional<Site> site) {
+        int connectTimeoutMs = site.map(Site::getConnectTimeoutMs).orElse(connection.getConnectTimeoutMs());
+        int readTimeoutMs = site.map(Site::getReadTimeoutMs).orElse(connection.getReadTimeoutMs());
+        String host = hostOf(siteUrl);
+        return new PageFetcher(httpClientPool.forHost(host, connectTimeoutMs), httpClientPool.watchdog(), httpClientPool.rateLimiter(host),
+                fetchSettings, connection.getUserAgent(), connection.getReferer(), readTimeoutMs, connection.getMaxBodyKb() * 1024L,
+                connection.getContentTypes());
+    }
+
+    private UrlNormalizer createNormalizer(Optional<Site> site) {
+        boolean dropQuery = site.map(Site::getDropQuery).orElse(crawlSettings.isDropQuery());
+        return new UrlNormalizer(dropQuery, crawlSettings.getIgnoredQueryParams());
+    }
+
+    private Optional<Site> findSite(String siteUrl) {
+        String host = hostOf(siteUrl);
+        return sitesList.getSites().stream()
+                .filter(site -> UrlNormalizer.sameHost(site.getUrl().getHost(), host))
+                .findFirst();
+    }
+
+    private RobotsRules loadRobots(String siteUrl) {
+        if (!seedSettings.isRespectRobots()) {
+            return RobotsRules.allowAll();
+        }
+        String robotsUrl = siteRoot(siteUrl) + "/robots.txt";
+        try {
+            Connection.Response response = request(robotsUrl).execute();
+            if (response.statusCode() != 200) {
+                log.info("robots.txt не найден для {}: код {}", siteUrl, response.statusCode());
+                return RobotsRules.allowAll();
+            }
+            return RobotsRules.parse(response.body(), connection.getUserAgent());
+        } catch (IOException ex) {
+            log.warn("Не удалось загрузить {}: {}", robotsUrl, ex.getMessage());
+            return RobotsRules.allowAll();
+        }
+    }
+
+    @Override
+    public List<String> readSitemap(String sitemapUrl) {
+        return collectSitemapEntries(List.of(sitemapUrl)).stream()
+                .map(SitemapEntry::getLoc)
+                .collect(Collectors.toList());
+    }
+
+    // Метод подбора начальных адресов обхода: пути страниц сайта из карт, свежие первыми
+    @Override
+    public List<String> findSeedPaths(String siteUrl, SiteCrawlContext crawlContext) {
+        if (!seedSettings.isUseSitemaps()) {
+            return List.of();
+        }
+        RobotsRules robotsRules = crawlContext.getRobotsRules();
+        List<String> sitemaps = robotsRules.getSitemaps().isEmpty()
+                ? List.of(siteRoot(siteUrl) + "/sitemap.xml")
+                : robotsRules.getSitemaps();
+        String siteHost = hostOf(siteUrl);
+        Set<String> paths = new LinkedHashSet<>();
+        for (SitemapEntry entry : collectSitemapEntries(sitemaps)) {
+            crawlContext.getUrlNormalizer().toSitePath(entry.getLoc(), siteHost)
+                    .filter(path -> !path.equals("/") && robotsRules.isAllowed(path))
+                    .ifPresent(paths::add);
+        }
+        log.info("Из карт сайта {} получено начальных адресов: {}", siteUrl, paths.size());
+        return new ArrayList<>(paths);
+    }
+
+    // Обход карт и индексов карт в ширину; в памяти держится не больше maxSitemapUrls самых свежих адресов
+    private List<SitemapEntry> collectSitemapEntries(List<String> sitemapUrls) {
+        int limit = seedSettings.getMaxSitemapUrls();
+        PriorityQueue<SitemapEntry> newest = new PriorityQueue<>(Comparator.comparingLong(SitemapEntry::getLastModified));
+        Set<String> visited = new HashSet<>();
+        List<String> level = new ArrayList<>(sitemapUrls);
+        for (int depth = 0; depth <= seedSettings.getMaxSitemapDepth() && !level.isEmpty(); depth++) {
+            List<String> nested = new ArrayList<>();
+            for (String sitemapUrl : level) {
+                if (!visited.add(sitemapUrl)) {
+                    continue;
+                }
+                readSitemap(sitemapUrl, new SitemapParser.Handler() {
+                    @Override
+                    public void url(String loc, long lastModified) {
+                        newest.add(new SitemapEntry(loc, lastModified));
+                        if (newest.size() > limit) {
+                            newest.poll();
+                        }
+                    }
+
+                    @Override
+                    public void sitemap(String loc) {
+                        nested.add(loc);
+                    }
+                });
+            }
+            level = nested;
+        }
+        List<SitemapEntry> entries = new ArrayList<>(newest);
+        entries.sort(Comparator.comparingLong(SitemapEntry::getLastModified).reversed());
+        return entries;
+    }
+
+    private void readSitemap(String sitemapUrl, SitemapParser.Handler handler) {
+        try {
+            Connection.Response response = request(sitemapUrl).execute();
+            if (response.statusCode() != 200) {
+                log.info("Карта сайта {} недоступна: код {}", sitemapUrl, response.statusCode());
+                return;
+            }
+            try (InputStream body = response.bodyStream()) {
+                SitemapParser.parse(body, handler);
+            }
+        } catch (IOException ex) {
+            log.warn("Не удалось прочитать карту сайта {}: {}", sitemapUrl, ex.getMessage());
+        }
+    }
+
+    private Connection request(String url) {
+        return Jsoup.connect(url)
+                .userAgent(connection.getUserAgent())
+                .timeout(seedSettings.getTimeoutMs())
+                .ignoreContentType(true)
+                .ignoreHttpErrors(true)
+                .maxBodySize(0);
+    }
+
+    private String siteRoot(String siteUrl) {
+        try {
+            URL url = new URL(siteUrl);
+            return url.getProtocol() + "://" + url.getAuthority();
+        } catch (MalformedURLException ex) {
+            return siteUrl.endsWith("/") ? siteUrl.substring(0, siteUrl.length() - 1) : siteUrl;
+        }
+    }
+
+    private String hostOf(String siteUrl) {
+        try {
+            return new URL(siteUrl).getHost();
+        } catch (MalformedURLException ex) {
+            return siteUrl;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class SitemapEntry {
+        private final String loc;
+        private final long lastModified;
+    }
+}
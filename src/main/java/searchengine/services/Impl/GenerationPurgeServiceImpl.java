@@ -0,0 +1,89 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.PurgeSettings;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.GenerationPurgeService;
+import searchengine.services.IndexRebuildService;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.SegmentIndexService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.storage.IndexStorage;
+
+import java.util.List;
+
+/**
+ * Фоновое удаление выведенных из работы поколений сайтов. Вывод поколения - одна запись retired_at
+ * и очистка структур в памяти, сами строки удаляются небольшими транзакциями: сначала index_search
+ * и страницы пачками, затем леммы, последней - строка site. Блокировки держатся недолго
+ * и не мешают обходу нового поколения.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class GenerationPurgeServiceImpl implements GenerationPurgeService {
+    private final PurgeSettings purgeSettings;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final IndexStorage indexStorage;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final SegmentIndexService segmentIndexService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final IndexRebuildService indexRebuildService;
+
+    // Метод вывода поколения: активное поколение не выводится
+    @Override
+    public void retire(SiteEntity siteEntity) {
+        if (siteRepository.markRetired(siteEntity.getId()) == 0) {
+            return;
+        }
+        lemmaDictionaryService.removeSite(siteEntity.getId());
+        segmentIndexService.removeSite(siteEntity.getId());
+        siteStatisticsService.removeSite(siteEntity.getId());
+        log.info("Поколение {} сайта {} выведено из работы", siteEntity.getGeneration(), siteEntity.getUrl());
+    }
+
+    // Перестроение индекса читает страницы и пишет постинги без внешних ключей,
+    // поэтому на это время строки не удаляются; флаг проверяется перед каждой частью
+    @Override
+    @Scheduled(fixedDelayString = "${purge-settings.interval-ms:1000}")
+    public void purge() {
+        int chunks = purgeSettings.getChunksPerRun();
+        for (SiteEntity siteEntity : siteRepository.findRetiredSites()) {
+            while (chunks > 0) {
+                if (indexRebuildService.isRebuildInProgress()) {
+                    return;
+                }
+                chunks--;
+                if (purgeChunk(siteEntity)) {
+                    log.info("Удалено поколение {} сайта {}", siteEntity.getGeneration(), siteEntity.getUrl());
+                    break;
+                }
+            }
+            if (chunks == 0) {
+                return;
+            }
+        }
+    }
+
+    // Метод удаления одной части поколения; возвращает true, когда поколение удалено целиком
+    private boolean purgeChunk(SiteEntity siteEntity) {
+        List<Integer> pageIds = pageRepository.findIdsBySiteId(siteEntity.getId(), purgeSettings.getPageChunk());
+        if (!pageIds.isEmpty()) {
+            indexStorage.deletePostings(siteEntity.getId(), pageIds);
+            pageRepository.deleteAllByIds(pageIds);
+            return false;
+        }
+        // Постинги сайта удалены вместе со страницами, остаются только леммы
+        if (indexStorage.deleteLemmas(siteEntity.getId(), purgeSettings.getLemmaChunk()) > 0) {
+            return false;
+        }
+        siteRepository.deleteSiteRow(siteEntity.getId());
+        return true;
+    }
+}
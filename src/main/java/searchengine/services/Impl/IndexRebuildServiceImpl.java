@@ -0,0 +1,238 @@
+package searchengine.services.Impl;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.RebuildSettings;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.CrawlLeaseRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.responses.IndexJobResponse;
+import searchengine.services.IndexRebuildService;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.LemmaService;
+import searchengine.services.PageIndexerService;
+import searchengine.services.SegmentIndexService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.storage.IndexRebuild;
+import searchengine.storage.IndexStorage;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Перестроение индекса из сохранённого содержимого страниц без повторной загрузки сайтов.
+ * Страницы живых сайтов читаются одним потоковым запросом, лемматизируются на всех ядрах
+ * и загружаются в новый индекс хранилища, который в конце целиком подменяет прежний.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class IndexRebuildServiceImpl implements IndexRebuildService {
+    private static final String STATUS_RUNNING = "RUNNING";
+    private static final String STATUS_DONE = "DONE";
+    private static final String STATUS_FAILED = "FAILED";
+    private static final long DRAIN_POLL_MS = 1000;
+
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final CrawlLeaseRepository crawlLeaseRepository;
+    private final LemmaService lemmaService;
+    private final PageIndexerService pageIndexerService;
+    private final IndexStorage indexStorage;
+    private final SegmentIndexService segmentIndexService;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final PlatformTransactionManager transactionManager;
+    private final RebuildSettings rebuildSettings;
+    private final Map<String, RebuildJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+
+    @PreDestroy
+    public void stop() {
+        jobExecutor.shutdownNow();
+    }
+
+    @Override
+    public IndexJobResponse startJob() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Перестроение индекса уже запущено");
+        }
+        removeExpiredJobs();
+        RebuildJob job = new RebuildJob(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        jobExecutor.submit(() -> runJob(job));
+        log.info("Запущено перестроение индекса {}", job.getId());
+        return toResponse(job);
+    }
+
+    @Override
+    public IndexJobResponse getJob(String jobId) {
+        RebuildJob job = jobs.get(jobId);
+        return job == null ? null : toResponse(job);
+    }
+
+    @Override
+    public boolean isRebuildInProgress() {
+        return running.get();
+    }
+
+    private void runJob(RebuildJob job) {
+        long start = System.currentTimeMillis();
+        int parallelism = rebuildSettings.getParallelism() > 0
+                ? rebuildSettings.getParallelism() : Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        IndexRebuild rebuild = null;
+        List<Integer> siteIds = List.of();
+        boolean segmentsDropped = false;
+        try {
+            awaitRunningLeases();
+            pageIndexerService.awaitIndexed();
+            job.getTotal().set(pageRepository.countIndexablePages());
+            rebuild = indexStorage.beginRebuild();
+            readPages(job, rebuild, workers, parallelism);
+            // Живые сайты читаются после загрузки страниц, чтобы перечитать и поколения, переключённые за это время.
+            // Сегменты хранят id прежних лемм: до построения новых поиск читает хранилище
+            siteIds = siteRepository.findLiveSites().stream().map(SiteEntity::getId).collect(Collectors.toList());
+            segmentsDropped = true;
+            siteIds.forEach(segmentIndexService::removeSite);
+            rebuild.commit();
+            rebuild = null;
+            for (int siteId : siteIds) {
+                lemmaDictionaryService.removeSite(siteId);
+                lemmaDictionaryService.loadSite(siteId);
+                siteStatisticsService.lemmasRebuilt(siteId, indexStorage.countLemmas(siteId));
+            }
+            job.finish(STATUS_DONE);
+            log.info("Перестроение индекса {} завершено за {} мс: страниц {}, ошибок {}", job.getId(),
+                    System.currentTimeMillis() - start, job.getDone(), job.getFailed());
+        } catch (RuntimeException | InterruptedException ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("Ошибка перестроения индекса {}", job.getId(), ex);
+            abort(rebuild);
+            job.finish(STATUS_FAILED);
+        } finally {
+            workers.shutdownNow();
+            if (segmentsDropped) {
+                siteIds.forEach(segmentIndexService::rebuildSite);
+            }
+            running.set(false);
+        }
+    }
+
+    // Аренды, захваченные до запуска, дообходятся: их страницы должны попасть в новый индекс.
+    // Новые аренды этот узел не захватывает, пока флаг перестроения поднят
+    private void awaitRunningLeases() throws InterruptedException {
+        long running = crawlLeaseRepository.countRunning();
+        if (running > 0) {
+            log.info("Перестроение индекса ждёт завершения обходов по арендам: {}", running);
+        }
+        while (crawlLeaseRepository.countRunning() > 0) {
+            Thread.sleep(DRAIN_POLL_MS);
+        }
+    }
+
+    // Курсор держит соединение читающей транзакции, поэтому запись в новый индекс идёт только из рабочих потоков;
+    // семафор ограничивает число прочитанных, но ещё не обработанных страниц
+    private void readPages(RebuildJob job, IndexRebuild rebuild, ExecutorService workers, int parallelism) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(parallelism + rebuildSettings.getQueueCapacity());
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> pages = pageRepository.streamIndexablePages()) {
+                pages.takeWhile(row -> error.get() == null).forEach(row -> {
+                    inFlight.acquireUninterruptibly();
+                    int pageId = ((Number) row[0]).intValue();
+                    int siteId = ((Number) row[1]).intValue();
+                    String content = (String) row[2];
+                    workers.execute(() -> {
+                        try {
+                            indexPage(job, rebuild, siteId, pageId, content);
+                        } catch (RuntimeException ex) {
+                            error.compareAndSet(null, ex);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                });
+            }
+        });
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    // Страница, которую не удалось лемматизировать, не попадает в индекс; ошибка записи прерывает перестроение
+    private void indexPage(RebuildJob job, IndexRebuild rebuild, int siteId, int pageId, String content) {
+        Map<String, Integer> lemmas;
+        try {
+            lemmas = lemmaService.getLemmasFromText(content);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Страница {} не лемматизирована: {}", pageId, ex.getMessage());
+            job.getFailed().incrementAndGet();
+            return;
+        }
+        rebuild.addPage(siteId, pageId, lemmas);
+        job.getDone().incrementAndGet();
+    }
+
+    private void abort(IndexRebuild rebuild) {
+        if (rebuild == null) {
+            return;
+        }
+        try {
+            rebuild.abort();
+        } catch (RuntimeException ex) {
+            log.error("Не удалось удалить недостроенный индекс", ex);
+        }
+    }
+
+    private void removeExpiredJobs() {
+        long expiredBefore = System.currentTimeMillis() - rebuildSettings.getJobTtlMs();
+        jobs.values().removeIf(job -> job.getFinishedAt() > 0 && job.getFinishedAt() < expiredBefore);
+    }
+
+    private IndexJobResponse toResponse(RebuildJob job) {
+        return new IndexJobResponse(true, job.getId(), job.getFinishedAt() > 0 ? job.getStatus() : STATUS_RUNNING,
+                job.getTotal().get(), job.getDone().get(), job.getFailed().get(), 0);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class RebuildJob {
+        private final String id;
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile String status;
+        private volatile long finishedAt;
+
+        private void finish(String status) {
+            this.status = status;
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+}
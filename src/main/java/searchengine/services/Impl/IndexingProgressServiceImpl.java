@@ -0,0 +1,143 @@
+package searchengine.services.Impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.dto.statistics.SiteProgressItem;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.IndexingProgressService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.utils.EngineMetrics;
+import searchengine.utils.SiteCounters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Поток прогресса индексации для панели управления. Таблица site читается только при подписке,
+ * дальше статусы сайтов приходят событиями обхода, а число страниц и ошибок берётся из счётчиков в памяти.
+ * Раз в интервал подписчикам отправляются только изменившиеся сайты; новый подписчик сразу получает полный снимок.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class IndexingProgressServiceImpl implements IndexingProgressService {
+    private static final String EVENT_NAME = "progress";
+
+    private final SiteRepository siteRepository;
+    private final SiteStatisticsService siteStatisticsService;
+    private final EngineMetrics metrics;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    // Последнее поколение каждого сайта по адресу
+    private final Map<String, TrackedSite> sitesByUrl = new HashMap<>();
+    private final Map<Integer, SiteProgressItem> lastSnapshot = new HashMap<>();
+    private long lastPushAt;
+
+    @Override
+    public synchronized SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(ex -> emitters.remove(emitter));
+        sitesByUrl.clear();
+        siteRepository.findLatestGenerations().forEach(this::track);
+        push();
+        emitters.add(emitter);
+        send(emitter, new ArrayList<>(lastSnapshot.values()));
+        return emitter;
+    }
+
+    // Метод приёма смены статуса сайта; изменение сразу уходит подписчикам
+    @Override
+    public synchronized void siteChanged(SiteEntity siteEntity) {
+        track(siteEntity);
+        if (!emitters.isEmpty()) {
+            push();
+        }
+    }
+
+    // Метод рассылки изменений; снимок строится из памяти без запросов к БД
+    @Override
+    @Scheduled(fixedDelayString = "${statistics-settings.push-interval-ms:1000}")
+    public synchronized void push() {
+        long now = System.currentTimeMillis();
+        double elapsedSeconds = lastPushAt > 0 ? (now - lastPushAt) / 1000.0 : 0;
+        lastPushAt = now;
+
+        List<SiteProgressItem> changed = new ArrayList<>();
+        Map<Integer, SiteProgressItem> snapshot = new HashMap<>();
+        for (TrackedSite site : sitesByUrl.values()) {
+            SiteProgressItem previous = lastSnapshot.get(site.getId());
+            SiteProgressItem item = buildItem(site, previous, elapsedSeconds);
+            snapshot.put(item.getSiteId(), item);
+            if (!item.equals(previous)) {
+                changed.add(item);
+            }
+        }
+        lastSnapshot.clear();
+        lastSnapshot.putAll(snapshot);
+        if (!changed.isEmpty()) {
+            emitters.forEach(emitter -> send(emitter, changed));
+        }
+    }
+
+    // Более старое поколение не заменяет уже известное новое
+    private void track(SiteEntity siteEntity) {
+        TrackedSite known = sitesByUrl.get(siteEntity.getUrl());
+        if (known != null && known.getGeneration() > siteEntity.getGeneration()) {
+            return;
+        }
+        long statusTime = siteEntity.getStatusTime() == null ? 0 : siteEntity.getStatusTime().getTime();
+        sitesByUrl.put(siteEntity.getUrl(), new TrackedSite(siteEntity.getId(), siteEntity.getGeneration(),
+                siteEntity.getUrl(), siteEntity.getName(), String.valueOf(siteEntity.getStatus()), statusTime));
+    }
+
+    private SiteProgressItem buildItem(TrackedSite site, SiteProgressItem previous, double elapsedSeconds) {
+        SiteCounters counters = siteStatisticsService.getCounters(site.getId());
+        SiteProgressItem item = new SiteProgressItem();
+        item.setSiteId(site.getId());
+        item.setUrl(site.getUrl());
+        item.setName(site.getName());
+        item.setStatus(site.getStatus());
+        item.setPages(counters.getPages());
+        item.setQueued(metrics.frontier(site.getUrl()).get());
+        item.setErrors(counters.getErrors());
+        item.setErrorRate(counters.getPages() == 0 ? 0 : (double) counters.getErrors() / counters.getPages());
+        if (previous != null && elapsedSeconds > 0) {
+            item.setPagesPerSecond(Math.max(0, counters.getPages() - previous.getPages()) / elapsedSeconds);
+        }
+        long statusTime = counters.getLastActivity();
+        item.setStatusTime(statusTime == 0 ? site.getStatusTime() : statusTime);
+        return item;
+    }
+
+    private void send(SseEmitter emitter, Collection<SiteProgressItem> items) {
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_NAME).data(items));
+        } catch (IOException | IllegalStateException ex) {
+            log.debug("Подписчик прогресса отключился: {}", ex.getMessage());
+            emitters.remove(emitter);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class TrackedSite {
+        private final int id;
+        private final int generation;
+        private final String url;
+        private final String name;
+        private final String status;
+        private final long statusTime;
+    }
+}
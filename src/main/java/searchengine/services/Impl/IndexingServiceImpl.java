@@ -6,8 +6,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
+import searchengine.config.ClusterSettings;
 import searchengine.config.ConnectionSettings;
-import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.model.PageEntity;
 
@@ -17,17 +17,23 @@ import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 import searchengine.responses.NotOkResponse;
 import searchengine.responses.OkResponse;
+import searchengine.services.CrawlLeaseService;
+import searchengine.services.CrawlSeedService;
+import searchengine.services.IndexingProgressService;
 import searchengine.services.IndexingService;
 import searchengine.services.LemmaService;
 import searchengine.services.PageIndexerService;
+import searchengine.services.SiteCrawlService;
+import searchengine.services.SiteGenerationService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.utils.EngineMetrics;
 import searchengine.utils.PageFinder;
+import searchengine.utils.SiteCrawlContext;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
@@ -38,22 +44,33 @@ import java.util.stream.Collectors;
 public class IndexingServiceImpl implements IndexingService {
     private final PageIndexerService pageIndexerService;
     private final LemmaService lemmaService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final IndexingProgressService indexingProgressService;
+    private final SiteGenerationService siteGenerationService;
+    private final SiteCrawlService siteCrawlService;
+    private final CrawlLeaseService crawlLeaseService;
+    private final ClusterSettings clusterSettings;
+    private final CrawlSeedService crawlSeedService;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final SitesList sitesToIndexing;
-    private final Set<SiteEntity> siteEntityAllFromDB = new HashSet<>();
     private final ConnectionSettings connection;
+    private final EngineMetrics metrics;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private final AtomicBoolean indexingProcessing = new AtomicBoolean(false);
 
     @Override
     public void startIndexing() {
+        if (clusterSettings.isEnabled()) {
+            // Сайты раздаются узлам кластера через аренды, обход идёт на узлах-обработчиках
+            crawlLeaseService.scheduleSites(sitesToIndexing.getSites());
+            return;
+        }
         executor.submit(() -> {
             indexingProcessing.set(true);
             try {
-                deleteSiteEntityAndPagesInDB();
-                addSiteEntityToDB();
-                indexAllSiteEntity();
+                sitesToIndexing.getSites().forEach(site -> siteCrawlService.retireGenerations(site.getUrl().toString()));
+                indexAllSiteEntity(createGenerations());
             } catch (RuntimeException | InterruptedException ex) {
                 log.error("Error: ", ex);
             } finally {
@@ -65,6 +82,9 @@ public class IndexingServiceImpl implements IndexingService {
     @Override
     public void stopIndexing() {
         indexingProcessing.set(false);
+        if (clusterSettings.isEnabled()) {
+            crawlLeaseService.cancelAll();
+        }
     }
 
     @Override
@@ -104,63 +124,20 @@ public class IndexingServiceImpl implements IndexingService {
 
     @Override
     public boolean isIndexingInProgress() {
-        return indexingProcessing.get();
-    }
-
-    private void deleteSiteEntityAndPagesInDB() {
-        List<SiteEntity> sitesFromDB = siteRepository.findAll();
-        for (SiteEntity siteEntityDB : sitesFromDB) {
-            for (Site siteApp : sitesToIndexing.getSites()) {
-                if (siteEntityDB.getUrl().equals(siteApp.getUrl().toString())) {
-                    siteRepository.deleteById(siteEntityDB.getId());
-                }
-            }
-        }
+        return indexingProcessing.get() || (clusterSettings.isEnabled() && crawlLeaseService.isCrawlInProgress());
     }
 
-    private void addSiteEntityToDB() {
-        for (Site siteApp : sitesToIndexing.getSites()) {
-            SiteEntity siteEntityDAO = new SiteEntity();
-            siteEntityDAO.setStatus(SiteStatus.INDEXING);
-            siteEntityDAO.setName(siteApp.getName());
-            siteEntityDAO.setUrl(siteApp.getUrl().toString());
-            siteRepository.save(siteEntityDAO);
-        }
-    }
-
-    private void indexAllSiteEntity() throws InterruptedException {
-        siteEntityAllFromDB.addAll(siteRepository.findAll());
-        List<String> urlToIndexing = sitesToIndexing.getSites().stream()
-                .map(site -> site.getUrl().toString())
+    // Новое поколение каждого сайта пишется рядом с активным, поиск продолжает работать по активному
+    private List<SiteEntity> createGenerations() {
+        return sitesToIndexing.getSites().stream()
+                .map(siteGenerationService::createGeneration)
                 .collect(Collectors.toList());
-        siteEntityAllFromDB.removeIf(sitePage -> !urlToIndexing.contains(sitePage.getUrl()));
+    }
 
+    private void indexAllSiteEntity(List<SiteEntity> generations) throws InterruptedException {
         List<Thread> indexingThreadList = new ArrayList<>();
-        for (SiteEntity siteDomain : siteEntityAllFromDB) {
-            Runnable indexSite = () -> {
-                ConcurrentHashMap<String, PageEntity> resultForkJoinPageIndexer = new ConcurrentHashMap<>();
-                try {
-                    log.info("Запущена индексация {}", siteDomain.getUrl());
-                    new ForkJoinPool().invoke(new PageFinder(siteRepository, pageRepository, siteDomain, "", resultForkJoinPageIndexer, connection, lemmaService, pageIndexerService, indexingProcessing));
-                } catch (SecurityException ex) {
-                    SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
-                    siteEntity.setStatus(SiteStatus.FAILED);
-                    siteEntity.setLastError(ex.getMessage());
-                    siteRepository.save(siteEntity);
-                }
-                if (!indexingProcessing.get()) {
-                    log.warn("Indexing stopped by user, site: {}", siteDomain.getUrl());
-                    SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
-                    siteEntity.setStatus(SiteStatus.FAILED);
-                    siteEntity.setLastError("Indexing stopped by user");
-                    siteRepository.save(siteEntity);
-                } else {
-                    log.info("Проиндексирован сайт: {}", siteDomain.getUrl());
-                    SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
-                    siteEntity.setStatus(SiteStatus.INDEXED);
-                    siteRepository.save(siteEntity);
-                }
-            };
+        for (SiteEntity siteDomain : generations) {
+            Runnable indexSite = () -> siteCrawlService.crawl(siteDomain, indexingProcessing);
             Thread thread = new Thread(indexSite);
             indexingThreadList.add(thread);
             thread.start();
@@ -179,22 +156,28 @@ public class IndexingServiceImpl implements IndexingService {
             // Create a new entry in the database if it does not exist
             siteDomain.setStatus(SiteStatus.INDEXING);
             siteRepository.save(siteDomain);
+            indexingProgressService.siteChanged(siteDomain);
         }
 
         ConcurrentHashMap<String, PageEntity> resultForkJoinPageIndexer = new ConcurrentHashMap<>();
         try {
             log.info("Запущена переиндексация страницы: {}", url.toString());
-            PageFinder pageFinder = new PageFinder(siteRepository, pageRepository, siteDomain, url.getPath(), resultForkJoinPageIndexer, connection, lemmaService, pageIndexerService, indexingProcessing);
+            SiteCrawlContext crawlContext = crawlSeedService.prepareRefresh(siteDomain.getUrl());
+            String path = crawlContext.getUrlNormalizer().normalize(url.getFile());
+            PageFinder pageFinder = new PageFinder(siteRepository, pageRepository, siteDomain, path, resultForkJoinPageIndexer, connection, lemmaService, pageIndexerService, indexingProcessing, metrics, siteStatisticsService, crawlContext);
             pageFinder.refreshPage();
+            pageIndexerService.awaitIndexed();
         } catch (SecurityException ex) {
             SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
             siteEntity.setStatus(SiteStatus.FAILED);
             siteEntity.setLastError(ex.getMessage());
             siteRepository.save(siteEntity);
+            indexingProgressService.siteChanged(siteEntity);
         }
         log.info("Проиндексирован сайт: {}", siteDomain.getName());
         SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
         siteEntity.setStatus(SiteStatus.INDEXED);
         siteRepository.save(siteEntity);
+        indexingProgressService.siteChanged(siteEntity);
     }
 }
\ No newline at end of file
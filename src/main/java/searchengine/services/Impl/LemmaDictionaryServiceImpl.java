@@ -0,0 +1,256 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.SiteGenerationService;
+import searchengine.storage.IndexStorage;
+import searchengine.utils.LemmaTrie;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LemmaDictionaryServiceImpl implements LemmaDictionaryService {
+    private final SiteRepository siteRepository;
+    private final IndexStorage indexStorage;
+    private final SearchSettings searchSettings;
+    private final SiteGenerationService siteGenerationService;
+    private final Map<Integer, SiteDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    // Словари строятся один раз при старте, дальше только пополняются индексатором
+    @PostConstruct
+    public void loadDictionaries() {
+        long start = System.currentTimeMillis();
+        for (SiteEntity siteEntity : siteRepository.findLiveSites()) {
+            loadSite(siteEntity.getId());
+        }
+        log.info("Словарь лемм загружен за {} мс, сайтов: {}", System.currentTimeMillis() - start, dictionaries.size());
+    }
+
+    @Override
+    public void addLemma(int siteId, String lemma, long weight) {
+        dictionaryFor(siteId).add(lemma, weight);
+    }
+
+    // Запросы пользователей поднимают вес лемм в подсказках; прибавка затухает в decayQueryBoosts()
+    @Override
+    public void recordQuery(Integer siteId, Collection<String> lemmas) {
+        for (SiteDictionary dictionary : dictionariesFor(siteId)) {
+            lemmas.stream()
+                    .filter(dictionary::contains)
+                    .forEach(lemma -> dictionary.boost(lemma, searchSettings.getSuggestQueryWeight()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search-settings.suggest-decay-interval-ms:3600000}",
+            initialDelayString = "${search-settings.suggest-decay-interval-ms:3600000}")
+    public void decayQueryBoosts() {
+        dictionaries.values().forEach(dictionary -> dictionary.decay(searchSettings.getSuggestQueryDecay()));
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        dictionaries.remove(siteId);
+    }
+
+    // Словарь поколения, проиндексированного другим узлом кластера, читается из БД
+    @Override
+    public void loadSite(int siteId) {
+        if (dictionaries.containsKey(siteId)) {
+            return;
+        }
+        SiteDictionary dictionary = dictionaryFor(siteId);
+        indexStorage.findLemmaWeights(siteId)
+                .forEach(lemmaWeight -> dictionary.add(lemmaWeight.getLemma(), lemmaWeight.getWeight()));
+    }
+
+    // Метод замены словаря сайта весами из хранилища: накопленные при индексации прибавки отбрасываются,
+    // прибавки от запросов переносятся. Вызывается при переключении поиска на поколение
+    @Override
+    public void reloadSite(int siteId) {
+        SiteDictionary dictionary = new SiteDictionary();
+        indexStorage.findLemmaWeights(siteId)
+                .forEach(lemmaWeight -> dictionary.add(lemmaWeight.getLemma(), lemmaWeight.getWeight()));
+        SiteDictionary previous = dictionaries.put(siteId, dictionary);
+        if (previous != null) {
+            previous.copyBoostsTo(dictionary);
+        }
+    }
+
+    @Override
+    public boolean contains(Integer siteId, String lemma) {
+        return dictionariesFor(siteId).stream().anyMatch(dictionary -> dictionary.contains(lemma));
+    }
+
+    @Override
+    public List<String> findByPrefix(Integer siteId, String prefix, int limit) {
+        return merge(siteId, limit, trie -> trie.findByPrefix(prefix, limit));
+    }
+
+    // Совпадения всех сайтов сводятся до отсечения по limit: точное совпадение позднего сайта
+    // не должно уступить место дальнему совпадению раннего
+    @Override
+    public List<String> findSimilar(Integer siteId, String word, int maxEdits, int limit) {
+        Map<String, LemmaTrie.Match> best = new HashMap<>();
+        for (SiteDictionary dictionary : dictionariesFor(siteId)) {
+            for (LemmaTrie.Match match : dictionary.read(trie -> trie.findSimilarMatches(word, maxEdits, limit))) {
+                best.merge(match.getWord(), match, (a, b) -> new LemmaTrie.Match(a.getWord(),
+                        Math.min(a.getDistance(), b.getDistance()), a.getWeight() + b.getWeight()));
+            }
+        }
+        return best.values().stream()
+                .sorted(LemmaTrie.MATCH_ORDER)
+                .limit(limit)
+                .map(LemmaTrie.Match::getWord)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<LemmaTrie.Completion> findTopByPrefix(Integer siteId, String prefix, int limit) {
+        Collection<SiteDictionary> siteDictionaries = dictionariesFor(siteId);
+        if (siteDictionaries.size() == 1) {
+            return siteDictionaries.iterator().next().read(trie -> trie.findTopByPrefix(prefix, limit));
+        }
+        Map<String, Long> weights = new HashMap<>();
+        for (SiteDictionary dictionary : siteDictionaries) {
+            dictionary.read(trie -> trie.findTopByPrefix(prefix, limit))
+                    .forEach(completion -> weights.merge(completion.getLemma(), completion.getWeight(), Long::sum));
+        }
+        return weights.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(entry -> new LemmaTrie.Completion(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private List<String> merge(Integer siteId, int limit, Function<LemmaTrie, List<String>> lookup) {
+        Set<String> result = new LinkedHashSet<>();
+        for (SiteDictionary dictionary : dictionariesFor(siteId)) {
+            for (String lemma : dictionary.read(lookup)) {
+                if (result.size() >= limit) {
+                    return new ArrayList<>(result);
+                }
+                result.add(lemma);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    // Без сайта берутся словари активных поколений: индексируемое поколение в поиск не попадает
+    private Collection<SiteDictionary> dictionariesFor(Integer siteId) {
+        if (siteId == null) {
+            return siteGenerationService.getServingSiteIds().stream()
+                    .map(dictionaries::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        }
+        SiteDictionary dictionary = dictionaries.get(siteId);
+        return dictionary == null ? List.of() : List.of(dictionary);
+    }
+
+    private SiteDictionary dictionaryFor(int siteId) {
+        return dictionaries.computeIfAbsent(siteId, id -> new SiteDictionary());
+    }
+
+    // Вес леммы в словаре - число страниц с ней плюс прибавка от запросов, которая хранится отдельно
+    private static final class SiteDictionary {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Long> queryBoosts = new HashMap<>();
+        private LemmaTrie trie = new LemmaTrie();
+
+        private void add(String lemma, long weight) {
+            lock.writeLock().lock();
+            try {
+                trie.add(lemma, weight);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void boost(String lemma, long weight) {
+            lock.writeLock().lock();
+            try {
+                trie.add(lemma, weight);
+                queryBoosts.merge(lemma, weight, Long::sum);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Дерево перестраивается целиком: максимальные веса поддеревьев при уменьшении веса не пересчитываются
+        private void decay(double factor) {
+            lock.writeLock().lock();
+            try {
+                if (queryBoosts.isEmpty()) {
+                    return;
+                }
+                LemmaTrie decayed = new LemmaTrie();
+                trie.forEach((lemma, weight) -> {
+                    Long boost = queryBoosts.get(lemma);
+                    if (boost == null) {
+                        decayed.add(lemma, weight);
+                        return;
+                    }
+                    long remaining = (long) (boost * factor);
+                    decayed.add(lemma, weight - boost + remaining);
+                    if (remaining > 0) {
+                        queryBoosts.put(lemma, remaining);
+                    } else {
+                        queryBoosts.remove(lemma);
+                    }
+                });
+                trie = decayed;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void copyBoostsTo(SiteDictionary target) {
+            Map<String, Long> boosts;
+            lock.readLock().lock();
+            try {
+                boosts = new HashMap<>(queryBoosts);
+            } finally {
+                lock.readLock().unlock();
+            }
+            boosts.forEach((lemma, boost) -> {
+                if (target.contains(lemma)) {
+                    target.boost(lemma, boost);
+                }
+            });
+        }
+
+        private boolean contains(String lemma) {
+            return read(trie -> trie.contains(lemma));
+        }
+
+        private <T> T read(Function<LemmaTrie, T> lookup) {
+            lock.readLock().lock();
+            try {
+                return lookup.apply(trie);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchAdmissionSettings;
+import searchengine.responses.NotOkResponse;
+import searchengine.services.SearchAdmissionService;
+import searchengine.services.SearchService;
+import searchengine.utils.EngineMetrics;
+import searchengine.utils.ReadRouting;
+import searchengine.utils.SearchDeadline;
+import searchengine.utils.SearchDeadlineException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Допуск поисковых запросов: не больше maxConcurrent запросов выполняются одновременно,
+ * не больше queueCapacity ждут в очереди. Запрос сверх очереди и запрос, чей срок истёк
+ * ещё в очереди, сразу получают 503 с Retry-After. Поиск идёт вне потоков Tomcat.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SearchAdmissionServiceImpl implements SearchAdmissionService {
+    private final SearchAdmissionSettings admissionSettings;
+    private final SearchService searchService;
+    private final EngineMetrics metrics;
+    private ThreadPoolExecutor searchExecutor;
+
+    @PostConstruct
+    public void init() {
+        searchExecutor = new ThreadPoolExecutor(admissionSettings.getMaxConcurrent(), admissionSettings.getMaxConcurrent(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(admissionSettings.getQueueCapacity()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchExecutor.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<Object>> search(String query, String site, Integer offset, Integer limit, boolean profile) {
+        SearchDeadline deadline = SearchDeadline.after(admissionSettings.getDeadlineMs());
+        try {
+            return CompletableFuture.supplyAsync(() -> execute(query, site, offset, limit, deadline, profile), searchExecutor);
+        } catch (RejectedExecutionException ex) {
+            metrics.countSearchAdmission("rejected");
+            return CompletableFuture.completedFuture(overloaded("Сервер перегружен, повторите запрос позже"));
+        }
+    }
+
+    private ResponseEntity<Object> execute(String query, String site, Integer offset, Integer limit, SearchDeadline deadline, boolean profile) {
+        if (deadline.isExpired()) {
+            metrics.countSearchAdmission("expired-in-queue");
+            return overloaded("Сервер перегружен, повторите запрос позже");
+        }
+        metrics.countSearchAdmission("accepted");
+        // Поиск только читает: при включённой маршрутизации его запросы идут на реплики
+        ReadRouting.preferReplica();
+        try {
+            return searchService.search(query, site, offset, limit, deadline, profile);
+        } catch (SearchDeadlineException ex) {
+            metrics.countSearchAdmission("deadline");
+            log.warn("Поиск \"{}\" прерван: {}", query, ex.getMessage());
+            return overloaded("Превышено время выполнения поиска, повторите запрос позже");
+        } catch (IOException ex) {
+            log.error("Error occurred during search: {}", ex.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new NotOkResponse("Произошла ошибка во время выполнения поиска"));
+        } finally {
+            ReadRouting.reset();
+        }
+    }
+
+    private ResponseEntity<Object> overloaded(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(admissionSettings.getRetryAfterSeconds()))
+                .body(new NotOkResponse(message));
+    }
+}
@@ -1,30 +1,47 @@
 package searchengine.services.Impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.PathFacet;
+import searchengine.dto.search.SearchProfile;
+import searchengine.dto.search.SiteFacet;
 import searchengine.dto.statistics.TransferDTO;
-import searchengine.model.IndexSearchEntity;
+import searchengine.index.PostingConsumer;
 import searchengine.model.LemmaEntity;
 import searchengine.model.SiteEntity;
 import searchengine.model.SiteStatus;
-import searchengine.repositories.IndexSearchRepository;
-import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 import searchengine.responses.NotOkResponse;
 import searchengine.responses.SearchDataResponse;
 import searchengine.responses.SearchResponse;
+import searchengine.services.LemmaDictionaryService;
 import searchengine.services.LemmaService;
+import searchengine.services.SegmentIndexService;
 import searchengine.services.SearchService;
+import searchengine.services.SiteGenerationService;
+import searchengine.storage.IndexStorage;
+import searchengine.utils.EngineMetrics;
+import searchengine.utils.SearchDeadline;
+import searchengine.utils.SearchDeadlineException;
+import searchengine.utils.SnippetHighlighter;
+import searchengine.utils.QueryCounter;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 @Service
 @RequiredArgsConstructor
@@ -32,14 +49,23 @@ import java.util.stream.Collectors;
 public class SearchServiceImpl implements SearchService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexSearchRepository indexRepository;
+    private final IndexStorage indexStorage;
     private final LemmaService lemmaService;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final SegmentIndexService segmentIndexService;
+    private final SiteGenerationService siteGenerationService;
+    private final SearchSettings searchSettings;
+    private final EngineMetrics metrics;
+    private static final Logger SLOW_QUERY_LOG = LoggerFactory.getLogger("searchengine.search.slow");
+    private static final String STAGE_LEMMA_LOOKUP = "lemma-lookup";
+    private static final String STAGE_FREQUENCY_FILTER = "frequency-filter";
+    private static final String STAGE_FACETS = "facets";
+    private final ObjectMapper objectMapper;
     private final SiteStatus indexSuccessStatus = SiteStatus.INDEXED;
-    private final double frequencyLimitProportion = 100;
+    private final Map<Integer, CachedPageCount> pageCountsBySite = new ConcurrentHashMap<>();
 
     @Override
-    public ResponseEntity<Object> search(String query, String site, Integer offset, Integer limit) throws IOException {
+    public ResponseEntity<Object> search(String query, String site, Integer offset, Integer limit, SearchDeadline deadline, boolean profiling) throws IOException {
         if (query == null || query.isBlank()) {
             return ResponseEntity.badRequest().body(new NotOkResponse("Задан пустой поисковый запрос"));
         }
@@ -48,146 +74,292 @@ public class SearchServiceImpl implements SearchService {
             return ResponseEntity.badRequest().body(new NotOkResponse("Индексация сайта для поиска не закончена"));
         }
 
+        // Профиль собирается всегда: он дёшев и нужен журналу медленных запросов, в ответ попадает только по запросу
+        SearchProfile profile = new SearchProfile();
+        profile.setQuery(query);
+        long searchStart = System.nanoTime();
+        QueryCounter.start();
         try {
             SiteEntity siteTarget = siteRepository.getSitePageByUrl(site);
-            Integer countPages = siteTarget != null ? pageRepository.getCountPages(siteTarget.getId()) : pageRepository.getCountPages(null);
 
-            // Инициализируем леммы для поиска и фильтруем частотные леммы
-            List<LemmaEntity> lemmasForSearch = lemmaService.getLemmasFromText(query).keySet().stream()
-                    .map(lemma -> lemmaRepository.findLemmasByLemmaAndSiteId(lemma, siteTarget != null ? siteTarget.getId() : null))
-                    .flatMap(Collection::stream)
+            // Разбираем запрос на термы: каждый терм - группа альтернативных лемм (точная, префиксная или нечёткая)
+            Integer siteId = siteTarget != null ? siteTarget.getId() : null;
+            long stageStart = System.nanoTime();
+            long profileStart = stageStart;
+            List<Set<String>> queryLemmas = resolveQueryLemmas(query, siteId);
+            profileStart = profile.stage(EngineMetrics.STAGE_LEMMATIZE, profileStart);
+            Set<Integer> servingSiteIds = siteGenerationService.getServingSiteIds();
+            List<List<LemmaEntity>> lemmaGroups = queryLemmas.stream()
+                    .map(alternatives -> alternatives.stream()
+                            .map(lemma -> indexStorage.findLemmas(lemma, siteId))
+                            .flatMap(Collection::stream)
+                            .filter(lemma -> siteId != null || servingSiteIds.contains(lemma.getSiteId()))
+                            .collect(Collectors.toList()))
                     .collect(Collectors.toList());
-            filterFrequentLemmas(lemmasForSearch, countPages);
-
-            if (lemmasForSearch.isEmpty()) {
-                return ResponseEntity.ok(new SearchResponse(true, 0, Collections.emptyList()));
+            lemmaGroups.removeIf(List::isEmpty);
+            profileStart = profile.stage(STAGE_LEMMA_LOOKUP, profileStart);
+            lemmaGroups = filterFrequentLemmas(lemmaGroups);
+            profile.stage(STAGE_FREQUENCY_FILTER, profileStart);
+            metrics.recordSearchStage(EngineMetrics.STAGE_LEMMATIZE, stageStart);
+            deadline.check(EngineMetrics.STAGE_LEMMATIZE);
+
+            if (lemmaGroups.isEmpty()) {
+                return ResponseEntity.ok(finishProfile(new SearchResponse(true, 0, Collections.emptyList()), profile, searchStart, profiling));
             }
+            List<LemmaEntity> lemmasForSearch = lemmaGroups.stream().flatMap(List::stream).collect(Collectors.toList());
+            lemmaDictionaryService.recordQuery(siteId, lemmasForSearch.stream().map(LemmaEntity::getLemma).collect(Collectors.toSet()));
 
-            // Сортируем леммы по частоте
-            List<LemmaEntity> sortedLemmasToSearch = sortLemmasByFrequency(lemmasForSearch);
+            // Сортируем термы по частоте
+            List<List<LemmaEntity>> sortedLemmaGroups = sortLemmaGroupsByFrequency(lemmaGroups);
 
             // Ищем страницы по леммам
-            Map<Integer, IndexSearchEntity> indexesByLemmas = findPagesByLemmas(sortedLemmasToSearch);
-
-            if (indexesByLemmas.isEmpty()) {
-                return ResponseEntity.ok(new SearchResponse(true, 0, Collections.emptyList()));
+            stageStart = System.nanoTime();
+            Map<Integer, TransferDTO> ranksByPages = findPagesByLemmas(sortedLemmaGroups, profile);
+            metrics.recordSearchStage(EngineMetrics.STAGE_POSTINGS, stageStart);
+            profile.stage(EngineMetrics.STAGE_POSTINGS, stageStart);
+            profile.setCandidatePages(ranksByPages.size());
+            deadline.check(EngineMetrics.STAGE_POSTINGS);
+
+            if (ranksByPages.isEmpty()) {
+                return ResponseEntity.ok(finishProfile(new SearchResponse(true, 0, Collections.emptyList()), profile, searchStart, profiling));
             }
 
             // Рассчитываем релевантность страниц
-            List<TransferDTO> pagesRelevanceSorted = calculatePageRelevance(indexesByLemmas);
+            stageStart = System.nanoTime();
+            List<TransferDTO> pagesRelevanceSorted = calculatePageRelevance(ranksByPages);
+            metrics.recordSearchStage(EngineMetrics.STAGE_RANK, stageStart);
+            profile.stage(EngineMetrics.STAGE_RANK, stageStart);
+            deadline.check(EngineMetrics.STAGE_RANK);
+
+            // Конвертируем результаты в SearchDataResponse; по истечении срока возвращаются уже готовые сниппеты
+            stageStart = System.nanoTime();
+            Map<Integer, Optional<SiteEntity>> sitesById = new HashMap<>();
+            List<TransferDTO> countedPages = new ArrayList<>();
+            List<SearchDataResponse> searchDataResponses = convertToSearchDataResponses(sortedLemmaGroups, pagesRelevanceSorted,
+                    sitesById, deadline, profile, countedPages);
+            metrics.recordSearchStage(EngineMetrics.STAGE_SNIPPET, stageStart);
+            profile.stage(EngineMetrics.STAGE_SNIPPET, stageStart);
+            boolean partial = deadline.isExpired();
+            if (partial) {
+                metrics.countSearchAdmission("partial");
+            }
 
-            // Конвертируем результаты в SearchDataResponse без ограничения на количество сниппетов
-            List<SearchDataResponse> searchDataResponses = convertToSearchDataResponses(lemmasForSearch, pagesRelevanceSorted);
+            // Число результатов и разбивка по сайтам и разделам считаются по одному набору страниц,
+            // поэтому сумма по сайтам совпадает с count и при отсеянных на этапе сниппетов страницах
+            stageStart = System.nanoTime();
+            List<SiteFacet> facets = countFacets(countedPages, sitesById);
+            profile.stage(STAGE_FACETS, stageStart);
 
-            int count = searchDataResponses.size();
+            int count = countedPages.size();
             List<SearchDataResponse> paginatedResponses = paginateResults(searchDataResponses, offset, limit);
-            SearchResponse response = new SearchResponse(true, count, paginatedResponses);
-            return ResponseEntity.ok(response);
+            SearchResponse response = new SearchResponse(true, count, paginatedResponses, partial);
+            response.setFacets(facets);
+            return ResponseEntity.ok(finishProfile(response, profile, searchStart, profiling));
+        } catch (SearchDeadlineException e) {
+            finishProfile(null, profile, searchStart, false);
+            throw e;
         } catch (Exception e) {
             log.error("Error occurred during search: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new NotOkResponse("Произошла ошибка во время выполнения поиска"));
+        } finally {
+            QueryCounter.stop();
         }
     }
 
-    // Метод для фильтрации частотных лемм
-    private void filterFrequentLemmas(List<LemmaEntity> lemmasForSearch, Integer countPages) {
-        lemmasForSearch.removeIf(lemma -> {
-            Integer lemmaFrequency = lemmaRepository.findCountPageByLemma(lemma.getLemma(), lemma.getSiteId());
-            if (lemmaFrequency == null) return true;
-            double frequencyLimit = (double) lemmaFrequency / countPages;
-            return frequencyLimit > frequencyLimitProportion;
-        });
+    // Метод завершения профиля: общее время, число запросов к БД и запись в журнал медленных запросов
+    private SearchResponse finishProfile(SearchResponse response, SearchProfile profile, long searchStart, boolean profiling) {
+        profile.setTotalMs((System.nanoTime() - searchStart) / 1_000_000.0);
+        profile.setDbQueries(QueryCounter.current());
+        long slowQueryMs = searchSettings.getSlowQueryMs();
+        if (slowQueryMs > 0 && profile.getTotalMs() >= slowQueryMs
+                && ThreadLocalRandom.current().nextDouble() < searchSettings.getSlowQuerySampleRate()) {
+            try {
+                SLOW_QUERY_LOG.warn("Медленный запрос {} мс: {}", Math.round(profile.getTotalMs()), objectMapper.writeValueAsString(profile));
+            } catch (JsonProcessingException ex) {
+                SLOW_QUERY_LOG.warn("Медленный запрос {} мс: {}", Math.round(profile.getTotalMs()), profile);
+            }
+        }
+        if (response != null && profiling) {
+            response.setProfile(profile);
+        }
+        return response;
     }
 
-    // Метод сортировки лемм по частоте
-    private List<LemmaEntity> sortLemmasByFrequency(List<LemmaEntity> lemmasForSearch) {
-        return lemmasForSearch.stream()
-                .sorted(Comparator.comparingInt(LemmaEntity::getFrequency))
+    // Метод для фильтрации частотных лемм: лемма отбрасывается, если встречается на слишком большой доле страниц сайта.
+    // Если частотными оказались все термы запроса, запрос остаётся без изменений
+    private List<List<LemmaEntity>> filterFrequentLemmas(List<List<LemmaEntity>> lemmaGroups) {
+        List<List<LemmaEntity>> filteredGroups = lemmaGroups.stream()
+                .map(group -> group.stream()
+                        .filter(lemma -> lemma.getFrequency() <= frequentLemmaThreshold(lemma.getSiteId()))
+                        .collect(Collectors.toList()))
+                .filter(group -> !group.isEmpty())
                 .collect(Collectors.toList());
+        return filteredGroups.isEmpty() ? lemmaGroups : filteredGroups;
     }
 
-    // Метод поиска страниц по леммам
-    private Map<Integer, IndexSearchEntity> findPagesByLemmas(List<LemmaEntity> sortedLemmasToSearch) {
-        Map<Integer, IndexSearchEntity> indexesByLemmas = indexRepository.findIndexesByLemma(sortedLemmasToSearch.get(0).getId())
-                .stream()
-                .collect(Collectors.toMap(IndexSearchEntity::getPageId, index -> index));
+    // Порог частотности сайта кэшируется, чтобы не считать страницы на каждый запрос
+    private double frequentLemmaThreshold(int siteId) {
+        long now = System.currentTimeMillis();
+        CachedPageCount cached = pageCountsBySite.get(siteId);
+        boolean expired = cached == null || now - cached.getLoadedAt() > searchSettings.getPageCountCacheMs();
+        metrics.countCacheLookup("page-count", !expired);
+        if (expired) {
+            cached = new CachedPageCount(pageRepository.findCountRecordBySiteId(siteId), now);
+            pageCountsBySite.put(siteId, cached);
+        }
+        return cached.getPages() * searchSettings.getFrequentLemmaRatio();
+    }
 
-        for (int i = 1; i < sortedLemmasToSearch.size(); i++) {
-            List<IndexSearchEntity> indexNextLemma = indexRepository.findIndexesByLemma(sortedLemmasToSearch.get(i).getId());
-            List<Integer> pagesToSave = indexNextLemma.stream()
-                    .filter(indexNext -> indexesByLemmas.containsKey(indexNext.getPageId()))
-                    .map(IndexSearchEntity::getPageId)
-                    .collect(Collectors.toList());
-            indexesByLemmas.keySet().retainAll(pagesToSave);
+    // Метод разбора запроса: для каждого слова подбираются леммы из словаря сайта
+    private List<Set<String>> resolveQueryLemmas(String query, Integer siteId) {
+        List<Set<String>> lemmaGroups = new ArrayList<>();
+        for (String word : query.toLowerCase().split("[^a-zа-яё*]+")) {
+            Set<String> alternatives = new LinkedHashSet<>();
+            if (word.endsWith("*")) {
+                String prefix = word.replace("*", "");
+                if (prefix.length() >= searchSettings.getPrefixMinLength()) {
+                    alternatives.addAll(lemmaDictionaryService.findByPrefix(siteId, prefix, searchSettings.getPrefixMaxExpansions()));
+                }
+            } else if (!word.isEmpty() && !lemmaService.isServiceWord(word)) {
+                String lemma = lemmaService.getLemmaByWord(word);
+                if (!lemma.isEmpty() && lemmaDictionaryService.contains(siteId, lemma)) {
+                    alternatives.add(lemma);
+                } else {
+                    String misspelled = lemma.isEmpty() ? word : lemma;
+                    alternatives.addAll(lemmaDictionaryService.findSimilar(siteId, misspelled,
+                            maxEditsForWord(misspelled), searchSettings.getFuzzyMaxExpansions()));
+                }
+            }
+            if (!alternatives.isEmpty()) {
+                lemmaGroups.add(alternatives);
+            }
         }
-        return indexesByLemmas;
+        return lemmaGroups;
     }
-    // Метод расчета релевантности страниц
-    private List<TransferDTO> calculatePageRelevance(Map<Integer, IndexSearchEntity> indexesByLemmas) {
-        Map<Integer, TransferDTO> pagesRelevanceMap = new HashMap<>();
-
-        for (IndexSearchEntity index : indexesByLemmas.values()) {
-            int pageId = index.getPageId();
-            TransferDTO rankPage = pagesRelevanceMap.computeIfAbsent(pageId, id -> {
-                TransferDTO newRankPage = new TransferDTO();
-                newRankPage.setPageEntity(index.getPageEntity());
-                newRankPage.setPageId(pageId);
-                return newRankPage;
+
+    // Допустимое число опечаток зависит от длины слова
+    private int maxEditsForWord(String word) {
+        if (word.length() < 4) return 0;
+        return word.length() < 8 ? 1 : 2;
+    }
+
+    // Метод сортировки термов по частоте
+    private List<List<LemmaEntity>> sortLemmaGroupsByFrequency(List<List<LemmaEntity>> lemmaGroups) {
+        return lemmaGroups.stream()
+                .sorted(Comparator.comparingInt(group -> group.stream().mapToInt(LemmaEntity::getFrequency).sum()))
+                .collect(Collectors.toList());
+    }
+
+    // Метод поиска страниц по леммам: внутри терма леммы объединяются, между термами - пересекаются
+    private Map<Integer, TransferDTO> findPagesByLemmas(List<List<LemmaEntity>> sortedLemmaGroups, SearchProfile profile) {
+        Map<Integer, TransferDTO> ranksByPages = new HashMap<>();
+        long postings = collectPostings(sortedLemmaGroups.get(0), profile, (siteId, pageId, rank) ->
+                addRank(ranksByPages.computeIfAbsent(pageId, id -> createRankPage(id, siteId)), rank));
+        profile.getIntersections().add(new SearchProfile.IntersectionStep(lemmaNames(sortedLemmaGroups.get(0)), 0, postings, ranksByPages.size()));
+
+        for (int i = 1; i < sortedLemmaGroups.size() && !ranksByPages.isEmpty(); i++) {
+            int pagesBefore = ranksByPages.size();
+            Map<Integer, List<Integer>> ranksToSave = new HashMap<>();
+            postings = collectPostings(sortedLemmaGroups.get(i), profile, (siteId, pageId, rank) -> {
+                if (ranksByPages.containsKey(pageId)) {
+                    ranksToSave.computeIfAbsent(pageId, id -> new ArrayList<>()).add(rank);
+                }
             });
+            ranksByPages.keySet().retainAll(ranksToSave.keySet());
+            ranksToSave.forEach((pageId, ranks) -> ranks.forEach(rank -> addRank(ranksByPages.get(pageId), rank)));
+            profile.getIntersections().add(new SearchProfile.IntersectionStep(lemmaNames(sortedLemmaGroups.get(i)), pagesBefore, postings, ranksByPages.size()));
+        }
+        return ranksByPages;
+    }
+
+    private List<String> lemmaNames(List<LemmaEntity> lemmas) {
+        return lemmas.stream().map(LemmaEntity::getLemma).distinct().collect(Collectors.toList());
+    }
 
-            rankPage.setAbsRelevance(rankPage.getAbsRelevance() + index.getLemmaCount());
-            if (rankPage.getMaxLemmaRank() < index.getLemmaCount()) {
-                rankPage.setMaxLemmaRank(index.getLemmaCount());
+    // Постинги берутся из сегментов, если они готовы для сайта леммы, иначе из хранилища индекса.
+    // Возвращает число прочитанных постингов терма
+    private long collectPostings(List<LemmaEntity> lemmas, SearchProfile profile, SitePostingConsumer consumer) {
+        long total = 0;
+        for (LemmaEntity lemma : lemmas) {
+            long[] postings = new long[1];
+            PostingConsumer counting = (pageId, rank) -> {
+                postings[0]++;
+                consumer.accept(lemma.getSiteId(), pageId, rank);
+            };
+            if (segmentIndexService.isReady(lemma.getSiteId())) {
+                metrics.countPostingsSource("segment");
+                segmentIndexService.forEachPosting(lemma.getSiteId(), lemma.getId(), counting);
+            } else {
+                metrics.countPostingsSource("storage");
+                indexStorage.forEachPosting(lemma, counting);
             }
+            profile.getLemmas().add(new SearchProfile.LemmaStat(lemma.getLemma(), lemma.getSiteId(), lemma.getFrequency(), postings[0]));
+            total += postings[0];
         }
+        return total;
+    }
+
+    private TransferDTO createRankPage(Integer pageId, int siteId) {
+        TransferDTO rankPage = new TransferDTO();
+        rankPage.setPageId(pageId);
+        rankPage.setSiteId(siteId);
+        return rankPage;
+    }
 
+    private void addRank(TransferDTO rankPage, int rank) {
+        rankPage.setAbsRelevance(rankPage.getAbsRelevance() + rank);
+        if (rankPage.getMaxLemmaRank() < rank) {
+            rankPage.setMaxLemmaRank(rank);
+        }
+    }
+
+    // Метод расчета релевантности страниц
+    private List<TransferDTO> calculatePageRelevance(Map<Integer, TransferDTO> ranksByPages) {
         // Вычисляем относительную релевантность
-        pagesRelevanceMap.values().forEach(rankPage ->
+        ranksByPages.values().forEach(rankPage ->
                 rankPage.setRelativeRelevance(rankPage.getAbsRelevance() / rankPage.getMaxLemmaRank()));
 
+        // Страницы загружаем одним запросом только для найденных результатов
+        pageRepository.findAllById(ranksByPages.keySet())
+                .forEach(pageEntity -> ranksByPages.get(pageEntity.getId()).setPageEntity(pageEntity));
+
         // Сортируем по относительной релевантности
-        return pagesRelevanceMap.values().stream()
+        return ranksByPages.values().stream()
+                .filter(rankPage -> rankPage.getPageEntity() != null)
                 .sorted(Comparator.comparingDouble(TransferDTO::getRelativeRelevance).reversed())
                 .collect(Collectors.toList());
     }
 
-    // Метод конвертации результатов в SearchDataResponse с неограниченным количеством сниппетов
-    private List<SearchDataResponse> convertToSearchDataResponses(List<LemmaEntity> lemmasForSearch, List<TransferDTO> pagesRelevanceSorted) throws IOException {
-        List<String> simpleLemmasFromSearch = lemmasForSearch.stream().map(LemmaEntity::getLemma).collect(Collectors.toList());
+    // Метод конвертации результатов в SearchDataResponse: один сниппет фиксированной длины на страницу.
+    // В countedPages попадают страницы, давшие результат, а при истечении срока - ещё и непроверенные страницы:
+    // их число известно из пересечения, хотя сниппеты для них не построены
+    private List<SearchDataResponse> convertToSearchDataResponses(List<List<LemmaEntity>> lemmaGroups, List<TransferDTO> pagesRelevanceSorted,
+                                                                  Map<Integer, Optional<SiteEntity>> sitesById, SearchDeadline deadline,
+                                                                  SearchProfile profile, List<TransferDTO> countedPages) {
+        List<List<String>> queryTerms = lemmaGroups.stream().map(this::lemmaNames).collect(Collectors.toList());
+        SnippetHighlighter highlighter = new SnippetHighlighter(queryTerms, lemmaService::getLemmaByWord, searchSettings.getSnippetLength());
         List<SearchDataResponse> searchDataResponses = new ArrayList<>();
 
-        for (TransferDTO rank : pagesRelevanceSorted) {
-            Document doc = Jsoup.parse(rank.getPageEntity().getContent());
-            List<String> sentences = doc.body().getElementsMatchingOwnText("[\\p{IsCyrillic}]").stream().map(Element::text).collect(Collectors.toList());
-            StringBuilder highlightedText = new StringBuilder();
-
-            for (String sentence : sentences) {
-                StringBuilder textFromElement = new StringBuilder(sentence);
-                List<String> words = List.of(sentence.split("[\\s\\p{Punct}]"));
-                boolean containsSearchWord = false;
-
-                for (String word : words) {
-                    String lemmaFromWord = lemmaService.getLemmaByWord(word.replaceAll("\\p{Punct}", ""));
-                    if (simpleLemmasFromSearch.contains(lemmaFromWord)) {
-                        markQuery(textFromElement, word, 0);
-                        containsSearchWord = true;
-                    }
-                }
-
-                if (containsSearchWord) {
-                    highlightedText.append(textFromElement).append("... ");
-                }
+        for (int i = 0; i < pagesRelevanceSorted.size(); i++) {
+            if (deadline.isExpired()) {
+                countedPages.addAll(pagesRelevanceSorted.subList(i, pagesRelevanceSorted.size()));
+                break;
             }
+            TransferDTO rank = pagesRelevanceSorted.get(i);
+            Document doc = Jsoup.parse(rank.getPageEntity().getContent());
+            profile.setPagesParsed(profile.getPagesParsed() + 1);
+            String snippet = highlighter.snippet(doc.body().text());
 
-            if (highlightedText.length() > 0) {
-                SiteEntity sitePage = siteRepository.findById(pageRepository.findById(rank.getPageId()).get().getSiteId()).orElse(null);
+            if (snippet != null) {
+                SiteEntity sitePage = sitesById.computeIfAbsent(rank.getPageEntity().getSiteId(), siteRepository::findById).orElse(null);
                 if (sitePage != null) {
+                    countedPages.add(rank);
                     searchDataResponses.add(new SearchDataResponse(
                             sitePage.getUrl(),
                             sitePage.getName(),
                             rank.getPageEntity().getPath(),
                             doc.title(),
-                            highlightedText.toString(),
+                            snippet,
                             rank.getRelativeRelevance(),
                             (int) rank.getAbsRelevance()));
                 }
@@ -199,42 +371,76 @@ public class SearchServiceImpl implements SearchService {
                 .collect(Collectors.toList());
     }
 
-    // Метод для подсветки слова в тексте
-    private void markQuery(StringBuilder textFromElement, String query, int startPosition) {
-        // Приведение запроса к нижнему регистру для поиска без учета регистра
-        String lowerCaseQuery = query.toLowerCase();
-
-        int start = textFromElement.toString().toLowerCase().indexOf(lowerCaseQuery, startPosition);
-
-        while (start != -1) {
-            // Проверка на наличие уже существующих тегов <b>
-            if (textFromElement.indexOf("<b>", start - 3) == (start - 3) ||
-                    textFromElement.indexOf("<b>", start + lowerCaseQuery.length()) == start + lowerCaseQuery.length()) {
-                start = textFromElement.toString().toLowerCase().indexOf(lowerCaseQuery, start + lowerCaseQuery.length());
-                continue;
+    // Метод подсчёта найденных страниц по сайтам. Сайт страницы известен из леммы, давшей постинг,
+    // поэтому загружать страницы не нужно; разделы считаются по путям страниц, уже загруженных для ранжирования
+    private List<SiteFacet> countFacets(Collection<TransferDTO> pages, Map<Integer, Optional<SiteEntity>> sitesById) {
+        int depth = searchSettings.getPathFacetDepth();
+        Map<Integer, int[]> countsBySite = new HashMap<>();
+        Map<Integer, Map<String, int[]>> pathCountsBySite = new HashMap<>();
+        for (TransferDTO page : pages) {
+            countsBySite.computeIfAbsent(page.getSiteId(), id -> new int[1])[0]++;
+            if (depth > 0 && page.getPageEntity() != null) {
+                pathCountsBySite.computeIfAbsent(page.getSiteId(), id -> new HashMap<>())
+                        .computeIfAbsent(pathPrefix(page.getPageEntity().getPath(), depth), prefix -> new int[1])[0]++;
             }
+        }
+        List<SiteFacet> facets = new ArrayList<>();
+        countsBySite.forEach((siteId, count) -> sitesById.computeIfAbsent(siteId, siteRepository::findById)
+                .ifPresent(site -> facets.add(new SiteFacet(site.getUrl(), site.getName(), count[0],
+                        pathFacets(pathCountsBySite.get(siteId))))));
+        facets.sort(Comparator.comparingInt(SiteFacet::getCount).reversed());
+        return facets;
+    }
 
-            // Вставка тегов <b> и </b>
-            int end = start + lowerCaseQuery.length();
-            textFromElement.insert(end, "</b>");
-            textFromElement.insert(start, "<b>");
+    private List<PathFacet> pathFacets(Map<String, int[]> counts) {
+        if (counts == null) {
+            return List.of();
+        }
+        return counts.entrySet().stream()
+                .sorted((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]))
+                .limit(searchSettings.getPathFacetLimit())
+                .map(entry -> new PathFacet(entry.getKey(), entry.getValue()[0]))
+                .collect(Collectors.toList());
+    }
 
-            // Продолжаем поиск с позиции после текущего вхождения
-            start = textFromElement.toString().toLowerCase().indexOf(lowerCaseQuery, end + 4);
+    // Первые depth сегментов пути: для "/news/2024/page.html" и depth = 1 - "/news/"; страницы корня попадают в "/"
+    private String pathPrefix(String path, int depth) {
+        int end = 0;
+        for (int i = 0; i < depth; i++) {
+            int next = path.indexOf('/', end + 1);
+            if (next < 0) {
+                break;
+            }
+            end = next;
         }
+        return path.substring(0, end + 1);
     }
 
-    // Метод проверки статуса индексации сайта
+    // Метод проверки статуса индексации сайта: поиск идёт по активному поколению, пока новое индексируется
     private Boolean checkIndexStatusNotIndexed(String site) {
         if (site == null || site.isBlank()) {
-            return siteRepository.findAll().stream().anyMatch(s -> !s.getStatus().equals(indexSuccessStatus));
+            return siteGenerationService.getServingSiteIds().isEmpty();
         }
         SiteEntity siteEntity = siteRepository.getSitePageByUrl(site);
-        return siteEntity == null || !siteEntity.getStatus().equals(indexSuccessStatus);
+        return siteEntity == null || !siteEntity.isActive() || !siteEntity.getStatus().equals(indexSuccessStatus);
+    }
+    // Постинг вместе с сайтом леммы, из которой он получен
+    @FunctionalInterface
+    private interface SitePostingConsumer {
+        void accept(int siteId, int pageId, int rank);
     }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class CachedPageCount {
+        private final int pages;
+        private final long loadedAt;
+    }
+
+    // Смещение за концом выдачи даёт пустую страницу, а не ошибку
     private List<SearchDataResponse> paginateResults(List<SearchDataResponse> searchDataResponses, Integer offset, Integer limit) {
-        int startIndex = Math.max(0, offset);
-        int endIndex = Math.min(offset + limit, searchDataResponses.size());
+        int startIndex = Math.min(Math.max(0, offset), searchDataResponses.size());
+        int endIndex = Math.min(startIndex + Math.max(0, limit), searchDataResponses.size());
         return searchDataResponses.subList(startIndex, endIndex);
     }
 }
\ No newline at end of file
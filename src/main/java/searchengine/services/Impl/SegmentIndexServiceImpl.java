@@ -0,0 +1,215 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.SegmentSettings;
+import searchengine.index.PostingConsumer;
+import searchengine.index.SiteSegments;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.SegmentIndexService;
+import searchengine.storage.IndexStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SegmentIndexServiceImpl implements SegmentIndexService {
+    private final SegmentSettings segmentSettings;
+    private final SiteRepository siteRepository;
+    private final IndexStorage indexStorage;
+    private final Map<Integer, SiteSegments> siteSegments = new ConcurrentHashMap<>();
+    private final Set<Integer> readySites = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> pendingFlushes = ConcurrentHashMap.newKeySet();
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+
+    // Готовые сегменты только отображаются в память; из хранилища индекса строятся лишь сайты, у которых сегментов ещё нет
+    @PostConstruct
+    public void loadSegments() {
+        if (!segmentSettings.isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        for (SiteEntity siteEntity : siteRepository.findLiveSites()) {
+            SiteSegments segments = new SiteSegments(siteEntity.getId(), siteDirectory(siteEntity.getId()));
+            try {
+                boolean complete = segments.isComplete();
+                segments.load();
+                siteSegments.put(siteEntity.getId(), segments);
+                if (complete) {
+                    readySites.add(siteEntity.getId());
+                } else {
+                    backgroundExecutor.submit(() -> buildFromStorage(segments));
+                }
+            } catch (IOException ex) {
+                log.error("Не удалось открыть сегменты сайта {}", siteEntity.getUrl(), ex);
+            }
+        }
+        log.info("Сегменты индекса открыты за {} мс, сайтов: {}", System.currentTimeMillis() - start, readySites.size());
+    }
+
+    @Override
+    public boolean isReady(int siteId) {
+        return segmentSettings.isEnabled() && readySites.contains(siteId);
+    }
+
+    @Override
+    public void addPage(int siteId, int pageId, Map<Integer, Integer> lemmaRanks) {
+        if (!segmentSettings.isEnabled()) {
+            return;
+        }
+        // Страница пишется под блокировкой ключа: пересборка сайта не может подменить набор между выбором и записью
+        SiteSegments segments = siteSegments.compute(siteId, (id, current) -> {
+            SiteSegments target = current != null ? current : createSiteSegments(id);
+            target.addPage(pageId, lemmaRanks);
+            return target;
+        });
+        if (segments.bufferedPages() >= segmentSettings.getFlushPages() && pendingFlushes.add(siteId)) {
+            backgroundExecutor.submit(() -> {
+                pendingFlushes.remove(siteId);
+                flush(siteId);
+            });
+        }
+    }
+
+    @Override
+    public void forEachPosting(int siteId, int lemmaId, PostingConsumer consumer) {
+        SiteSegments segments = siteSegments.get(siteId);
+        if (segments != null) {
+            segments.forEachPosting(lemmaId, consumer);
+        }
+    }
+
+    @Override
+    public void flush(int siteId) {
+        SiteSegments segments = siteSegments.get(siteId);
+        if (segments == null) {
+            return;
+        }
+        try {
+            segments.flush();
+        } catch (IOException ex) {
+            log.error("Не удалось записать сегмент сайта {}", siteId, ex);
+        }
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        siteSegments.compute(siteId, (id, current) -> {
+            dropSegments(id, current);
+            return null;
+        });
+    }
+
+    // Метод замены сегментов сайта построенными заново из хранилища; до готовности поиск читает хранилище.
+    // Замена идёт под блокировкой ключа, общей с addPage, поэтому страница не попадёт в удаляемый набор
+    @Override
+    public void rebuildSite(int siteId) {
+        if (!segmentSettings.isEnabled()) {
+            removeSite(siteId);
+            return;
+        }
+        siteSegments.compute(siteId, (id, current) -> {
+            dropSegments(id, current);
+            SiteSegments segments = new SiteSegments(id, siteDirectory(id));
+            try {
+                segments.load();
+            } catch (IOException ex) {
+                log.error("Не удалось открыть сегменты сайта {}", id, ex);
+                return null;
+            }
+            backgroundExecutor.submit(() -> buildFromStorage(segments));
+            return segments;
+        });
+    }
+
+    // Периодически сбрасываем буферы и сливаем мелкие сегменты в фоне
+    @Scheduled(fixedDelayString = "${segment-settings.merge-interval-ms:10000}")
+    public void flushAndMerge() {
+        long maxSegmentBytes = segmentSettings.getMaxSegmentMb() * 1024 * 1024;
+        for (SiteSegments segments : siteSegments.values()) {
+            try {
+                segments.flush();
+                while (segments.mergeSmallest(segmentSettings.getMergeFactor(), maxSegmentBytes)) {
+                    log.debug("Сайт {}: сегментов после слияния {}", segments.getSiteId(), segments.segmentCount());
+                }
+            } catch (IOException ex) {
+                log.error("Ошибка обслуживания сегментов сайта {}", segments.getSiteId(), ex);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        backgroundExecutor.shutdown();
+        siteSegments.keySet().forEach(this::flush);
+    }
+
+    // Готовым считается только полный набор с диска; иначе, в том числе для нового поколения,
+    // недостающие страницы достраиваются из хранилища, а до тех пор поиск читает хранилище
+    private SiteSegments createSiteSegments(int siteId) {
+        SiteSegments segments = new SiteSegments(siteId, siteDirectory(siteId));
+        try {
+            boolean complete = segments.isComplete();
+            segments.load();
+            if (complete) {
+                readySites.add(siteId);
+            } else {
+                backgroundExecutor.submit(() -> buildFromStorage(segments));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return segments;
+    }
+
+    private void dropSegments(int siteId, SiteSegments segments) {
+        readySites.remove(siteId);
+        pendingFlushes.remove(siteId);
+        try {
+            if (segments != null) {
+                segments.drop();
+            } else {
+                new SiteSegments(siteId, siteDirectory(siteId)).drop();
+            }
+        } catch (IOException ex) {
+            log.error("Не удалось удалить сегменты сайта {}", siteId, ex);
+        }
+    }
+
+    // Метод первичного построения сегмента потоковым чтением постингов сайта из хранилища индекса
+    private void buildFromStorage(SiteSegments segments) {
+        long start = System.currentTimeMillis();
+        try {
+            indexStorage.streamPostings(segments.getSiteId(), segments::writeBaseSegment);
+            segments.markComplete();
+            // Набор, заменённый пересборкой за время построения, готовым не становится
+            siteSegments.computeIfPresent(segments.getSiteId(), (id, current) -> {
+                if (current == segments) {
+                    readySites.add(id);
+                }
+                return current;
+            });
+            log.info("Сайт {}: сегмент построен из хранилища индекса за {} мс", segments.getSiteId(), System.currentTimeMillis() - start);
+        } catch (RuntimeException | IOException ex) {
+            log.error("Не удалось построить сегмент сайта {} из хранилища индекса", segments.getSiteId(), ex);
+        }
+    }
+
+    private Path siteDirectory(int siteId) {
+        return Paths.get(segmentSettings.getDirectory(), "site-" + siteId);
+    }
+}
@@ -0,0 +1,123 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.ConnectionSettings;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.model.SiteStatus;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.CrawlSeedService;
+import searchengine.services.GenerationPurgeService;
+import searchengine.services.IndexingProgressService;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.LemmaService;
+import searchengine.services.PageIndexerService;
+import searchengine.services.SegmentIndexService;
+import searchengine.services.SiteCrawlService;
+import searchengine.services.SiteGenerationService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.utils.EngineMetrics;
+import searchengine.utils.PageFinder;
+import searchengine.utils.SiteCrawlContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Обход одного сайта в его новое поколение. Используется и локальной индексацией,
+ * и узлами кластера, получившими аренду сайта.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SiteCrawlServiceImpl implements SiteCrawlService {
+    private final PageIndexerService pageIndexerService;
+    private final LemmaService lemmaService;
+    private final GenerationPurgeService generationPurgeService;
+    private final SegmentIndexService segmentIndexService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final IndexingProgressService indexingProgressService;
+    private final SiteGenerationService siteGenerationService;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final CrawlSeedService crawlSeedService;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final ConnectionSettings connection;
+    private final EngineMetrics metrics;
+
+    // Метод обхода сайта; при успехе поиск переключается на новое поколение. processing = false останавливает обход
+    @Override
+    public boolean crawl(SiteEntity siteDomain, AtomicBoolean processing) {
+        return crawl(siteDomain, processing, null, null);
+    }
+
+    // Обход по аренде кластера: поколение переключается, только пока аренда принадлежит этому узлу
+    @Override
+    public boolean crawlLeased(SiteEntity siteDomain, AtomicBoolean processing, int leaseId, String owner) {
+        return crawl(siteDomain, processing, leaseId, owner);
+    }
+
+    private boolean crawl(SiteEntity siteDomain, AtomicBoolean processing, Integer leaseId, String owner) {
+        ConcurrentHashMap<String, PageEntity> resultForkJoinPageIndexer = new ConcurrentHashMap<>();
+        try {
+            log.info("Запущена индексация {}", siteDomain.getUrl());
+            // Обход начинается с главной страницы и адресов из карт сайта, свежие страницы первыми
+            SiteCrawlContext crawlContext = crawlSeedService.prepareCrawl(siteDomain.getUrl());
+            List<PageFinder> startTasks = new ArrayList<>();
+            startTasks.add(new PageFinder(siteRepository, pageRepository, siteDomain, "/", resultForkJoinPageIndexer, connection, lemmaService, pageIndexerService, processing, metrics, siteStatisticsService, crawlContext));
+            for (String seedPath : crawlSeedService.findSeedPaths(siteDomain.getUrl(), crawlContext)) {
+                PageFinder seedTask = new PageFinder(siteRepository, pageRepository, siteDomain, seedPath, resultForkJoinPageIndexer, connection, lemmaService, pageIndexerService, processing, metrics, siteStatisticsService, crawlContext);
+                seedTask.enqueue();
+                startTasks.add(seedTask);
+            }
+            new ForkJoinPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(startTasks)));
+            // Исключённые страницы уже отражены в ошибке сайта; поколение всё равно переключается
+            Integer failedPages = pageIndexerService.awaitIndexed().get(siteDomain.getId());
+            if (failedPages != null) {
+                log.warn("Сайт {}: не проиндексировано страниц {}", siteDomain.getUrl(), failedPages);
+            }
+            segmentIndexService.flush(siteDomain.getId());
+        } catch (SecurityException ex) {
+            SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
+            siteEntity.setStatus(SiteStatus.FAILED);
+            siteEntity.setLastError(ex.getMessage());
+            siteRepository.save(siteEntity);
+            indexingProgressService.siteChanged(siteEntity);
+        }
+        SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
+        if (!processing.get()) {
+            log.warn("Indexing stopped by user, site: {}", siteDomain.getUrl());
+            siteEntity.setStatus(SiteStatus.FAILED);
+            siteEntity.setLastError("Indexing stopped by user");
+            siteRepository.save(siteEntity);
+            indexingProgressService.siteChanged(siteEntity);
+            return false;
+        }
+        if (siteEntity.getStatus() == SiteStatus.FAILED) {
+            return false;
+        }
+        log.info("Проиндексирован сайт: {}", siteDomain.getUrl());
+        // Веса подсказок пересчитываются по хранилищу: повторно проиндексированные страницы не учитываются дважды
+        lemmaDictionaryService.reloadSite(siteEntity.getId());
+        if (leaseId == null) {
+            siteGenerationService.activate(siteEntity);
+        } else if (!siteGenerationService.activateLeased(siteEntity, leaseId, owner)) {
+            return false;
+        }
+        retireGenerations(siteEntity.getUrl());
+        return true;
+    }
+
+    // Неактивные поколения выводятся из работы сразу, их строки удаляет фоновая очистка
+    @Override
+    public void retireGenerations(String siteUrl) {
+        siteGenerationService.findInactive(siteUrl).forEach(generationPurgeService::retire);
+    }
+}
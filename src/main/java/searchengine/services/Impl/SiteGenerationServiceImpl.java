@@ -0,0 +1,111 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.Site;
+import searchengine.model.SiteEntity;
+import searchengine.model.SiteStatus;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.IndexingProgressService;
+import searchengine.services.SiteGenerationService;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Поколения сайта. Полная индексация пишет страницы и леммы в новую неактивную строку site,
+ * поиск в это время обслуживает предыдущее поколение. По окончании обхода поколения
+ * переключаются одним UPDATE, после чего старое поколение выводится из работы и удаляется в фоне.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SiteGenerationServiceImpl implements SiteGenerationService {
+    private final SiteRepository siteRepository;
+    private final IndexingProgressService indexingProgressService;
+    private volatile Set<Integer> servingSiteIds = Set.of();
+
+    @PostConstruct
+    public void loadServingSites() {
+        refreshServingSites();
+    }
+
+    // Метод перечитывания активных поколений; возвращает поколения, ставшие активными с прошлого чтения
+    @Override
+    public synchronized Set<Integer> refreshServingSites() {
+        Set<Integer> previous = servingSiteIds;
+        servingSiteIds = siteRepository.findActiveSites().stream()
+                .map(SiteEntity::getId)
+                .collect(Collectors.toUnmodifiableSet());
+        return servingSiteIds.stream()
+                .filter(siteId -> !previous.contains(siteId))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public SiteEntity createGeneration(Site site) {
+        String url = site.getUrl().toString();
+        int generation = siteRepository.findGenerationsByUrl(url).stream()
+                .mapToInt(SiteEntity::getGeneration)
+                .max()
+                .orElse(0) + 1;
+        SiteEntity siteEntity = new SiteEntity();
+        siteEntity.setStatus(SiteStatus.INDEXING);
+        siteEntity.setName(site.getName());
+        siteEntity.setUrl(url);
+        siteEntity.setGeneration(generation);
+        siteEntity.setActive(false);
+        SiteEntity saved = siteRepository.save(siteEntity);
+        indexingProgressService.siteChanged(saved);
+        return saved;
+    }
+
+    // Метод переключения поиска на готовое поколение
+    @Override
+    public void activate(SiteEntity siteEntity) {
+        siteEntity.setStatus(SiteStatus.INDEXED);
+        siteRepository.save(siteEntity);
+        siteRepository.activateGeneration(siteEntity.getId(), siteEntity.getUrl());
+        siteEntity.setActive(true);
+        refreshServingSites();
+        indexingProgressService.siteChanged(siteEntity);
+        log.info("Поиск по {} переключён на поколение {}", siteEntity.getUrl(), siteEntity.getGeneration());
+    }
+
+    // Метод переключения на поколение, построенное по аренде; false - аренда потеряна, поколение не переключено
+    @Override
+    public boolean activateLeased(SiteEntity siteEntity, int leaseId, String owner) {
+        if (siteRepository.activateLeasedGeneration(siteEntity.getId(), siteEntity.getUrl(), leaseId, owner) == 0) {
+            log.warn("Поколение {} сайта {} не переключено: аренда {} больше не принадлежит узлу {}",
+                    siteEntity.getGeneration(), siteEntity.getUrl(), leaseId, owner);
+            return false;
+        }
+        siteEntity.setStatus(SiteStatus.INDEXED);
+        siteEntity.setActive(true);
+        refreshServingSites();
+        indexingProgressService.siteChanged(siteEntity);
+        log.info("Поиск по {} переключён на поколение {}", siteEntity.getUrl(), siteEntity.getGeneration());
+        return true;
+    }
+
+    // Неактивные поколения, ещё не выведенные из работы: заменённые новым обходом или оставшиеся от прерванного
+    @Override
+    public List<SiteEntity> findInactive(String url) {
+        return siteRepository.findGenerationsByUrl(url).stream()
+                .filter(siteEntity -> !siteEntity.isActive() && siteEntity.getRetiredAt() == null)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<SiteEntity> findLatest() {
+        return siteRepository.findLatestGenerations();
+    }
+
+    @Override
+    public Set<Integer> getServingSiteIds() {
+        return servingSiteIds;
+    }
+}
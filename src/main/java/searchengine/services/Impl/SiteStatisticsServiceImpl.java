@@ -0,0 +1,120 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.SiteStatisticsService;
+import searchengine.storage.IndexStorage;
+import searchengine.utils.SiteCounters;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Счётчики сайтов в памяти. Значения периодически сохраняются в таблицу site
+ * и восстанавливаются из неё при запуске приложения.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SiteStatisticsServiceImpl implements SiteStatisticsService {
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final IndexStorage indexStorage;
+    private final Map<Integer, SiteCounters> countersBySite = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        for (SiteEntity siteEntity : siteRepository.findLiveSites()) {
+            SiteCounters counters = getCounters(siteEntity.getId());
+            if (siteEntity.getPageCount() == 0 && siteEntity.getLemmaCount() == 0) {
+                // Сайт проиндексирован до появления счётчиков: считаем один раз и сохраняем
+                counters.restore(pageRepository.findCountRecordBySiteId(siteEntity.getId()),
+                        indexStorage.countLemmas(siteEntity.getId()), 0, null);
+                counters.takeDirty();
+                if (counters.getPages() > 0) {
+                    save(siteEntity.getId(), counters);
+                }
+            } else {
+                counters.restore(siteEntity.getPageCount(), siteEntity.getLemmaCount(),
+                        siteEntity.getBytesFetched(), siteEntity.getErrorCodes());
+            }
+        }
+    }
+
+    @Override
+    public void pageAdded(int siteId) {
+        getCounters(siteId).addPage();
+    }
+
+    @Override
+    public void pageFetched(int siteId, int code, long bytes) {
+        getCounters(siteId).addFetch(code, bytes);
+    }
+
+    @Override
+    public void lemmasAdded(int siteId, int count) {
+        getCounters(siteId).addLemmas(count);
+    }
+
+    // После перестроения индекса число лемм сайта берётся из хранилища
+    @Override
+    public void lemmasRebuilt(int siteId, long count) {
+        getCounters(siteId).resetLemmas(count);
+    }
+
+    @Override
+    public void pageSkipped(int siteId, String reason) {
+        getCounters(siteId).addSkipped(reason);
+    }
+
+    @Override
+    public SiteCounters getCounters(int siteId) {
+        return countersBySite.computeIfAbsent(siteId, id -> new SiteCounters());
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        countersBySite.remove(siteId);
+    }
+
+    // Метод сохранения изменившихся счётчиков и времени статуса в таблицу site
+    @Override
+    @Scheduled(fixedDelayString = "${statistics-settings.persist-interval-ms:5000}")
+    public void persist() {
+        countersBySite.forEach((siteId, counters) -> {
+            if (counters.takeDirty()) {
+                save(siteId, counters);
+            }
+            long activity = counters.takeActivity();
+            if (activity > 0) {
+                try {
+                    siteRepository.updateStatusTime(siteId, new Timestamp(activity));
+                } catch (RuntimeException ex) {
+                    log.warn("Не удалось обновить время статуса сайта {}: {}", siteId, ex.getMessage());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        persist();
+    }
+
+    private void save(int siteId, SiteCounters counters) {
+        try {
+            siteRepository.updateCounters(siteId, counters.getPages(), counters.getLemmas(),
+                    counters.getErrors(), counters.getBytesFetched(), counters.formatErrorCodes());
+        } catch (RuntimeException ex) {
+            log.warn("Не удалось сохранить счётчики сайта {}: {}", siteId, ex.getMessage());
+        }
+    }
+}
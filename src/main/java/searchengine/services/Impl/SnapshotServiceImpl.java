@@ -0,0 +1,391 @@
+package searchengine.services.Impl;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SnapshotSettings;
+import searchengine.index.SnapshotReader;
+import searchengine.index.SnapshotWriter;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.CrawlLeaseRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.responses.IndexJobResponse;
+import searchengine.services.GenerationPurgeService;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.PageIndexerService;
+import searchengine.services.SegmentIndexService;
+import searchengine.services.SiteGenerationService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.services.SnapshotService;
+import searchengine.storage.IndexRebuild;
+import searchengine.storage.IndexStorage;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка и загрузка снимка индекса для быстрого запуска нового узла без обхода сайтов.
+ * Снимок содержит живые сайты, их страницы и постинги; пишется и читается последовательно.
+ * На время выгрузки обход не запускается и аренды не захватываются, поэтому страницы и постинги,
+ * прочитанные разными запросами, согласованы между собой.
+ * Импорт выполняется только в пустую базу: страницы загружаются многострочными insert с исходными id,
+ * а постинги - через перестроение хранилища индекса, без вторичных индексов до конца загрузки.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SnapshotServiceImpl implements SnapshotService {
+    private static final String STATUS_RUNNING = "RUNNING";
+    private static final String STATUS_DONE = "DONE";
+    private static final String STATUS_FAILED = "FAILED";
+    // Ограничение объёма текста в одном insert: запрос должен укладываться в max_allowed_packet
+    private static final int MAX_BATCH_CHARS = 8 * 1024 * 1024;
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("[\\w-][\\w.-]*");
+    private static final long DRAIN_POLL_MS = 1000;
+
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final CrawlLeaseRepository crawlLeaseRepository;
+    private final IndexStorage indexStorage;
+    private final PageIndexerService pageIndexerService;
+    private final SegmentIndexService segmentIndexService;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final SiteGenerationService siteGenerationService;
+    private final GenerationPurgeService generationPurgeService;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final SnapshotSettings snapshotSettings;
+    private final Map<String, SnapshotJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+
+    @PreDestroy
+    public void stop() {
+        jobExecutor.shutdownNow();
+    }
+
+    @Override
+    public IndexJobResponse startExport(String name) {
+        Path file = snapshotFile(name);
+        SnapshotJob job = startJob();
+        jobExecutor.submit(() -> runExport(job, file));
+        log.info("Запущена выгрузка снимка индекса {} в {}", job.getId(), file);
+        return toResponse(job);
+    }
+
+    @Override
+    public IndexJobResponse startImport(String name) {
+        Path file = snapshotFile(name);
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("Снимок " + name + " не найден");
+        }
+        if (siteRepository.count() > 0) {
+            throw new IllegalStateException("Импорт снимка возможен только в пустую базу");
+        }
+        SnapshotJob job = startJob();
+        jobExecutor.submit(() -> runImport(job, file));
+        log.info("Запущена загрузка снимка индекса {} из {}", job.getId(), file);
+        return toResponse(job);
+    }
+
+    @Override
+    public IndexJobResponse getJob(String jobId) {
+        SnapshotJob job = jobs.get(jobId);
+        return job == null ? null : toResponse(job);
+    }
+
+    @Override
+    public boolean isSnapshotInProgress() {
+        return running.get();
+    }
+
+    private SnapshotJob startJob() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Выгрузка или загрузка снимка уже выполняется");
+        }
+        removeExpiredJobs();
+        SnapshotJob job = new SnapshotJob(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    // Снимок пишется во временный файл и появляется под своим именем только целиком
+    private void runExport(SnapshotJob job, Path file) {
+        long start = System.currentTimeMillis();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            awaitRunningLeases();
+            pageIndexerService.awaitIndexed();
+            List<SiteEntity> sites = siteRepository.findLiveSites();
+            job.getTotal().set(sites.stream().mapToInt(site -> pageRepository.findCountRecordBySiteId(site.getId())).sum());
+            Files.createDirectories(file.getParent());
+            try (SnapshotWriter writer = new SnapshotWriter(temp, snapshotSettings.getBlockSizeKb() * 1024,
+                    snapshotSettings.getCompressionLevel())) {
+                for (SiteEntity site : sites) {
+                    writer.site(site.getId(), site.getUrl(), site.getName(), site.getStatus().name(), site.getGeneration(), site.isActive());
+                    writePages(job, writer, site.getId());
+                    writeLemmas(writer, site.getId());
+                }
+                writer.finish();
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            job.finish(STATUS_DONE);
+            log.info("Снимок индекса {} выгружен за {} мс: сайтов {}, страниц {}, {} байт", file, System.currentTimeMillis() - start,
+                    sites.size(), job.getDone(), Files.size(file));
+        } catch (IOException | RuntimeException | InterruptedException ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("Ошибка выгрузки снимка индекса {}", job.getId(), ex);
+            deleteQuietly(temp);
+            job.finish(STATUS_FAILED);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Аренды, захваченные до запуска выгрузки, дообходятся; новые не захватываются, пока идёт выгрузка
+    private void awaitRunningLeases() throws InterruptedException {
+        while (crawlLeaseRepository.countRunning() > 0) {
+            Thread.sleep(DRAIN_POLL_MS);
+        }
+    }
+
+    // Страницы сайта читаются курсором в транзакции только для чтения
+    private void writePages(SnapshotJob job, SnapshotWriter writer, int siteId) throws IOException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Object[]> pages = pageRepository.streamPagesBySiteId(siteId)) {
+                    for (Object[] row : (Iterable<Object[]>) pages::iterator) {
+                        writer.page(((Number) row[0]).intValue(), (String) row[1], ((Number) row[2]).intValue(), (String) row[3]);
+                        job.getDone().incrementAndGet();
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    // Постинги приходят по возрастанию lemmaId и группируются по леммам
+    private void writeLemmas(SnapshotWriter writer, int siteId) throws IOException {
+        Map<Integer, String> names = indexStorage.findLemmaNames(siteId);
+        indexStorage.streamPostings(siteId, postings -> {
+            PostingBuffer buffer = new PostingBuffer();
+            int currentLemma = -1;
+            for (int[] posting : (Iterable<int[]>) postings::iterator) {
+                if (posting[0] != currentLemma) {
+                    writeLemma(writer, currentLemma, names, buffer);
+                    currentLemma = posting[0];
+                }
+                buffer.add(posting[1], posting[2]);
+            }
+            writeLemma(writer, currentLemma, names, buffer);
+        });
+    }
+
+    // Постинги без леммы в словаре означают несогласованное чтение: снимок без них был бы неполным
+    private void writeLemma(SnapshotWriter writer, int lemmaId, Map<Integer, String> names, PostingBuffer buffer) throws IOException {
+        if (buffer.size > 0) {
+            String lemma = names.get(lemmaId);
+            if (lemma == null) {
+                throw new IOException("Лемма " + lemmaId + " есть в постингах, но отсутствует в словаре сайта");
+            }
+            writer.lemma(lemma, buffer.pageIds, buffer.ranks, buffer.size);
+        }
+        buffer.size = 0;
+    }
+
+    private void runImport(SnapshotJob job, Path file) {
+        long start = System.currentTimeMillis();
+        Map<Integer, Integer> pagesBySite = new LinkedHashMap<>();
+        IndexRebuild rebuild = null;
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            rebuild = indexStorage.beginRebuild();
+            IndexRebuild target = rebuild;
+            PageBatch pages = new PageBatch();
+            reader.read(new SnapshotReader.Handler() {
+                @Override
+                public void site(int siteId, String url, String name, String status, int generation, boolean active) {
+                    insertPages(pages);
+                    jdbcTemplate.update("insert into site (id, status, status_time, url, name, generation, active) values (?, ?, ?, ?, ?, ?, ?)",
+                            siteId, status, new Timestamp(System.currentTimeMillis()), url, name, generation, active);
+                    pagesBySite.put(siteId, 0);
+                }
+
+                @Override
+                public void page(int siteId, int pageId, String path, int code, String content) {
+                    pages.add(siteId, pageId, path, code, content);
+                    if (pages.size() >= snapshotSettings.getImportBatchPages() || pages.chars >= MAX_BATCH_CHARS) {
+                        insertPages(pages);
+                    }
+                    pagesBySite.merge(siteId, 1, Integer::sum);
+                    job.getDone().incrementAndGet();
+                }
+
+                @Override
+                public void lemma(int siteId, String lemma, int[] pageIds, int[] ranks) {
+                    target.addPostings(siteId, lemma, pageIds, ranks);
+                }
+            });
+            insertPages(pages);
+            rebuild.commit();
+            rebuild = null;
+            // Поиск обслуживает только известные активные поколения: загруженные сайты регистрируются до загрузки словарей
+            siteGenerationService.refreshServingSites();
+            pagesBySite.forEach((siteId, pageCount) -> {
+                siteStatisticsService.getCounters(siteId).restore(pageCount, 0, 0, null);
+                siteStatisticsService.lemmasRebuilt(siteId, indexStorage.countLemmas(siteId));
+                lemmaDictionaryService.loadSite(siteId);
+                segmentIndexService.rebuildSite(siteId);
+            });
+            job.getTotal().set(job.getDone().get());
+            job.finish(STATUS_DONE);
+            log.info("Снимок индекса {} загружен за {} мс: сайтов {}, страниц {}", file, System.currentTimeMillis() - start,
+                    pagesBySite.size(), job.getDone());
+        } catch (IOException | RuntimeException ex) {
+            log.error("Ошибка загрузки снимка индекса {}", job.getId(), ex);
+            if (rebuild != null) {
+                abort(rebuild);
+            }
+            removeImportedSites(pagesBySite.keySet());
+            job.finish(STATUS_FAILED);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Строки страниц с текстом передаются параметрами; id сохраняются, на них ссылаются постинги
+    private void insertPages(PageBatch pages) {
+        if (pages.size() == 0) {
+            return;
+        }
+        String sql = "insert into page (id, site_id, path, code, content) values " +
+                String.join(",", Collections.nCopies(pages.size(), "(?,?,?,?,?)"));
+        jdbcTemplate.update(sql, pages.rows.stream().flatMap(Arrays::stream).toArray());
+        pages.rows.clear();
+        pages.chars = 0;
+    }
+
+    // Частично загруженные сайты снимаются с поиска и выводятся из работы, а их страницы и леммы
+    // удаляет фоновая очистка поколений небольшими частями; после неё импорт можно повторить
+    private void removeImportedSites(Iterable<Integer> siteIds) {
+        try {
+            for (int siteId : siteIds) {
+                siteRepository.deactivate(siteId);
+                siteRepository.findById(siteId).ifPresent(generationPurgeService::retire);
+            }
+            siteGenerationService.refreshServingSites();
+        } catch (RuntimeException ex) {
+            log.error("Не удалось вывести из работы частично загруженные сайты", ex);
+        }
+    }
+
+    private void abort(IndexRebuild rebuild) {
+        try {
+            rebuild.abort();
+        } catch (RuntimeException ex) {
+            log.error("Не удалось удалить недостроенный индекс", ex);
+        }
+    }
+
+    private Path snapshotFile(String name) {
+        if (name == null || !SNAPSHOT_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Недопустимое имя снимка: " + name);
+        }
+        return Paths.get(snapshotSettings.getDirectory()).resolve(name).toAbsolutePath();
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Не удалось удалить {}: {}", file, ex.getMessage());
+        }
+    }
+
+    private void removeExpiredJobs() {
+        long expiredBefore = System.currentTimeMillis() - snapshotSettings.getJobTtlMs();
+        jobs.values().removeIf(job -> job.getFinishedAt() > 0 && job.getFinishedAt() < expiredBefore);
+    }
+
+    private IndexJobResponse toResponse(SnapshotJob job) {
+        return new IndexJobResponse(true, job.getId(), job.getFinishedAt() > 0 ? job.getStatus() : STATUS_RUNNING,
+                job.getTotal().get(), job.getDone().get(), 0, 0);
+    }
+
+    private static final class PageBatch {
+        private final List<Object[]> rows = new ArrayList<>();
+        private long chars;
+
+        private void add(int siteId, int pageId, String path, int code, String content) {
+            rows.add(new Object[]{pageId, siteId, path, code, content});
+            chars += content.length();
+        }
+
+        private int size() {
+            return rows.size();
+        }
+    }
+
+    private static final class PostingBuffer {
+        private int[] pageIds = new int[1024];
+        private int[] ranks = new int[1024];
+        private int size;
+
+        private void add(int pageId, int rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class SnapshotJob {
+        private final String id;
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private volatile String status;
+        private volatile long finishedAt;
+
+        private void finish(String status) {
+            this.status = status;
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+}
@@ -10,10 +10,12 @@ import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.SiteEntity;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
-import searchengine.repositories.SiteRepository;
+import searchengine.services.IndexingService;
+import searchengine.services.SiteGenerationService;
+import searchengine.services.SiteStatisticsService;
 import searchengine.services.StatisticsService;
+import searchengine.utils.ReadRouting;
+import searchengine.utils.SiteCounters;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -26,19 +28,29 @@ import java.util.List;
 @RequiredArgsConstructor
 public class StatisticsServiceImpl implements StatisticsService {
     private final SitesList sites;
-    private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
+    private final SiteGenerationService siteGenerationService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final IndexingService indexingService;
 
     @Override
     public StatisticsResponse getStatistics() throws MalformedURLException {
-        List<SiteEntity> siteEntities = siteRepository.findAll();
+        // При включённой маршрутизации статистика читается с реплики
+        ReadRouting.preferReplica();
+        try {
+            return collectStatistics();
+        } finally {
+            ReadRouting.reset();
+        }
+    }
+
+    private StatisticsResponse collectStatistics() throws MalformedURLException {
+        List<SiteEntity> siteEntities = siteGenerationService.findLatest();
         if (siteEntities.isEmpty()) {
             return getStartStatistics();
         }
         TotalStatistics total = new TotalStatistics();
         total.setSites(sites.getSites().size());
-        total.setIndexing(true);
+        total.setIndexing(indexingService.isIndexingInProgress());
 
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
         for (SiteEntity siteEntity : siteEntities) {
@@ -48,10 +60,16 @@ public class StatisticsServiceImpl implements StatisticsService {
             DetailedStatisticsItem item = new DetailedStatisticsItem();
             item.setName(site.getName());
             item.setUrl(site.getUrl().toString());
-            int pages = pageRepository.findCountRecordBySiteId(siteEntity.getId());
-            int lemmas = lemmaRepository.findCountRecordBySiteId(siteEntity.getId());
+            // Счётчики ведутся индексатором в памяти, таблицы page и lemma не сканируются
+            SiteCounters counters = siteStatisticsService.getCounters(siteEntity.getId());
+            int pages = (int) counters.getPages();
+            int lemmas = (int) counters.getLemmas();
             item.setPages(pages);
             item.setLemmas(lemmas);
+            item.setErrors(counters.getErrors());
+            item.setBytesFetched(counters.getBytesFetched());
+            item.setErrorsByCode(counters.getErrorsByCode());
+            item.setSkippedByReason(counters.getSkippedByReason());
             item.setStatus(String.valueOf(siteEntity.getStatus()));
             item.setError(siteEntity.getLastError());
             if (siteEntity.getStatusTime() != null) {
@@ -0,0 +1,46 @@
+package searchengine.services.Impl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+import searchengine.responses.NotOkResponse;
+import searchengine.responses.SuggestResponse;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.SuggestService;
+import searchengine.utils.LemmaTrie;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class SuggestServiceImpl implements SuggestService {
+    private final SiteRepository siteRepository;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final SearchSettings searchSettings;
+
+    @Override
+    public ResponseEntity<Object> suggest(String prefix, String site, Integer limit) {
+        String preparedPrefix = prefix == null ? "" : prefix.trim().toLowerCase();
+        if (preparedPrefix.isEmpty()) {
+            return ResponseEntity.ok(new SuggestResponse(true, Collections.emptyList()));
+        }
+        Integer siteId = null;
+        if (site != null && !site.isBlank()) {
+            SiteEntity siteEntity = siteRepository.getSitePageByUrl(site);
+            if (siteEntity == null) {
+                return ResponseEntity.badRequest().body(new NotOkResponse("Указанный сайт не найден"));
+            }
+            siteId = siteEntity.getId();
+        }
+        int suggestLimit = limit == null || limit <= 0 ? searchSettings.getSuggestLimit() : Math.min(limit, searchSettings.getSuggestLimit());
+        List<String> suggestions = lemmaDictionaryService.findTopByPrefix(siteId, preparedPrefix, suggestLimit).stream()
+                .map(LemmaTrie.Completion::getLemma)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(new SuggestResponse(true, suggestions));
+    }
+}
@@ -0,0 +1,9 @@
+package searchengine.services;
+
+import searchengine.responses.IndexJobResponse;
+
+public interface IndexRebuildService {
+    IndexJobResponse startJob();
+    IndexJobResponse getJob(String jobId);
+    boolean isRebuildInProgress();
+}
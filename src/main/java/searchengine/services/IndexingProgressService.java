@@ -0,0 +1,10 @@
+package searchengine.services;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.model.SiteEntity;
+
+public interface IndexingProgressService {
+    SseEmitter subscribe();
+    void siteChanged(SiteEntity siteEntity);
+    void push();
+}
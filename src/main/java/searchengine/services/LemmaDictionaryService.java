@@ -0,0 +1,18 @@
+package searchengine.services;
+
+import searchengine.utils.LemmaTrie;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface LemmaDictionaryService {
+    void addLemma(int siteId, String lemma, long weight);
+    void recordQuery(Integer siteId, Collection<String> lemmas);
+    void removeSite(int siteId);
+    void loadSite(int siteId);
+    void reloadSite(int siteId);
+    boolean contains(Integer siteId, String lemma);
+    List<String> findByPrefix(Integer siteId, String prefix, int limit);
+    List<String> findSimilar(Integer siteId, String word, int maxEdits, int limit);
+    List<LemmaTrie.Completion> findTopByPrefix(Integer siteId, String prefix, int limit);
+}
@@ -6,4 +6,5 @@ import java.util.Map;
 public interface LemmaService {
     Map<String, Integer> getLemmasFromText(String text) throws IOException;
     String getLemmaByWord(String word);
+    boolean isServiceWord(String word);
 }
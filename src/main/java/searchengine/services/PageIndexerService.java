@@ -2,8 +2,13 @@ package searchengine.services;
 
 import searchengine.model.PageEntity;
 
+import java.util.Map;
+
 public interface PageIndexerService {
     void indexHtml(String html, PageEntity indexingPageEntity);
 
     void refreshIndex(String html, PageEntity refreshPageEntity);
+
+    // Число страниц по id сайта, исключённых из индекса после исчерпания попыток
+    Map<Integer, Integer> awaitIndexed();
 }
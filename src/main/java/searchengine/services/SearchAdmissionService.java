@@ -0,0 +1,9 @@
+package searchengine.services;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface SearchAdmissionService {
+    CompletableFuture<ResponseEntity<Object>> search(String query, String site, Integer offset, Integer limit, boolean profile);
+}
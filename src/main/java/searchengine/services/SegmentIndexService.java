@@ -0,0 +1,14 @@
+package searchengine.services;
+
+import searchengine.index.PostingConsumer;
+
+import java.util.Map;
+
+public interface SegmentIndexService {
+    boolean isReady(int siteId);
+    void addPage(int siteId, int pageId, Map<Integer, Integer> lemmaRanks);
+    void forEachPosting(int siteId, int lemmaId, PostingConsumer consumer);
+    void flush(int siteId);
+    void removeSite(int siteId);
+    void rebuildSite(int siteId);
+}
@@ -0,0 +1,11 @@
+package searchengine.services;
+
+import searchengine.model.SiteEntity;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public interface SiteCrawlService {
+    boolean crawl(SiteEntity generation, AtomicBoolean processing);
+    boolean crawlLeased(SiteEntity generation, AtomicBoolean processing, int leaseId, String owner);
+    void retireGenerations(String siteUrl);
+}
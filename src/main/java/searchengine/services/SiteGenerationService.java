@@ -0,0 +1,17 @@
+package searchengine.services;
+
+import searchengine.config.Site;
+import searchengine.model.SiteEntity;
+
+import java.util.List;
+import java.util.Set;
+
+public interface SiteGenerationService {
+    SiteEntity createGeneration(Site site);
+    void activate(SiteEntity siteEntity);
+    boolean activateLeased(SiteEntity siteEntity, int leaseId, String owner);
+    List<SiteEntity> findInactive(String url);
+    List<SiteEntity> findLatest();
+    Set<Integer> getServingSiteIds();
+    Set<Integer> refreshServingSites();
+}
@@ -0,0 +1,14 @@
+package searchengine.services;
+
+import searchengine.utils.SiteCounters;
+
+public interface SiteStatisticsService {
+    void pageAdded(int siteId);
+    void pageFetched(int siteId, int code, long bytes);
+    void lemmasAdded(int siteId, int count);
+    void lemmasRebuilt(int siteId, long count);
+    void pageSkipped(int siteId, String reason);
+    SiteCounters getCounters(int siteId);
+    void removeSite(int siteId);
+    void persist();
+}
@@ -0,0 +1,10 @@
+package searchengine.services;
+
+import searchengine.responses.IndexJobResponse;
+
+public interface SnapshotService {
+    IndexJobResponse startExport(String name);
+    IndexJobResponse startImport(String name);
+    IndexJobResponse getJob(String jobId);
+    boolean isSnapshotInProgress();
+}
@@ -0,0 +1,7 @@
+package searchengine.services;
+
+import org.springframework.http.ResponseEntity;
+
+public interface SuggestService {
+    ResponseEntity<Object> suggest(String prefix, String site, Integer limit);
+}
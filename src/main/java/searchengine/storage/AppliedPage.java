@@ -0,0 +1,16 @@
+package searchengine.storage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import searchengine.index.PageDelta;
+
+import java.util.Map;
+
+// Результат применения дельты: ранги страницы по id лемм и число впервые созданных лемм сайта
+@Getter
+@RequiredArgsConstructor
+public class AppliedPage {
+    private final PageDelta delta;
+    private final Map<Integer, Integer> lemmaRanks;
+    private final int newLemmas;
+}
@@ -0,0 +1,92 @@
+package searchengine.storage;
+
+import searchengine.index.PageDelta;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Перестроение файлового хранилища: сайты строятся заново в отдельном каталоге и при фиксации
+ * подменяют действующие. Id лемм продолжают общую нумерацию хранилища и не совпадают с прежними.
+ */
+class FileIndexRebuild implements IndexRebuild {
+    private final FileIndexStorage storage;
+    private final Path directory;
+    private final double garbageRatio;
+    private final AtomicInteger lemmaIds;
+    private final Map<Integer, FileSiteIndex> sites = new ConcurrentHashMap<>();
+    // Постинги, пришедшие по леммам, собираются по страницам: файловый индекс применяет страницу целиком
+    private final Map<Integer, Map<Integer, Map<String, Integer>>> pendingPages = new HashMap<>();
+
+    FileIndexRebuild(FileIndexStorage storage, Path directory, double garbageRatio, AtomicInteger lemmaIds) throws IOException {
+        this.storage = storage;
+        this.directory = directory;
+        this.garbageRatio = garbageRatio;
+        this.lemmaIds = lemmaIds;
+        FileSiteIndex.delete(directory);
+    }
+
+    // Страницы разных сайтов применяются параллельно, страницы одного сайта - под его блокировкой
+    @Override
+    public void addPage(int siteId, int pageId, Map<String, Integer> lemmas) {
+        try {
+            site(siteId).apply(new PageDelta(0, siteId, pageId, lemmas), lemmaIds);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void addPostings(int siteId, String lemma, int[] pageIds, int[] ranks) {
+        Map<Integer, Map<String, Integer>> pages = pendingPages.computeIfAbsent(siteId, id -> new HashMap<>());
+        for (int i = 0; i < pageIds.length; i++) {
+            pages.computeIfAbsent(pageIds[i], id -> new HashMap<>()).put(lemma, ranks[i]);
+        }
+    }
+
+    @Override
+    public void commit() {
+        synchronized (this) {
+            pendingPages.forEach((siteId, pages) -> pages.forEach((pageId, lemmas) -> addPage(siteId, pageId, lemmas)));
+            pendingPages.clear();
+        }
+        try {
+            for (FileSiteIndex site : sites.values()) {
+                site.close();
+            }
+            storage.replaceSites(directory, sites.keySet());
+            FileSiteIndex.delete(directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void abort() {
+        try {
+            for (FileSiteIndex site : sites.values()) {
+                site.close();
+            }
+            FileSiteIndex.delete(directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private FileSiteIndex site(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> {
+            FileSiteIndex site = new FileSiteIndex(id, directory.resolve(FileIndexStorage.siteDirectoryName(id)));
+            try {
+                site.open(garbageRatio);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return site;
+        });
+    }
+}
@@ -0,0 +1,248 @@
+package searchengine.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import searchengine.config.StorageSettings;
+import searchengine.dto.suggest.LemmaWeightDTO;
+import searchengine.index.PageDelta;
+import searchengine.index.PostingConsumer;
+import searchengine.model.LemmaEntity;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Встроенное файловое хранилище индекса: каталог site-N на сайт, запись только в конец журналов,
+ * чтение постингов леммы - проход по её списку страниц в памяти. Подходит для небольших установок
+ * и проверок без таблиц lemma и index_search; id лемм назначаются хранилищем.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "storage-settings", name = "engine", havingValue = "file")
+public class FileIndexStorage implements IndexStorage {
+    private static final String SITE_PREFIX = "site-";
+    private static final String REBUILD_DIRECTORY = "rebuild";
+
+    private final StorageSettings storageSettings;
+    private final Map<Integer, FileSiteIndex> sites = new ConcurrentHashMap<>();
+    private final AtomicInteger lemmaIds = new AtomicInteger();
+
+    @PostConstruct
+    public void load() throws IOException {
+        Path directory = Paths.get(storageSettings.getDirectory());
+        Files.createDirectories(directory);
+        List<Path> siteDirectories;
+        try (Stream<Path> files = Files.list(directory)) {
+            siteDirectories = files.filter(path -> path.getFileName().toString().matches(SITE_PREFIX + "\\d+"))
+                    .collect(Collectors.toList());
+        }
+        for (Path siteDirectory : siteDirectories) {
+            int siteId = Integer.parseInt(siteDirectory.getFileName().toString().substring(SITE_PREFIX.length()));
+            FileSiteIndex site = openSite(siteId);
+            lemmaIds.accumulateAndGet(site.maxLemmaId(), Math::max);
+        }
+        log.info("Файловое хранилище индекса {}: сайтов {}", directory.toAbsolutePath(), sites.size());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (FileSiteIndex site : sites.values()) {
+            site.close();
+        }
+    }
+
+    // Журналы затронутых сайтов сбрасываются на диск один раз в конце пачки.
+    // При сбое журналы обрезаются до размеров перед пачкой, а сайты перечитываются с диска:
+    // пачка применяется целиком или не применяется вовсе
+    @Override
+    public List<AppliedPage> applyPages(List<PageDelta> deltas) {
+        List<AppliedPage> applied = new ArrayList<>(deltas.size());
+        Map<FileSiteIndex, long[]> logSizes = new LinkedHashMap<>();
+        try {
+            for (PageDelta delta : deltas) {
+                FileSiteIndex site = site(delta.getSiteId());
+                if (!logSizes.containsKey(site)) {
+                    logSizes.put(site, site.logSizes());
+                }
+                applied.add(site.apply(delta, lemmaIds));
+            }
+            for (FileSiteIndex site : logSizes.keySet()) {
+                site.sync();
+            }
+        } catch (IOException ex) {
+            rollback(logSizes, ex);
+            throw new UncheckedIOException(ex);
+        } catch (RuntimeException ex) {
+            rollback(logSizes, ex);
+            throw ex;
+        }
+        return applied;
+    }
+
+    private void rollback(Map<FileSiteIndex, long[]> logSizes, Exception cause) {
+        logSizes.forEach((site, sizes) -> {
+            try {
+                site.truncate(sizes);
+                site.close();
+                sites.put(site.siteId(), createSite(site.siteId()));
+            } catch (IOException ex) {
+                log.error("Не удалось откатить пачку в файлах сайта {}", site.siteId(), ex);
+                cause.addSuppressed(ex);
+            }
+        });
+    }
+
+    @Override
+    public List<LemmaEntity> findLemmas(String lemma, Integer siteId) {
+        if (siteId != null) {
+            FileSiteIndex site = sites.get(siteId);
+            return site == null ? List.of() : site.findLemma(lemma);
+        }
+        return sites.values().stream()
+                .flatMap(site -> site.findLemma(lemma).stream())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachPosting(LemmaEntity lemma, PostingConsumer consumer) {
+        FileSiteIndex site = sites.get(lemma.getSiteId());
+        if (site != null) {
+            site.forEachPosting(lemma.getId(), consumer);
+        }
+    }
+
+    @Override
+    public void streamPostings(int siteId, PostingStreamHandler handler) throws IOException {
+        FileSiteIndex site = sites.get(siteId);
+        try (Stream<int[]> postings = site == null ? Stream.empty() : site.postings()) {
+            handler.accept(postings);
+        }
+    }
+
+    @Override
+    public List<LemmaWeightDTO> findLemmaWeights(int siteId) {
+        FileSiteIndex site = sites.get(siteId);
+        return site == null ? List.of() : site.lemmaWeights();
+    }
+
+    @Override
+    public Map<Integer, String> findLemmaNames(int siteId) {
+        FileSiteIndex site = sites.get(siteId);
+        return site == null ? Map.of() : site.lemmaNames();
+    }
+
+    @Override
+    public int countLemmas(int siteId) {
+        FileSiteIndex site = sites.get(siteId);
+        return site == null ? 0 : site.lemmaCount();
+    }
+
+    // Страницы выписываются из журнала сайта; сам каталог удаляется в deleteLemmas
+    @Override
+    public void deletePostings(int siteId, List<Integer> pageIds) {
+        FileSiteIndex site = sites.get(siteId);
+        if (site == null) {
+            return;
+        }
+        try {
+            site.removePages(pageIds);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public int deleteLemmas(int siteId, int limit) {
+        FileSiteIndex site = sites.remove(siteId);
+        if (site == null) {
+            return 0;
+        }
+        try {
+            int lemmas = site.lemmaCount();
+            site.close();
+            site.delete();
+            return lemmas;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public IndexRebuild beginRebuild() {
+        try {
+            return new FileIndexRebuild(this, Paths.get(storageSettings.getDirectory(), REBUILD_DIRECTORY),
+                    storageSettings.getCompactGarbageRatio(), lemmaIds);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Метод подмены каталогов сайтов перестроенными; сайты, которых нет среди перестроенных, удаляются.
+    // Прежний каталог сначала отодвигается, поэтому при сбое на диске остаётся один из двух вариантов сайта
+    void replaceSites(Path rebuildDirectory, Set<Integer> siteIds) throws IOException {
+        for (int siteId : siteIds) {
+            Path target = Paths.get(storageSettings.getDirectory(), siteDirectoryName(siteId));
+            Path retired = target.resolveSibling(target.getFileName() + ".old");
+            FileSiteIndex.delete(retired);
+            FileSiteIndex old = sites.get(siteId);
+            if (old != null) {
+                old.close();
+            }
+            if (Files.exists(target)) {
+                Files.move(target, retired, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(rebuildDirectory.resolve(siteDirectoryName(siteId)), target, StandardCopyOption.ATOMIC_MOVE);
+            sites.put(siteId, createSite(siteId));
+            FileSiteIndex.delete(retired);
+        }
+        for (Integer siteId : new ArrayList<>(sites.keySet())) {
+            if (!siteIds.contains(siteId)) {
+                deleteLemmas(siteId, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    static String siteDirectoryName(int siteId) {
+        return SITE_PREFIX + siteId;
+    }
+
+    private FileSiteIndex site(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> {
+            try {
+                return createSite(id);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    private FileSiteIndex openSite(int siteId) throws IOException {
+        FileSiteIndex site = createSite(siteId);
+        sites.put(siteId, site);
+        return site;
+    }
+
+    private FileSiteIndex createSite(int siteId) throws IOException {
+        FileSiteIndex site = new FileSiteIndex(siteId, Paths.get(storageSettings.getDirectory(), siteDirectoryName(siteId)));
+        site.open(storageSettings.getCompactGarbageRatio());
+        return site;
+    }
+}
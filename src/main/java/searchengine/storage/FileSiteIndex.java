@@ -0,0 +1,395 @@
+package searchengine.storage;
+
+import searchengine.dto.suggest.LemmaWeightDTO;
+import searchengine.index.PageDelta;
+import searchengine.index.PostingConsumer;
+import searchengine.model.LemmaEntity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Файловый индекс одного сайта. На диске два журнала: lemmas.log с новыми леммами (id, написание)
+ * и pages.log с полным набором (lemmaId, ранг) страницы, где более поздняя запись страницы заменяет прежнюю.
+ * В памяти держатся прямой индекс страниц и списки страниц по леммам; частоты лемм вычисляются при загрузке.
+ * Список страницы леммы только дополняется, а страницы, потерявшие лемму, отбрасываются при чтении
+ * по прямому индексу и вычищаются, когда таких записей становится больше половины списка.
+ */
+class FileSiteIndex implements Closeable {
+    private static final String LEMMAS_FILE = "lemmas.log";
+    private static final String PAGES_FILE = "pages.log";
+
+    private final int siteId;
+    private final Path directory;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, LemmaEntity> lemmasByName = new HashMap<>();
+    private final Map<Integer, LemmaEntity> lemmasById = new HashMap<>();
+    private final Map<Integer, PagePostings> pages = new HashMap<>();
+    private final Map<Integer, PageList> pagesByLemma = new HashMap<>();
+    private RecordLog lemmaLog;
+    private RecordLog pageLog;
+
+    FileSiteIndex(int siteId, Path directory) {
+        this.siteId = siteId;
+        this.directory = directory;
+    }
+
+    // Метод загрузки журналов; журнал страниц переписывается, если устаревшие записи занимают больше garbageRatio
+    void open(double garbageRatio) throws IOException {
+        Files.createDirectories(directory);
+        lemmaLog = RecordLog.open(directory.resolve(LEMMAS_FILE), this::replayLemma);
+        pageLog = RecordLog.open(directory.resolve(PAGES_FILE), this::replayPage);
+        long liveBytes = pages.values().stream().mapToLong(page -> RecordLog.recordSize(page.payloadSize())).sum();
+        long totalBytes = pageLog.size();
+        if (totalBytes > 0 && totalBytes - liveBytes > totalBytes * garbageRatio) {
+            List<ByteBuffer> payloads = new ArrayList<>(pages.size());
+            pages.forEach((pageId, page) -> payloads.add(page.encode(pageId)));
+            pageLog.rewrite(payloads);
+        }
+    }
+
+    int maxLemmaId() {
+        return lemmasById.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    // Метод применения дельты; запись в журналы без сброса на диск, сброс - в sync() после пачки
+    AppliedPage apply(PageDelta delta, AtomicInteger lemmaIds) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int newLemmas = 0;
+            int[] ids = new int[delta.getLemmas().size()];
+            Map<Integer, Integer> lemmaRanks = new HashMap<>();
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : delta.getLemmas().entrySet()) {
+                LemmaEntity lemma = lemmasByName.get(entry.getKey());
+                if (lemma == null) {
+                    lemma = addLemma(lemmaIds.incrementAndGet(), entry.getKey());
+                    lemmaLog.append(encodeLemma(lemma));
+                    newLemmas++;
+                }
+                ids[i++] = lemma.getId();
+                lemmaRanks.put(lemma.getId(), entry.getValue());
+            }
+            Arrays.sort(ids);
+            int[] ranks = new int[ids.length];
+            for (int j = 0; j < ids.length; j++) {
+                ranks[j] = lemmaRanks.get(ids[j]);
+            }
+            PagePostings page = new PagePostings(ids, ranks);
+            putPage(delta.getPageId(), page);
+            pageLog.append(page.encode(delta.getPageId()));
+            return new AppliedPage(delta, lemmaRanks, newLemmas);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Метод выписывания страниц из индекса: для каждой пишется пустая запись, частоты её лемм уменьшаются
+    void removePages(List<Integer> pageIds) throws IOException {
+        lock.writeLock().lock();
+        try {
+            PagePostings empty = new PagePostings(new int[0], new int[0]);
+            for (int pageId : pageIds) {
+                if (pages.containsKey(pageId)) {
+                    putPage(pageId, empty);
+                    pageLog.append(empty.encode(pageId));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        pageLog.force();
+    }
+
+    // Размеры журналов перед пачкой, к которым она откатывается при сбое
+    long[] logSizes() throws IOException {
+        return new long[]{lemmaLog.size(), pageLog.size()};
+    }
+
+    // Метод отката журналов; состояние в памяти после отката восстанавливается повторным открытием
+    void truncate(long[] logSizes) throws IOException {
+        lemmaLog.truncate(logSizes[0]);
+        pageLog.truncate(logSizes[1]);
+    }
+
+    int siteId() {
+        return siteId;
+    }
+
+    void sync() throws IOException {
+        lemmaLog.force();
+        pageLog.force();
+    }
+
+    List<LemmaEntity> findLemma(String lemma) {
+        lock.readLock().lock();
+        try {
+            LemmaEntity found = lemmasByName.get(lemma);
+            return found == null ? List.of() : List.of(copy(found));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void forEachPosting(int lemmaId, PostingConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            PageList list = pagesByLemma.get(lemmaId);
+            if (list == null) {
+                return;
+            }
+            // Повторы страницы в списке возможны, только если в нём есть устаревшие записи
+            Set<Integer> seen = list.stale > 0 ? new HashSet<>() : null;
+            for (int i = 0; i < list.size; i++) {
+                int pageId = list.pageIds[i];
+                int rank = rankOf(pageId, lemmaId);
+                if (rank > 0 && (seen == null || seen.add(pageId))) {
+                    consumer.accept(pageId, rank);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Постинги по возрастанию lemmaId и pageId; блокировка берётся на каждую лемму, а не на весь обход
+    Stream<int[]> postings() {
+        List<Integer> lemmaIds;
+        lock.readLock().lock();
+        try {
+            lemmaIds = pagesByLemma.keySet().stream().sorted().collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return lemmaIds.stream().flatMap(lemmaId -> {
+            List<int[]> postings = new ArrayList<>();
+            forEachPosting(lemmaId, (pageId, rank) -> postings.add(new int[]{lemmaId, pageId, rank}));
+            postings.sort((a, b) -> Integer.compare(a[1], b[1]));
+            return postings.stream();
+        });
+    }
+
+    List<LemmaWeightDTO> lemmaWeights() {
+        lock.readLock().lock();
+        try {
+            return lemmasByName.values().stream()
+                    .map(lemma -> new LemmaWeightDTO(lemma.getLemma(), lemma.getFrequency()))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Map<Integer, String> lemmaNames() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, String> names = new HashMap<>();
+            lemmasById.forEach((id, lemma) -> names.put(id, lemma.getLemma()));
+            return names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int lemmaCount() {
+        lock.readLock().lock();
+        try {
+            return lemmasByName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Метод удаления файлов сайта; вызывается после close()
+    void delete() throws IOException {
+        delete(directory);
+    }
+
+    // Метод удаления каталога вместе с вложенными каталогами сайтов
+    static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                if (Files.isDirectory(file)) {
+                    delete(file);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lemmaLog != null) {
+            lemmaLog.close();
+        }
+        if (pageLog != null) {
+            pageLog.close();
+        }
+    }
+
+    private void replayLemma(ByteBuffer record) {
+        int id = record.getInt();
+        byte[] bytes = new byte[record.getShort()];
+        record.get(bytes);
+        addLemma(id, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private void replayPage(ByteBuffer record) {
+        int pageId = record.getInt();
+        int count = record.getInt();
+        int[] ids = new int[count];
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = record.getInt();
+            ranks[i] = record.getInt();
+        }
+        putPage(pageId, new PagePostings(ids, ranks));
+    }
+
+    private LemmaEntity addLemma(int id, String name) {
+        LemmaEntity lemma = new LemmaEntity();
+        lemma.setId(id);
+        lemma.setSiteId(siteId);
+        lemma.setLemma(name);
+        lemmasByName.put(name, lemma);
+        lemmasById.put(id, lemma);
+        return lemma;
+    }
+
+    // Метод замены прямого индекса страницы с пересчётом частот лемм
+    private void putPage(int pageId, PagePostings page) {
+        PagePostings old = pages.get(pageId);
+        if (old != null) {
+            for (int i = 0; i < old.lemmaIds.length; i++) {
+                LemmaEntity lemma = lemmasById.get(old.lemmaIds[i]);
+                if (lemma != null) {
+                    lemma.setFrequency(lemma.getFrequency() - 1);
+                    lemma.setTermFrequency(lemma.getTermFrequency() - old.ranks[i]);
+                }
+                if (Arrays.binarySearch(page.lemmaIds, old.lemmaIds[i]) < 0) {
+                    markStale(old.lemmaIds[i]);
+                }
+            }
+        }
+        for (int i = 0; i < page.lemmaIds.length; i++) {
+            LemmaEntity lemma = lemmasById.get(page.lemmaIds[i]);
+            if (lemma != null) {
+                lemma.setFrequency(lemma.getFrequency() + 1);
+                lemma.setTermFrequency(lemma.getTermFrequency() + page.ranks[i]);
+            }
+            if (old == null || Arrays.binarySearch(old.lemmaIds, page.lemmaIds[i]) < 0) {
+                pagesByLemma.computeIfAbsent(page.lemmaIds[i], id -> new PageList()).add(pageId);
+            }
+        }
+        if (page.lemmaIds.length == 0) {
+            pages.remove(pageId);
+        } else {
+            pages.put(pageId, page);
+        }
+    }
+
+    private void markStale(int lemmaId) {
+        PageList list = pagesByLemma.get(lemmaId);
+        if (list != null && ++list.stale * 2 > list.size) {
+            Set<Integer> seen = new HashSet<>();
+            list.retain(pageId -> rankOf(pageId, lemmaId) > 0 && seen.add(pageId));
+        }
+    }
+
+    private int rankOf(int pageId, int lemmaId) {
+        PagePostings page = pages.get(pageId);
+        if (page == null) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(page.lemmaIds, lemmaId);
+        return index >= 0 ? page.ranks[index] : 0;
+    }
+
+    private static ByteBuffer encodeLemma(LemmaEntity lemma) {
+        byte[] bytes = lemma.getLemma().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Short.BYTES + bytes.length);
+        buffer.putInt(lemma.getId()).putShort((short) bytes.length).put(bytes).flip();
+        return buffer;
+    }
+
+    private static LemmaEntity copy(LemmaEntity lemma) {
+        LemmaEntity copy = new LemmaEntity();
+        copy.setId(lemma.getId());
+        copy.setSiteId(lemma.getSiteId());
+        copy.setLemma(lemma.getLemma());
+        copy.setFrequency(lemma.getFrequency());
+        copy.setTermFrequency(lemma.getTermFrequency());
+        return copy;
+    }
+
+    // Прямой индекс страницы: id лемм по возрастанию и их ранги
+    private static final class PagePostings {
+        private final int[] lemmaIds;
+        private final int[] ranks;
+
+        private PagePostings(int[] lemmaIds, int[] ranks) {
+            this.lemmaIds = lemmaIds;
+            this.ranks = ranks;
+        }
+
+        private int payloadSize() {
+            return Integer.BYTES * 2 + lemmaIds.length * Integer.BYTES * 2;
+        }
+
+        private ByteBuffer encode(int pageId) {
+            ByteBuffer buffer = ByteBuffer.allocate(payloadSize());
+            buffer.putInt(pageId).putInt(lemmaIds.length);
+            for (int i = 0; i < lemmaIds.length; i++) {
+                buffer.putInt(lemmaIds[i]).putInt(ranks[i]);
+            }
+            return buffer.flip();
+        }
+    }
+
+    // Список страниц леммы без упаковки в Integer; stale - число записей страниц, потерявших лемму
+    private static final class PageList {
+        private int[] pageIds = new int[4];
+        private int size;
+        private int stale;
+
+        private void add(int pageId) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+            }
+            pageIds[size++] = pageId;
+        }
+
+        private void retain(IntPredicate keep) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (keep.test(pageIds[i])) {
+                    pageIds[kept++] = pageIds[i];
+                }
+            }
+            size = kept;
+            stale = 0;
+        }
+    }
+}
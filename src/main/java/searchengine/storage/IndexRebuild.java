@@ -0,0 +1,19 @@
+package searchengine.storage;
+
+import java.util.Map;
+
+/**
+ * Построение нового индекса рядом с действующим. Поиск до commit() читает прежний индекс,
+ * commit() заменяет его новым целиком, abort() удаляет недостроенный.
+ */
+public interface IndexRebuild {
+    // Метод добавления лемм страницы; вызывается из нескольких потоков, каждая страница - один раз
+    void addPage(int siteId, int pageId, Map<String, Integer> lemmas);
+
+    // Метод добавления всех постингов леммы сайта; страница не должна встречаться в лемме дважды
+    void addPostings(int siteId, String lemma, int[] pageIds, int[] ranks);
+
+    void commit();
+
+    void abort();
+}
@@ -0,0 +1,43 @@
+package searchengine.storage;
+
+import searchengine.dto.suggest.LemmaWeightDTO;
+import searchengine.index.PageDelta;
+import searchengine.index.PostingConsumer;
+import searchengine.model.LemmaEntity;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранилище данных индекса: словарь лемм сайтов и постинги (страница, ранг) по леммам.
+ * Реализация выбирается параметром storage-settings.engine: jpa - таблицы lemma и index_search,
+ * file - встроенное файловое хранилище без обращений к БД. Сайты и страницы остаются в БД.
+ */
+public interface IndexStorage {
+    // Метод применения пачки дельт страниц: всё или ничего; дельта заменяет индекс страницы целиком
+    List<AppliedPage> applyPages(List<PageDelta> deltas);
+
+    // Леммы по написанию; siteId == null - во всех сайтах
+    List<LemmaEntity> findLemmas(String lemma, Integer siteId);
+
+    void forEachPosting(LemmaEntity lemma, PostingConsumer consumer);
+
+    // Постинги сайта {lemmaId, pageId, rank} по возрастанию lemmaId и pageId
+    void streamPostings(int siteId, PostingStreamHandler handler) throws IOException;
+
+    List<LemmaWeightDTO> findLemmaWeights(int siteId);
+
+    // Написание лемм сайта по id, для разбора постингов из streamPostings
+    Map<Integer, String> findLemmaNames(int siteId);
+
+    int countLemmas(int siteId);
+
+    // Методы очистки удаляемого поколения сайта по частям
+    void deletePostings(int siteId, List<Integer> pageIds);
+
+    int deleteLemmas(int siteId, int limit);
+
+    // Метод начала полного перестроения индекса живых сайтов из сохранённых страниц
+    IndexRebuild beginRebuild();
+}
@@ -0,0 +1,203 @@
+package searchengine.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Перестроение таблиц lemma и index_search. Новые данные пишутся в lemma_rebuild и index_search_rebuild
+ * без вторичных индексов и внешних ключей многострочными insert, id лемм назначаются в памяти.
+ * При фиксации из новых таблиц удаляются строки без родителя, строятся индексы, таблицы подменяются
+ * одним RENAME TABLE, прежние удаляются, а внешние ключи добавляются заново с именами из миграций.
+ * Структура таблиц повторяет миграции V1-V3.
+ */
+@Slf4j
+class JpaIndexRebuild implements IndexRebuild {
+    private static final int INSERT_ROWS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, Map<String, LemmaCounter>> lemmasBySite = new HashMap<>();
+    private int lastLemmaId;
+    private int[] postings = new int[INSERT_ROWS * 3];
+    private int postingCount;
+
+    JpaIndexRebuild(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Остатки прерванного перестроения
+        dropTables("index_search_old", "lemma_old", "index_search_rebuild", "lemma_rebuild");
+        jdbcTemplate.execute("CREATE TABLE lemma_rebuild (" +
+                "id INT NOT NULL AUTO_INCREMENT, site_id INT NOT NULL, lemma VARCHAR(255) NOT NULL, " +
+                "frequency INT NOT NULL, term_frequency INT NOT NULL, PRIMARY KEY (id)) ENGINE = InnoDB");
+        jdbcTemplate.execute("CREATE TABLE index_search_rebuild (" +
+                "id INT NOT NULL AUTO_INCREMENT, page_id INT NOT NULL, lemma_id INT NOT NULL, " +
+                "lemma_rank INT NOT NULL, PRIMARY KEY (id)) ENGINE = InnoDB");
+    }
+
+    // Под блокировкой только назначение id лемм и копирование в буфер; заполненные буферы пишутся вне её
+    @Override
+    public void addPage(int siteId, int pageId, Map<String, Integer> lemmas) {
+        List<int[]> filled = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
+                addPosting(counter(siteId, entry.getKey()), pageId, entry.getValue(), filled);
+            }
+        }
+        filled.forEach(rows -> insertPostings(rows, INSERT_ROWS));
+    }
+
+    @Override
+    public void addPostings(int siteId, String lemma, int[] pageIds, int[] ranks) {
+        List<int[]> filled = new ArrayList<>();
+        synchronized (this) {
+            LemmaCounter counter = counter(siteId, lemma);
+            for (int i = 0; i < pageIds.length; i++) {
+                addPosting(counter, pageIds[i], ranks[i], filled);
+            }
+        }
+        filled.forEach(rows -> insertPostings(rows, INSERT_ROWS));
+    }
+
+    private LemmaCounter counter(int siteId, String lemma) {
+        return lemmasBySite.computeIfAbsent(siteId, id -> new HashMap<>())
+                .computeIfAbsent(lemma, key -> new LemmaCounter(++lastLemmaId));
+    }
+
+    private void addPosting(LemmaCounter lemma, int pageId, int rank, List<int[]> filled) {
+        lemma.frequency++;
+        lemma.termFrequency += rank;
+        int offset = postingCount++ * 3;
+        postings[offset] = pageId;
+        postings[offset + 1] = lemma.id;
+        postings[offset + 2] = rank;
+        if (postingCount == INSERT_ROWS) {
+            filled.add(postings);
+            postings = new int[INSERT_ROWS * 3];
+            postingCount = 0;
+        }
+    }
+
+    @Override
+    public void commit() {
+        int[] rows;
+        int count;
+        synchronized (this) {
+            rows = postings;
+            count = postingCount;
+            postingCount = 0;
+        }
+        if (count > 0) {
+            insertPostings(rows, count);
+        }
+        insertLemmas();
+        deleteOrphans();
+        long start = System.currentTimeMillis();
+        jdbcTemplate.execute("ALTER TABLE lemma_rebuild ADD UNIQUE KEY uk_lemma_site (lemma, site_id), " +
+                "ADD INDEX idx_lemma_site_lemma_freq (site_id, lemma, frequency)");
+        jdbcTemplate.execute("ALTER TABLE index_search_rebuild ADD INDEX idx_index_lemma_page_rank (lemma_id, page_id, lemma_rank), " +
+                "ADD INDEX idx_index_page_lemma (page_id, lemma_id)");
+        log.info("Индексы новых таблиц построены за {} мс", System.currentTimeMillis() - start);
+        jdbcTemplate.execute("RENAME TABLE lemma TO lemma_old, lemma_rebuild TO lemma, " +
+                "index_search TO index_search_old, index_search_rebuild TO index_search");
+        dropTables("index_search_old", "lemma_old");
+        addForeignKeys();
+    }
+
+    @Override
+    public void abort() {
+        dropTables("index_search_rebuild", "lemma_rebuild");
+    }
+
+    // Числа подставляются в текст запроса: без параметров запрос короче и не упирается в их лимит
+    private void insertPostings(int[] rows, int count) {
+        StringBuilder sql = new StringBuilder(80 + count * 24)
+                .append("INSERT INTO index_search_rebuild (page_id, lemma_id, lemma_rank) VALUES ");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "(" : ",(").append(rows[i * 3]).append(',')
+                    .append(rows[i * 3 + 1]).append(',').append(rows[i * 3 + 2]).append(')');
+        }
+        jdbcTemplate.update(sql.toString());
+    }
+
+    private void insertLemmas() {
+        List<Object[]> rows = new ArrayList<>(INSERT_ROWS);
+        for (Map.Entry<Integer, Map<String, LemmaCounter>> site : lemmasBySite.entrySet()) {
+            for (Map.Entry<String, LemmaCounter> entry : site.getValue().entrySet()) {
+                LemmaCounter lemma = entry.getValue();
+                rows.add(new Object[]{lemma.id, site.getKey(), entry.getKey(), lemma.frequency, lemma.termFrequency});
+                if (rows.size() == INSERT_ROWS) {
+                    insertLemmaRows(rows);
+                    rows.clear();
+                }
+            }
+        }
+        if (!rows.isEmpty()) {
+            insertLemmaRows(rows);
+        }
+    }
+
+    private void insertLemmaRows(List<Object[]> rows) {
+        String sql = "INSERT INTO lemma_rebuild (id, site_id, lemma, frequency, term_frequency) VALUES " +
+                String.join(",", Collections.nCopies(rows.size(), "(?,?,?,?,?)"));
+        jdbcTemplate.update(sql, rows.stream().flatMap(Arrays::stream).toArray());
+    }
+
+    // Страница или сайт могли быть удалены, пока шло чтение: их постинги и леммы удаляются до подмены таблиц
+    private void deleteOrphans() {
+        int postings = jdbcTemplate.update("DELETE i FROM index_search_rebuild i " +
+                "LEFT JOIN page p ON p.id = i.page_id WHERE p.id IS NULL");
+        int lemmas = jdbcTemplate.update("DELETE l FROM lemma_rebuild l " +
+                "LEFT JOIN site s ON s.id = l.site_id WHERE s.id IS NULL");
+        if (lemmas > 0) {
+            postings += jdbcTemplate.update("DELETE i FROM index_search_rebuild i " +
+                    "LEFT JOIN lemma_rebuild l ON l.id = i.lemma_id WHERE l.id IS NULL");
+        }
+        if (postings + lemmas > 0) {
+            log.info("Из нового индекса удалены строки удалённых страниц и сайтов: постингов {}, лемм {}", postings, lemmas);
+        }
+    }
+
+    // Строки без родителя удалены в deleteOrphans(), а очистка поколений на время перестроения остановлена,
+    // поэтому проверка ключей отключается на время ALTER и он не копирует таблицу; настройка действует
+    // только в сессии, и ALTER выполняются на том же соединении
+    private void addForeignKeys() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET foreign_key_checks = 0");
+                try {
+                    statement.execute("ALTER TABLE lemma ADD CONSTRAINT fk_lemma_site " +
+                            "FOREIGN KEY (site_id) REFERENCES site (id) ON DELETE CASCADE");
+                    statement.execute("ALTER TABLE index_search " +
+                            "ADD CONSTRAINT fk_index_page FOREIGN KEY (page_id) REFERENCES page (id) ON DELETE CASCADE, " +
+                            "ADD CONSTRAINT fk_index_lemma FOREIGN KEY (lemma_id) REFERENCES lemma (id) ON DELETE CASCADE");
+                } finally {
+                    statement.execute("SET foreign_key_checks = 1");
+                }
+            }
+            return null;
+        });
+    }
+
+    private void dropTables(String... tables) {
+        for (String table : tables) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    private static final class LemmaCounter {
+        private final int id;
+        private int frequency;
+        private int termFrequency;
+
+        private LemmaCounter(int id) {
+            this.id = id;
+        }
+    }
+}
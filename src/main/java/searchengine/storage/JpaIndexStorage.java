@@ -0,0 +1,159 @@
+package searchengine.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.dto.suggest.LemmaWeightDTO;
+import searchengine.index.PageDelta;
+import searchengine.index.PostingConsumer;
+import searchengine.model.IndexSearchEntity;
+import searchengine.model.LemmaEntity;
+import searchengine.repositories.IndexSearchRepository;
+import searchengine.repositories.LemmaRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище индекса в таблицах lemma и index_search через JPA.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "storage-settings", name = "engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaIndexStorage implements IndexStorage {
+    private final LemmaRepository lemmaRepository;
+    private final IndexSearchRepository indexSearchRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Одна транзакция на пачку; кэш лемм общий для страниц пачки
+    @Override
+    public List<AppliedPage> applyPages(List<PageDelta> deltas) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Map<String, LemmaEntity> lemmaCache = new HashMap<>();
+            List<AppliedPage> applied = new ArrayList<>(deltas.size());
+            deltas.forEach(delta -> applied.add(applyPage(delta, lemmaCache)));
+            return applied;
+        });
+    }
+
+    private AppliedPage applyPage(PageDelta delta, Map<String, LemmaEntity> lemmaCache) {
+        List<IndexSearchEntity> oldIndexes = indexSearchRepository.findAllByPageId(delta.getPageId());
+        for (IndexSearchEntity index : oldIndexes) {
+            lemmaRepository.findById(index.getLemmaId())
+                    .map(lemma -> lemmaCache.computeIfAbsent(cacheKey(lemma.getSiteId(), lemma.getLemma()), key -> lemma))
+                    .ifPresent(lemma -> {
+                        lemma.setFrequency(lemma.getFrequency() - 1);
+                        lemma.setTermFrequency(lemma.getTermFrequency() - index.getLemmaCount());
+                    });
+        }
+        if (!oldIndexes.isEmpty()) {
+            indexSearchRepository.deleteAllByPageId(delta.getPageId());
+        }
+
+        Map<Integer, Integer> lemmaRanks = new HashMap<>();
+        int[] newLemmas = new int[1];
+        delta.getLemmas().forEach((lemma, count) -> {
+            LemmaEntity lemmaEntity = lemmaCache.computeIfAbsent(cacheKey(delta.getSiteId(), lemma),
+                    key -> findOrCreateLemma(delta.getSiteId(), lemma, newLemmas));
+            lemmaEntity.setFrequency(lemmaEntity.getFrequency() + 1);
+            lemmaEntity.setTermFrequency(lemmaEntity.getTermFrequency() + count);
+            IndexSearchEntity index = new IndexSearchEntity();
+            index.setPageId(delta.getPageId());
+            index.setLemmaId(lemmaEntity.getId());
+            index.setLemmaCount(count);
+            indexSearchRepository.save(index);
+            lemmaRanks.put(lemmaEntity.getId(), count);
+        });
+        return new AppliedPage(delta, lemmaRanks, newLemmas[0]);
+    }
+
+    private LemmaEntity findOrCreateLemma(int siteId, String lemma, int[] newLemmas) {
+        LemmaEntity existLemmaInDBEntity = lemmaRepository.lemmaExist(lemma, siteId);
+        if (existLemmaInDBEntity != null) {
+            return existLemmaInDBEntity;
+        }
+        LemmaEntity newLemmaToDBEntity = new LemmaEntity();
+        newLemmaToDBEntity.setSiteId(siteId);
+        newLemmaToDBEntity.setLemma(lemma);
+        newLemmaToDBEntity.setFrequency(0);
+        newLemmaToDBEntity.setTermFrequency(0);
+        newLemmas[0]++;
+        return lemmaRepository.save(newLemmaToDBEntity);
+    }
+
+    @Override
+    public List<LemmaEntity> findLemmas(String lemma, Integer siteId) {
+        return lemmaRepository.findLemmasByLemmaAndSiteId(lemma, siteId);
+    }
+
+    @Override
+    public void forEachPosting(LemmaEntity lemma, PostingConsumer consumer) {
+        indexSearchRepository.findPostingsByLemma(lemma.getId())
+                .forEach(row -> consumer.accept(((Number) row[0]).intValue(), ((Number) row[1]).intValue()));
+    }
+
+    // Потоковое чтение index_search требует открытой транзакции на всё время обработки
+    @Override
+    public void streamPostings(int siteId, PostingStreamHandler handler) throws IOException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = indexSearchRepository.streamPostingsBySiteId(siteId)) {
+                    handler.accept(rows.map(row -> new int[]{
+                            ((Number) row[0]).intValue(), ((Number) row[1]).intValue(), ((Number) row[2]).intValue()}));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    @Override
+    public List<LemmaWeightDTO> findLemmaWeights(int siteId) {
+        return lemmaRepository.findLemmaWeightsBySiteId(siteId);
+    }
+
+    @Override
+    public Map<Integer, String> findLemmaNames(int siteId) {
+        Map<Integer, String> names = new HashMap<>();
+        lemmaRepository.findLemmaNamesBySiteId(siteId)
+                .forEach(row -> names.put(((Number) row[0]).intValue(), (String) row[1]));
+        return names;
+    }
+
+    @Override
+    public int countLemmas(int siteId) {
+        return lemmaRepository.findCountRecordBySiteId(siteId);
+    }
+
+    @Override
+    public void deletePostings(int siteId, List<Integer> pageIds) {
+        indexSearchRepository.deleteAllByPageIds(pageIds);
+    }
+
+    @Override
+    public int deleteLemmas(int siteId, int limit) {
+        return lemmaRepository.deleteChunkBySiteId(siteId, limit);
+    }
+
+    @Override
+    public IndexRebuild beginRebuild() {
+        return new JpaIndexRebuild(jdbcTemplate);
+    }
+
+    private static String cacheKey(int siteId, String lemma) {
+        return siteId + ":" + lemma;
+    }
+}
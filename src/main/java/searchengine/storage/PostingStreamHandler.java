@@ -0,0 +1,9 @@
+package searchengine.storage;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+
+@FunctionalInterface
+public interface PostingStreamHandler {
+    void accept(Stream<int[]> sortedPostings) throws IOException;
+}
@@ -0,0 +1,145 @@
+package searchengine.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Файл записей, только дописываемый в конец. Запись: длина, данные, CRC32 данных.
+ * При открытии записи передаются обработчику по порядку, хвост после повреждённой записи обрезается.
+ */
+@Slf4j
+class RecordLog implements Closeable {
+    private final Path file;
+    private FileChannel channel;
+
+    private RecordLog(Path file) {
+        this.file = file;
+    }
+
+    static RecordLog open(Path file, Consumer<ByteBuffer> replay) throws IOException {
+        RecordLog recordLog = new RecordLog(file);
+        recordLog.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recordLog.replay(replay);
+        return recordLog;
+    }
+
+    private void replay(Consumer<ByteBuffer> replay) throws IOException {
+        long validEnd = 0;
+        long size = channel.size();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        while (true) {
+            lengthBuffer.clear();
+            if (channel.read(lengthBuffer, validEnd) < Integer.BYTES) {
+                break;
+            }
+            int length = lengthBuffer.flip().getInt();
+            if (length < 0 || validEnd + Integer.BYTES + length + Integer.BYTES > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length + Integer.BYTES);
+            while (record.hasRemaining() && channel.read(record, validEnd + Integer.BYTES + record.position()) > 0) {
+                // чтение до заполнения буфера
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != record.getInt(length)) {
+                break;
+            }
+            replay.accept(ByteBuffer.wrap(record.array(), 0, length));
+            validEnd += Integer.BYTES + length + Integer.BYTES;
+        }
+        if (validEnd < size) {
+            log.warn("Файл {} обрезан после повреждённой записи, позиция {}", file, validEnd);
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+    }
+
+    void append(ByteBuffer payload) throws IOException {
+        ByteBuffer record = frame(payload);
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    // Сброс на диск выполняется один раз на пачку страниц
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    // Метод замены содержимого файла: новые записи пишутся во временный файл и атомарно подменяют старый
+    void rewrite(Iterable<ByteBuffer> payloads) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer payload : payloads) {
+                ByteBuffer record = frame(payload);
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    // Метод отката файла к прежнему размеру: записи, дописанные после него, отбрасываются
+    void truncate(long size) throws IOException {
+        channel.truncate(size);
+        channel.force(false);
+    }
+
+    static int recordSize(int payloadLength) {
+        return Integer.BYTES + payloadLength + Integer.BYTES;
+    }
+
+    // Переименование файла переживает сбой питания только после сброса на диск самого каталога.
+    // На платформах, где каталог нельзя открыть как файл (Windows), сброс пропускается
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException ex) {
+            log.debug("Каталог {} не сброшен на диск: {}", directory, ex.getMessage());
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static ByteBuffer frame(ByteBuffer payload) {
+        int length = payload.remaining();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer record = ByteBuffer.allocate(recordSize(length));
+        record.putInt(length).put(payload).putInt((int) crc.getValue()).flip();
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
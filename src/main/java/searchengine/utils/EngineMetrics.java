@@ -0,0 +1,130 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Метрики обхода, индексации и поиска. Публикуются через actuator в формате Prometheus.
+ * Имена метрик: crawler.*, indexer.*, search.*.
+ */
+@Component
+@RequiredArgsConstructor
+public class EngineMetrics {
+    public static final String STAGE_LEMMATIZE = "lemmatize";
+    public static final String STAGE_POSTINGS = "postings";
+    public static final String STAGE_RANK = "rank";
+    public static final String STAGE_SNIPPET = "snippet";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> frontierByHost = new ConcurrentHashMap<>();
+
+    // Обход сайтов
+
+    public void recordFetch(String siteUrl, long startNanos) {
+        Timer.builder("crawler.fetch")
+                .description("Время загрузки страницы")
+                .tag("host", hostOf(siteUrl))
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(5))
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countResponse(String siteUrl, int code) {
+        Counter.builder("crawler.responses")
+                .description("Ответы сайтов по кодам, включая коды ошибок загрузки")
+                .tags(Tags.of("host", hostOf(siteUrl), "code", String.valueOf(code)))
+                .register(registry)
+                .increment();
+    }
+
+    public void countSkipped(String siteUrl, String reason) {
+        registry.counter("crawler.skipped", "host", hostOf(siteUrl), "reason", reason).increment();
+    }
+
+    // Количество страниц, поставленных в очередь обхода, но ещё не обработанных
+    public AtomicInteger frontier(String siteUrl) {
+        return frontierByHost.computeIfAbsent(hostOf(siteUrl), host ->
+                registry.gauge("crawler.frontier", Tags.of("host", host), new AtomicInteger()));
+    }
+
+    // Текущая допустимая скорость запросов к хосту, запросов в секунду
+    public void hostRate(String host, HostRateLimiter limiter) {
+        Gauge.builder("crawler.host.rate", limiter, HostRateLimiter::getRate)
+                .description("Допустимая скорость запросов к хосту")
+                .tag("host", host)
+                .register(registry);
+    }
+
+    // Индексация
+
+    public void countIndexedPage(int lemmas) {
+        registry.counter("indexer.pages").increment();
+        DistributionSummary.builder("indexer.page.lemmas")
+                .description("Количество лемм на странице")
+                .register(registry)
+                .record(lemmas);
+    }
+
+    public void recordCommitBatch(int pages, long startNanos) {
+        Timer.builder("indexer.commit.batch")
+                .description("Время фиксации пачки страниц в БД")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("indexer.commit.batch.pages")
+                .register(registry)
+                .record(pages);
+    }
+
+    // Поиск
+
+    public void recordSearchStage(String stage, long startNanos) {
+        Timer.builder("search.stage")
+                .description("Время этапа обработки поискового запроса")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countCacheLookup(String cache, boolean hit) {
+        registry.counter("search.cache", "cache", cache, "result", hit ? "hit" : "miss").increment();
+    }
+
+    public void countSearchAdmission(String result) {
+        registry.counter("search.admission", "result", result).increment();
+    }
+
+    public void countPostingsSource(String source) {
+        registry.counter("search.postings.source", "source", source).increment();
+    }
+
+    // Куда направлено чтение поиска и статистики: реплика или основная база, если исправных реплик нет
+    public void countReadRoute(String target) {
+        registry.counter("datasource.read.route", "target", target).increment();
+    }
+
+    private String hostOf(String siteUrl) {
+        try {
+            String host = URI.create(siteUrl).getHost();
+            return host != null ? host : siteUrl;
+        } catch (IllegalArgumentException ex) {
+            return siteUrl;
+        }
+    }
+}
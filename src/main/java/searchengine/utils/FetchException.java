@@ -0,0 +1,75 @@
+package searchengine.utils;
+
+import lombok.Getter;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+
+/**
+ * Ошибка загрузки страницы с кодом, который сохраняется в page.code.
+ * Признаки retryable и throttling определяют, повторять ли запрос и снижать ли скорость обращения к хосту.
+ */
+@Getter
+public class FetchException extends IOException {
+    private final int code;
+    private final boolean retryable;
+    private final boolean throttling;
+    private final long retryAfterMs;
+
+    public FetchException(int code, String message) {
+        this(code, message, null, false, false, 0);
+    }
+
+    private FetchException(int code, String message, Throwable cause, boolean retryable, boolean throttling, long retryAfterMs) {
+        super(message, cause);
+        this.code = code;
+        this.retryable = retryable;
+        this.throttling = throttling;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    // Метод классификации ответа сервера с кодом ошибки
+    public static FetchException ofStatus(int status, long retryAfterMs, String url) {
+        String message = "HTTP " + status + ": " + url;
+        return switch (status) {
+            case 429, 503 -> new FetchException(status, message, null, true, true, retryAfterMs);
+            case 500, 502, 504 -> new FetchException(status, message, null, true, false, retryAfterMs);
+            default -> new FetchException(status, message);
+        };
+    }
+
+    // Метод классификации сетевой ошибки по типу исключения
+    public static FetchException ofNetworkError(IOException ex, String url) {
+        if (ex instanceof FetchException fetchException) {
+            return fetchException;
+        }
+        String message = ex.getClass().getSimpleName() + ": " + url;
+        // HttpClient оборачивает ошибку разрешения имени в ConnectException
+        if (ex instanceof UnknownHostException || hasCause(ex, UnresolvedAddressException.class)) {
+            return new FetchException(401, message, ex, false, false, 0);   // Несуществующий домен
+        }
+        if (ex instanceof SSLException) {
+            return new FetchException(525, message, ex, false, false, 0);
+        }
+        if (ex instanceof HttpTimeoutException) {
+            return new FetchException(408, message, ex, true, true, 0);
+        }
+        if (ex instanceof ConnectException) {
+            return new FetchException(500, message, ex, true, true, 0);    // Соединение отклонено
+        }
+        return new FetchException(-1, message, ex, true, false, 0);       // Обрыв соединения и прочие ошибки ввода-вывода
+    }
+
+    private static boolean hasCause(Throwable ex, Class<? extends Throwable> type) {
+        for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
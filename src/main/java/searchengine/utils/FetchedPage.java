@@ -0,0 +1,14 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jsoup.nodes.Document;
+
+@Getter
+@RequiredArgsConstructor
+public class FetchedPage {
+    private final int code;
+    private final Document document;
+    // Объём тела ответа после распаковки
+    private final long bytes;
+}
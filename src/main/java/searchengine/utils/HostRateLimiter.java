@@ -0,0 +1,82 @@
+package searchengine.utils;
+
+import searchengine.config.FetchSettings;
+
+/**
+ * Адаптивное ограничение скорости запросов к одному хосту: ведро токенов, скорость пополнения
+ * которого растёт линейно на здоровых ответах и падает кратно на 429/503, сетевых ошибках и медленных ответах.
+ * Retry-After приостанавливает все запросы к хосту до указанного времени.
+ */
+public class HostRateLimiter {
+    private final FetchSettings fetchSettings;
+    private double maxRate;
+    private double rate;
+    private double tokens = 1;
+    private long lastRefill = System.currentTimeMillis();
+    private long blockedUntil;
+
+    public HostRateLimiter(FetchSettings fetchSettings) {
+        this.fetchSettings = fetchSettings;
+        this.maxRate = fetchSettings.getMaxRate();
+        this.rate = Math.min(fetchSettings.getInitialRate(), maxRate);
+    }
+
+    // Метод ограничения скорости по Crawl-delay из robots.txt
+    public synchronized void limitByCrawlDelay(long crawlDelayMs) {
+        if (crawlDelayMs > 0) {
+            maxRate = Math.max(fetchSettings.getMinRate(), Math.min(fetchSettings.getMaxRate(), 1000.0 / crawlDelayMs));
+            rate = Math.min(rate, maxRate);
+        }
+    }
+
+    // Ожидание токена - обычный сон без managedBlock: все обработчики пула обхода ждут один хост,
+    // и запасные потоки ForkJoinPool не ускорили бы обход, а лишь множились бы без ограничения
+    public void acquire() throws InterruptedException {
+        long waitMs;
+        while ((waitMs = tryAcquire()) > 0) {
+            Thread.sleep(waitMs);
+        }
+    }
+
+    public synchronized void onResponse(long latencyMs) {
+        if (latencyMs > fetchSettings.getSlowResponseMs()) {
+            decrease();
+        } else {
+            rate = Math.min(maxRate, rate + fetchSettings.getRateIncrease());
+        }
+    }
+
+    public synchronized void onThrottled(long retryAfterMs) {
+        decrease();
+        if (retryAfterMs > 0) {
+            long pause = Math.min(retryAfterMs, fetchSettings.getMaxRetryAfterMs());
+            blockedUntil = Math.max(blockedUntil, System.currentTimeMillis() + pause);
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    // Метод взятия токена: 0 - токен получен, иначе время до появления следующего токена в мс
+    private synchronized long tryAcquire() {
+        long now = System.currentTimeMillis();
+        refill(now);
+        if (now >= blockedUntil && tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, Math.max(blockedUntil - now, (long) Math.ceil((1 - tokens) / rate * 1000)));
+    }
+
+    private void decrease() {
+        rate = Math.max(fetchSettings.getMinRate(), rate * fetchSettings.getRateDecreaseFactor());
+        tokens = Math.min(tokens, 1);
+    }
+
+    private void refill(long now) {
+        double burst = Math.max(1, rate);
+        tokens = Math.min(burst, tokens + (now - lastRefill) / 1000.0 * rate);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,58 @@
+package searchengine.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.FetchSettings;
+
+import javax.annotation.PreDestroy;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * HTTP-клиенты краулера, по одному на хост. Клиент держит пул keep-alive соединений,
+ * поэтому страницы одного сайта загружаются без повторного TCP/TLS-рукопожатия.
+ * Клиенты различаются и тайм-аутом соединения: сайт с собственным тайм-аутом не получает клиента,
+ * созданного раньше с другими настройками. Ограничитель скорости общий для хоста: обход и точечная
+ * переиндексация делят одну квоту. Здесь же живёт сторож, обрывающий слишком долгое чтение тела ответа.
+ */
+@Component
+@RequiredArgsConstructor
+public class HttpClientPool {
+    private final FetchSettings fetchSettings;
+    private final EngineMetrics metrics;
+    private final Map<String, HttpClient> clientsByHost = new ConcurrentHashMap<>();
+    private final Map<String, HostRateLimiter> limitersByHost = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fetch-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void close() {
+        watchdog.shutdownNow();
+    }
+
+    public HttpClient forHost(String host, int connectTimeoutMs) {
+        return clientsByHost.computeIfAbsent(host.toLowerCase() + "|" + connectTimeoutMs, key -> HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    public ScheduledExecutorService watchdog() {
+        return watchdog;
+    }
+
+    public HostRateLimiter rateLimiter(String host) {
+        return limitersByHost.computeIfAbsent(host.toLowerCase(), key -> {
+            HostRateLimiter limiter = new HostRateLimiter(fetchSettings);
+            metrics.hostRate(key, limiter);
+            return limiter;
+        });
+    }
+}
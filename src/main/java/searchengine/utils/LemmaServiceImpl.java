@@ -53,6 +53,19 @@ public class LemmaServiceImpl implements LemmaService {
         return "";
     }
 
+    @Override
+    public boolean isServiceWord(String word) {
+        String preparedWord = word.toLowerCase();
+        if (checkMatchWord(preparedWord)) return false;
+        try {
+            String wordInfo = preparedWord.matches("[a-zA-Z]+") ? englishLuceneMorphology.getMorphInfo(preparedWord).toString() : russianLuceneMorphology.getMorphInfo(preparedWord).toString();
+            return checkWordInfo(wordInfo);
+        } catch (RuntimeException ex) {
+            log.debug(ex.getMessage());
+        }
+        return false;
+    }
+
     private void determineLemma(String word, Map<String, Integer> lemmasInText) {
         try {
             if (checkMatchWord(word)) {
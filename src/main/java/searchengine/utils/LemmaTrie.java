@@ -0,0 +1,254 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Компактное префиксное дерево лемм одного сайта.
+ * Дочерние узлы хранятся в отсортированных массивах символов, поэтому
+ * переход по символу - бинарный поиск, а обход идёт в лексикографическом порядке.
+ * Каждый узел помнит максимальный вес леммы в своём поддереве, что позволяет
+ * выбирать самые популярные дополнения префикса без полного обхода.
+ * Класс не потокобезопасен, синхронизацию обеспечивает вызывающий код.
+ */
+public class LemmaTrie {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    // Порядок похожих лемм: расстояние, затем вес по убыванию, затем написание
+    public static final Comparator<Match> MATCH_ORDER = Comparator.comparingInt(Match::getDistance)
+            .thenComparing(Comparator.comparingLong(Match::getWeight).reversed())
+            .thenComparing(Match::getWord);
+
+    private final Node root = new Node();
+    private int size;
+
+    // Метод добавления леммы; вес прибавляется к уже накопленному весу леммы
+    public boolean add(String word, long weight) {
+        if (word == null || word.isEmpty()) {
+            return false;
+        }
+        Node[] path = new Node[word.length() + 1];
+        Node node = root;
+        path[0] = node;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.addChild(word.charAt(i));
+            path[i + 1] = node;
+        }
+        boolean added = !node.terminal;
+        if (added) {
+            node.terminal = true;
+            size++;
+        }
+        node.weight += weight;
+        for (Node pathNode : path) {
+            pathNode.maxWeight = Math.max(pathNode.maxWeight, node.weight);
+        }
+        return added;
+    }
+
+    public boolean contains(String word) {
+        Node node = find(word);
+        return node != null && node.terminal;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Метод обхода всех лемм с их весами в алфавитном порядке
+    public void forEach(ObjLongConsumer<String> consumer) {
+        forEach(root, new StringBuilder(), consumer);
+    }
+
+    private void forEach(Node node, StringBuilder path, ObjLongConsumer<String> consumer) {
+        if (node.terminal) {
+            consumer.accept(path.toString(), node.weight);
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            path.append(node.keys[i]);
+            forEach(node.children[i], path, consumer);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    // Метод поиска лемм, начинающихся с заданного префикса
+    public List<String> findByPrefix(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        Node node = find(prefix);
+        if (node != null && limit > 0) {
+            collect(node, new StringBuilder(prefix), result, limit);
+        }
+        return result;
+    }
+
+    // Метод выбора самых тяжёлых дополнений префикса: обход узлов в порядке убывания максимального веса,
+    // при равном весе дополнения идут по алфавиту
+    public List<Completion> findTopByPrefix(String prefix, int limit) {
+        List<Completion> result = new ArrayList<>();
+        Node start = find(prefix);
+        if (start == null || limit <= 0) {
+            return result;
+        }
+        // При равном весе - по алфавиту: путь узла - префикс путей всех его потомков, поэтому узел раскрывается раньше
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(Comparator.comparingLong(Candidate::getPriority).reversed()
+                .thenComparing(Candidate::getPath));
+        queue.add(new Candidate(start, prefix, start.maxWeight, false));
+        while (!queue.isEmpty() && result.size() < limit) {
+            Candidate candidate = queue.poll();
+            Node node = candidate.getNode();
+            if (candidate.isComplete()) {
+                result.add(new Completion(candidate.getPath(), node.weight));
+                continue;
+            }
+            if (node.terminal) {
+                queue.add(new Candidate(node, candidate.getPath(), node.weight, true));
+            }
+            for (int i = 0; i < node.keys.length; i++) {
+                Node child = node.children[i];
+                queue.add(new Candidate(child, candidate.getPath() + node.keys[i], child.maxWeight, false));
+            }
+        }
+        return result;
+    }
+
+    // Метод поиска лемм на расстоянии Левенштейна не больше maxEdits, ближайшие первыми
+    public List<String> findSimilar(String word, int maxEdits, int limit) {
+        return findSimilarMatches(word, maxEdits, limit).stream()
+                .map(Match::getWord)
+                .collect(Collectors.toList());
+    }
+
+    // Метод поиска похожих лемм с расстоянием и весом: ближайшие первыми, при равном расстоянии - более тяжёлые.
+    // Перестановка соседних букв считается одной правкой
+    public List<Match> findSimilarMatches(String word, int maxEdits, int limit) {
+        List<Match> matches = new ArrayList<>();
+        int[] firstRow = new int[word.length() + 1];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < root.keys.length; i++) {
+            path.append(root.keys[i]);
+            searchSimilar(root.children[i], root.keys[i], (char) 0, word, null, firstRow, maxEdits, path, matches);
+            path.setLength(0);
+        }
+        return matches.stream()
+                .sorted(MATCH_ORDER)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private void searchSimilar(Node node, char letter, char previousLetter, String word, int[] rowBeforePrevious,
+                               int[] previousRow, int maxEdits, StringBuilder path, List<Match> matches) {
+        int columns = word.length() + 1;
+        int[] currentRow = new int[columns];
+        currentRow[0] = previousRow[0] + 1;
+        int rowMin = currentRow[0];
+        for (int i = 1; i < columns; i++) {
+            int insertCost = currentRow[i - 1] + 1;
+            int deleteCost = previousRow[i] + 1;
+            int replaceCost = previousRow[i - 1] + (word.charAt(i - 1) == letter ? 0 : 1);
+            currentRow[i] = Math.min(Math.min(insertCost, deleteCost), replaceCost);
+            if (rowBeforePrevious != null && i > 1 && letter == word.charAt(i - 2) && previousLetter == word.charAt(i - 1)) {
+                currentRow[i] = Math.min(currentRow[i], rowBeforePrevious[i - 2] + 1);
+            }
+            rowMin = Math.min(rowMin, currentRow[i]);
+        }
+        if (node.terminal && currentRow[columns - 1] <= maxEdits) {
+            matches.add(new Match(path.toString(), currentRow[columns - 1], node.weight));
+        }
+        // Перестановка в следующей строке не дешевле замены в этой, поэтому отсечение по минимуму строки верно
+        if (rowMin > maxEdits) {
+            return;
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            path.append(node.keys[i]);
+            searchSimilar(node.children[i], node.keys[i], letter, word, previousRow, currentRow, maxEdits, path, matches);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    private void collect(Node node, StringBuilder path, List<String> result, int limit) {
+        if (node.terminal) {
+            result.add(path.toString());
+        }
+        for (int i = 0; i < node.keys.length && result.size() < limit; i++) {
+            path.append(node.keys[i]);
+            collect(node.children[i], path, result, limit);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    private Node find(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.child(word.charAt(i));
+        }
+        return node;
+    }
+
+    private static final class Node {
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private boolean terminal;
+        private long weight;
+        private long maxWeight;
+
+        private Node child(char letter) {
+            int position = Arrays.binarySearch(keys, letter);
+            return position >= 0 ? children[position] : null;
+        }
+
+        private Node addChild(char letter) {
+            int position = Arrays.binarySearch(keys, letter);
+            if (position >= 0) {
+                return children[position];
+            }
+            int insertAt = -position - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node node = new Node();
+            newKeys[insertAt] = letter;
+            newChildren[insertAt] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Completion {
+        private final String lemma;
+        private final long weight;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class Candidate {
+        private final Node node;
+        private final String path;
+        private final long priority;
+        private final boolean complete;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Match {
+        private final String word;
+        private final int distance;
+        private final long weight;
+    }
+}
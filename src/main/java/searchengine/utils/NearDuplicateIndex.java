@@ -0,0 +1,54 @@
+package searchengine.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс отпечатков SimHash страниц одного обхода сайта для поиска почти-дубликатов.
+ * Отпечаток делится на maxDistance + 1 полос: если два отпечатка отличаются не более чем
+ * в maxDistance битах, хотя бы одна полоса у них совпадает, поэтому сравнивать нужно
+ * только отпечатки из общих полос, а не все страницы сайта.
+ */
+public class NearDuplicateIndex {
+    private final int maxDistance;
+    private final int bands;
+    private final int bandWidth;
+    private final List<Map<Long, List<Long>>> bandTables = new ArrayList<>();
+
+    public NearDuplicateIndex(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 7));
+        this.bands = this.maxDistance + 1;
+        this.bandWidth = (64 + bands - 1) / bands;
+        for (int i = 0; i < bands; i++) {
+            bandTables.add(new HashMap<>());
+        }
+    }
+
+    // Метод добавления отпечатка; возвращает false, если уже есть почти такой же
+    public synchronized boolean addIfUnique(long fingerprint) {
+        for (int band = 0; band < bands; band++) {
+            List<Long> candidates = bandTables.get(band).get(bandValue(fingerprint, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (long candidate : candidates) {
+                if (SimHash.distance(candidate, fingerprint) <= maxDistance) {
+                    return false;
+                }
+            }
+        }
+        for (int band = 0; band < bands; band++) {
+            bandTables.get(band).computeIfAbsent(bandValue(fingerprint, band), key -> new ArrayList<>(1)).add(fingerprint);
+        }
+        return true;
+    }
+
+    private long bandValue(long fingerprint, int band) {
+        int shift = band * bandWidth;
+        int width = Math.min(bandWidth, 64 - shift);
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        return (fingerprint >>> shift) & mask;
+    }
+}
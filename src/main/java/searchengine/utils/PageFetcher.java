@@ -0,0 +1,268 @@
+package searchengine.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import searchengine.config.FetchSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Загрузчик страниц одного сайта. Тип содержимого и размер проверяются по заголовкам
+ * до чтения тела, тело читается потоком с ограничением размера и распаковкой gzip/deflate.
+ * Время чтения ограничено целиком: тайм-аут запроса действует только до заголовков, поэтому по
+ * истечении срока сторож закрывает поток тела и медленная отдача обрывается.
+ * Запросы проходят через общий для хоста {@link HostRateLimiter}; временные ошибки (429, 5xx, таймауты,
+ * обрывы соединения) повторяются с экспоненциальной задержкой со случайным разбросом и с учётом Retry-After.
+ */
+@Slf4j
+public class PageFetcher {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService watchdog;
+    private final HostRateLimiter rateLimiter;
+    private final FetchSettings fetchSettings;
+    private final String userAgent;
+    private final String referer;
+    private final Duration readTimeout;
+    private final long maxBodyBytes;
+    private final List<String> contentTypes;
+
+    public PageFetcher(HttpClient httpClient, ScheduledExecutorService watchdog, HostRateLimiter rateLimiter,
+                       FetchSettings fetchSettings, String userAgent, String referer, int readTimeoutMs, long maxBodyBytes,
+                       List<String> contentTypes) {
+        this.httpClient = httpClient;
+        this.watchdog = watchdog;
+        this.rateLimiter = rateLimiter;
+        this.fetchSettings = fetchSettings;
+        this.userAgent = userAgent;
+        this.referer = referer;
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.maxBodyBytes = maxBodyBytes;
+        this.contentTypes = contentTypes;
+    }
+
+    public FetchedPage fetch(String url) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            acquire(url);
+            long start = System.nanoTime();
+            try {
+                FetchedPage fetchedPage = fetchOnce(url);
+                rateLimiter.onResponse(elapsedMs(start));
+                return fetchedPage;
+            } catch (IOException ex) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw ex;
+                }
+                FetchException failure = FetchException.ofNetworkError(ex, url);
+                if (failure.isThrottling()) {
+                    rateLimiter.onThrottled(failure.getRetryAfterMs());
+                } else if (!failure.isRetryable()) {
+                    // 404, 415 и подобные ответы - признак здорового сервера
+                    rateLimiter.onResponse(elapsedMs(start));
+                }
+                if (!failure.isRetryable() || attempt >= fetchSettings.getMaxRetries()) {
+                    throw failure;
+                }
+                long delayMs = backoffMs(attempt, failure.getRetryAfterMs());
+                log.debug("Повтор {} через {} мс, код {}: {}", attempt + 1, delayMs, failure.getCode(), url);
+                sleep(delayMs, url);
+            }
+        }
+    }
+
+    private FetchedPage fetchOnce(String url) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .header("Accept", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.1")
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (userAgent != null) {
+            request.header("User-Agent", userAgent);
+        }
+        if (referer != null) {
+            request.header("Referer", referer);
+        }
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Загрузка прервана: " + url, ex);
+        }
+
+        InputStream body = response.body();
+        AtomicBoolean expired = new AtomicBoolean();
+        long remainingMs = Math.max(1, readTimeout.toMillis() - elapsedMs(start));
+        ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+            expired.set(true);
+            closeQuietly(body);
+        }, remainingMs, TimeUnit.MILLISECONDS);
+        try (body) {
+            return readResponse(response, body, url);
+        } catch (IOException ex) {
+            if (expired.get()) {
+                throw new HttpTimeoutException("Страница не загружена за " + readTimeout.toMillis() + " мс: " + url);
+            }
+            throw ex;
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    private FetchedPage readResponse(HttpResponse<InputStream> response, InputStream body, String url) throws IOException {
+        int status = response.statusCode();
+        HttpHeaders headers = response.headers();
+        if (status >= 400) {
+            throw FetchException.ofStatus(status, retryAfterMs(headers), url);
+        }
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        if (!isAccepted(contentType)) {
+            throw new FetchException(415, "Неподдерживаемый тип содержимого " + contentType + ": " + url);
+        }
+        long contentLength = headers.firstValueAsLong("Content-Length").orElse(-1);
+        if (contentLength > maxBodyBytes) {
+            throw new FetchException(413, "Размер страницы " + contentLength + " больше допустимого: " + url);
+        }
+        byte[] bytes = readLimited(decode(body, headers.firstValue("Content-Encoding").orElse("")), url);
+        Document document = Jsoup.parse(new ByteArrayInputStream(bytes), charsetOf(contentType),
+                response.uri().toString());
+        return new FetchedPage(status, document, bytes.length);
+    }
+
+    // Полный разброс: задержка случайна в пределах экспоненты, но не меньше Retry-After
+    private long backoffMs(int attempt, long retryAfterMs) {
+        long ceiling = Math.min(fetchSettings.getBackoffMaxMs(), fetchSettings.getBackoffBaseMs() << Math.min(attempt, 20));
+        long jittered = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.max(jittered, Math.min(retryAfterMs, fetchSettings.getMaxRetryAfterMs()));
+    }
+
+    // Retry-After задаётся в секундах или HTTP-датой
+    private long retryAfterMs(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").orElse("").trim();
+        if (value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException ex) {
+            try {
+                long until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Math.max(0, until - System.currentTimeMillis());
+            } catch (DateTimeParseException dateEx) {
+                return 0;
+            }
+        }
+    }
+
+    private void acquire(String url) throws IOException {
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Загрузка прервана: " + url, ex);
+        }
+    }
+
+    private void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException ignored) {
+            // поток уже закрыт или соединение оборвано
+        }
+    }
+
+    private void sleep(long delayMs, String url) throws IOException {
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Загрузка прервана: " + url, ex);
+        }
+    }
+
+    private long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private boolean isAccepted(String contentType) {
+        if (contentType.isEmpty()) {
+            return true;
+        }
+        String mimeType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return contentTypes.contains(mimeType);
+    }
+
+    private InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(body, BUFFER_SIZE);
+        }
+        if (encoding.equals("deflate")) {
+            return new InflaterInputStream(body);
+        }
+        return body;
+    }
+
+    // Чтение тела с ограничением размера уже распакованных данных
+    private byte[] readLimited(InputStream input, String url) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            total += read;
+            if (total > maxBodyBytes) {
+                throw new FetchException(413, "Размер страницы больше допустимого " + maxBodyBytes + ": " + url);
+            }
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    // Кодировка из заголовка; если её нет, Jsoup определит её по meta-тегу
+    private String charsetOf(String contentType) {
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                String charset = trimmed.substring("charset=".length()).replace("\"", "").trim();
+                return isSupported(charset) ? charset : null;
+            }
+        }
+        return null;
+    }
+
+    private boolean isSupported(String charset) {
+        try {
+            return Charset.isSupported(charset);
+        } catch (IllegalCharsetNameException ex) {
+            return false;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package searchengine.utils;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
@@ -14,13 +13,14 @@ import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 import searchengine.services.LemmaService;
 import searchengine.services.PageIndexerService;
+import searchengine.services.SiteStatisticsService;
 
+import java.io.IOException;
 import java.net.URL;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RecursiveAction;
@@ -38,8 +38,12 @@ public class PageFinder extends RecursiveAction {
     private final String page;
     private final SiteEntity siteDomain;
     private final ConcurrentHashMap<String, PageEntity> resultForkJoinPoolIndexedPages;
+    private final EngineMetrics metrics;
+    private final SiteStatisticsService siteStatisticsService;
+    private final SiteCrawlContext crawlContext;
+    private boolean queued;
 
-    public PageFinder(SiteRepository siteRepository, PageRepository pageRepository, SiteEntity siteDomain, String page, ConcurrentHashMap<String, PageEntity> resultForkJoinPoolIndexedPages, ConnectionSettings connection, LemmaService lemmaService, PageIndexerService pageIndexerService, AtomicBoolean indexingProcessing) {
+    public PageFinder(SiteRepository siteRepository, PageRepository pageRepository, SiteEntity siteDomain, String page, ConcurrentHashMap<String, PageEntity> resultForkJoinPoolIndexedPages, ConnectionSettings connection, LemmaService lemmaService, PageIndexerService pageIndexerService, AtomicBoolean indexingProcessing, EngineMetrics metrics, SiteStatisticsService siteStatisticsService, SiteCrawlContext crawlContext) {
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
         this.page = page;
@@ -49,59 +53,85 @@ public class PageFinder extends RecursiveAction {
         this.siteDomain = siteDomain;
         this.lemmaService = lemmaService;
         this.pageIndexerService = pageIndexerService;
+        this.metrics = metrics;
+        this.siteStatisticsService = siteStatisticsService;
+        this.crawlContext = crawlContext;
+    }
+
+    // Метод учёта задачи в очереди обхода сайта; вызывается до fork()
+    public void enqueue() {
+        queued = true;
+        metrics.frontier(siteDomain.getUrl()).incrementAndGet();
     }
 
     @Override
     protected void compute() {
-        if (resultForkJoinPoolIndexedPages.get(page) != null || !indexingProcessing.get()) {
+        if (queued) {
+            metrics.frontier(siteDomain.getUrl()).decrementAndGet();
+            queued = false;
+        }
+        if (resultForkJoinPoolIndexedPages.get(page) != null || !indexingProcessing.get() || !crawlContext.getRobotsRules().isAllowed(page)) {
             return;
         }
         PageEntity indexingPageEntity = new PageEntity();
         indexingPageEntity.setPath(page);
         indexingPageEntity.setSiteId(siteDomain.getId());
+        String skipReason;
 
         try {
-            org.jsoup.Connection connect = Jsoup.connect(siteDomain.getUrl() + page).userAgent(connection.getUserAgent()).referrer(connection.getReferer());
-            Document doc = connect.timeout(60000).get();
+            long fetchStart = System.nanoTime();
+            FetchedPage fetchedPage = crawlContext.getPageFetcher().fetch(UrlNormalizer.join(siteDomain.getUrl(), page));
+            metrics.recordFetch(siteDomain.getUrl(), fetchStart);
+            Document doc = fetchedPage.getDocument();
 
             indexingPageEntity.setContent(doc.head() + String.valueOf(doc.body()));
             if (indexingPageEntity.getContent() == null || indexingPageEntity.getContent().isEmpty() || indexingPageEntity.getContent().isBlank()) {
                 throw new IllegalArgumentException("Content of site id:" + indexingPageEntity.getSiteId() + ", page:" + indexingPageEntity.getPath() + " is null or empty");
             }
+            // Ссылки приводятся к нормализованному пути сайта, поэтому варианты одного адреса не загружаются повторно
+            String siteHost = new URL(siteDomain.getUrl()).getHost();
             Elements pages = doc.getElementsByTag("a");
             for (org.jsoup.nodes.Element element : pages) {
-                if (!element.attr("href").isEmpty() && element.attr("href").charAt(0) == '/') {
-                    if (resultForkJoinPoolIndexedPages.get(page) != null || !indexingProcessing.get()) {
-                        return;
-                    } else if (resultForkJoinPoolIndexedPages.get(element.attr("href")) == null) {
-                        urlSet.add(element.attr("href"));
-                    }
+                if (resultForkJoinPoolIndexedPages.get(page) != null || !indexingProcessing.get()) {
+                    return;
                 }
+                crawlContext.getUrlNormalizer().toSitePath(element.absUrl("href"), siteHost)
+                        .filter(path -> resultForkJoinPoolIndexedPages.get(path) == null && crawlContext.getRobotsRules().isAllowed(path))
+                        .ifPresent(urlSet::add);
             }
-            indexingPageEntity.setCode(doc.connection().response().statusCode());
+            indexingPageEntity.setCode(fetchedPage.getCode());
+            metrics.countResponse(siteDomain.getUrl(), indexingPageEntity.getCode());
+            siteStatisticsService.pageFetched(siteDomain.getId(), indexingPageEntity.getCode(), fetchedPage.getBytes());
+            skipReason = findSkipReason(doc, siteHost);
         } catch (Exception ex) {
             errorHandling(ex, indexingPageEntity);
+            metrics.countResponse(siteDomain.getUrl(), indexingPageEntity.getCode());
+            siteStatisticsService.pageFetched(siteDomain.getId(), indexingPageEntity.getCode(), 0);
             resultForkJoinPoolIndexedPages.putIfAbsent(indexingPageEntity.getPath(), indexingPageEntity);
-            SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
-            siteEntity.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
-            siteRepository.save(siteEntity);
             pageRepository.save(indexingPageEntity);
-            log.debug("ERROR INDEXATION, siteId:" + indexingPageEntity.getSiteId() + ", path:" + indexingPageEntity.getPath() + ",code:" + indexingPageEntity.getCode() + ", error:" + ex.getMessage());
+            siteStatisticsService.pageAdded(siteDomain.getId());
+            log.debug("ERROR INDEXATION, siteId:{}, path:{}, code:{}, error:{}", indexingPageEntity.getSiteId(), indexingPageEntity.getPath(), indexingPageEntity.getCode(), ex.getMessage());
             return;
         }
         if (resultForkJoinPoolIndexedPages.get(page) != null || !indexingProcessing.get()) {
             return;
         }
         resultForkJoinPoolIndexedPages.putIfAbsent(indexingPageEntity.getPath(), indexingPageEntity);
-        SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
-        siteEntity.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
-        siteRepository.save(siteEntity);
-        pageRepository.save(indexingPageEntity);
-        pageIndexerService.indexHtml(indexingPageEntity.getContent(), indexingPageEntity);
+        if (skipReason == null) {
+            pageRepository.save(indexingPageEntity);
+            siteStatisticsService.pageAdded(siteDomain.getId());
+            pageIndexerService.indexHtml(indexingPageEntity.getContent(), indexingPageEntity);
+        } else {
+            // Дубликат не сохраняется и не лемматизируется, но его ссылки обходятся
+            siteStatisticsService.pageSkipped(siteDomain.getId(), skipReason);
+            metrics.countSkipped(siteDomain.getUrl(), skipReason);
+            log.debug("Страница пропущена ({}), siteId:{}, path:{}", skipReason, siteDomain.getId(), page);
+        }
         List<PageFinder> indexingPagesTasks = new ArrayList<>();
         for (String url : urlSet) {
             if (resultForkJoinPoolIndexedPages.get(url) == null && indexingProcessing.get()) {
-                PageFinder task = new PageFinder(siteRepository, pageRepository, siteEntity, url, resultForkJoinPoolIndexedPages, connection, lemmaService, pageIndexerService, indexingProcessing);
+                PageFinder task = new PageFinder(siteRepository, pageRepository, siteDomain, url, resultForkJoinPoolIndexedPages, connection, lemmaService, pageIndexerService, indexingProcessing, metrics, siteStatisticsService, crawlContext);
+                task.enqueue();
                 task.fork();
                 indexingPagesTasks.add(task);
             }
@@ -114,33 +144,55 @@ public class PageFinder extends RecursiveAction {
         }
     }
 
-    public void refreshPage() {
+    // Метод проверки на неканонический адрес и почти-дубликат; вызывается до сохранения и лемматизации
+    private String findSkipReason(Document doc, String siteHost) {
+        if (crawlContext.isCanonicalLinks()) {
+            Optional<String> canonical = crawlContext.getUrlNormalizer()
+                    .toSitePath(doc.select("link[rel=canonical]").attr("abs:href"), siteHost)
+                    .filter(path -> !path.equals(page) && crawlContext.getRobotsRules().isAllowed(path));
+            if (canonical.isPresent()) {
+                PageEntity canonicalPage = resultForkJoinPoolIndexedPages.get(canonical.get());
+                if (canonicalPage == null) {
+                    urlSet.add(canonical.get());
+                    return SiteCrawlContext.SKIP_CANONICAL;
+                }
+                // Если канонический адрес сам был пропущен, индексируется текущая страница
+                if (canonicalPage.getId() != 0) {
+                    return SiteCrawlContext.SKIP_CANONICAL;
+                }
+            }
+        }
+        return crawlContext.isUniqueText(doc.body().text()) ? null : SiteCrawlContext.SKIP_DUPLICATE;
+    }
+
+    // Метод переиндексации одной страницы; возвращает false, если страницу не удалось загрузить
+    public boolean refreshPage() {
         PageEntity indexingPageEntity = new PageEntity();
         indexingPageEntity.setPath(page);
         indexingPageEntity.setSiteId(siteDomain.getId());
 
         try {
-            URL url = new URL(siteDomain.getUrl() + page);
-            Connection connect = Jsoup.connect(url.toString()).userAgent(connection.getUserAgent()).referrer(connection.getReferer());
-            Document doc = connect.timeout(60000).get();
+            long fetchStart = System.nanoTime();
+            FetchedPage fetchedPage = crawlContext.getPageFetcher().fetch(UrlNormalizer.join(siteDomain.getUrl(), page));
+            metrics.recordFetch(siteDomain.getUrl(), fetchStart);
+            Document doc = fetchedPage.getDocument();
             indexingPageEntity.setContent(cleanHtml(doc.head() + String.valueOf(doc.body())));
-            indexingPageEntity.setCode(doc.connection().response().statusCode());
+            indexingPageEntity.setCode(fetchedPage.getCode());
             if (indexingPageEntity.getContent() == null || indexingPageEntity.getContent().isEmpty() || indexingPageEntity.getContent().isBlank()) {
                 throw new IllegalArgumentException("Content of site id:" + indexingPageEntity.getSiteId() + ", page:" + indexingPageEntity.getPath() + " is null or empty");
             }
+            metrics.countResponse(siteDomain.getUrl(), indexingPageEntity.getCode());
+            siteStatisticsService.pageFetched(siteDomain.getId(), indexingPageEntity.getCode(), fetchedPage.getBytes());
         } catch (Exception ex) {
             errorHandling(ex, indexingPageEntity);
-            SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
-            siteEntity.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
-            siteRepository.save(siteEntity);
+            metrics.countResponse(siteDomain.getUrl(), indexingPageEntity.getCode());
+            siteStatisticsService.pageFetched(siteDomain.getId(), indexingPageEntity.getCode(), 0);
             pageRepository.save(indexingPageEntity);
-            return;
+            siteStatisticsService.pageAdded(siteDomain.getId());
+            return false;
         }
-        SiteEntity siteEntity = siteRepository.findById(siteDomain.getId()).orElseThrow();
-        siteEntity.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
-        siteRepository.save(siteEntity);
 
-        PageEntity pageEntityToRefresh = pageRepository.findPageBySiteIdAndPath(page, siteEntity.getId());
+        PageEntity pageEntityToRefresh = pageRepository.findPageBySiteIdAndPath(page, siteDomain.getId());
         if (pageEntityToRefresh != null) {
             pageEntityToRefresh.setCode(indexingPageEntity.getCode());
             pageEntityToRefresh.setContent(indexingPageEntity.getContent());
@@ -148,36 +200,25 @@ public class PageFinder extends RecursiveAction {
             pageIndexerService.refreshIndex(indexingPageEntity.getContent(), pageEntityToRefresh);
         } else {
             pageRepository.save(indexingPageEntity);
+            siteStatisticsService.pageAdded(siteDomain.getId());
             pageIndexerService.refreshIndex(indexingPageEntity.getContent(), indexingPageEntity);
         }
+        return true;
     }
 
+    // Код ошибки определяет загрузчик по ответу сервера и типу сетевого исключения
     void errorHandling(Exception ex, PageEntity indexingPageEntity) {
-        String message = ex.toString();
         int errorCode;
-        if (message.contains("UnsupportedMimeTypeException")) {
-            errorCode = 415;    // Ссылка на pdf, jpg, png документы
-        } else if (message.contains("Status=401")) {
-            errorCode = 401;    // На несуществующий домен
-        } else if (message.contains("UnknownHostException")) {
-            errorCode = 401;
-        } else if (message.contains("Status=403")) {
-            errorCode = 403;    // Нет доступа, 403 Forbidden
-        } else if (message.contains("Status=404")) {
-            errorCode = 404;    // // Ссылка на pdf-документ, несущ. страница, проигрыватель
-        } else if (message.contains("Status=500")) {
-            errorCode = 401;    // Страница авторизации
-        } else if (message.contains("ConnectException: Connection refused")) {
-            errorCode = 500;    // ERR_CONNECTION_REFUSED, не удаётся открыть страницу
-        } else if (message.contains("SSLHandshakeException")) {
-            errorCode = 525;
-        } else if (message.contains("Status=503")) {
-            errorCode = 503; // Сервер временно не имеет возможности обрабатывать запросы по техническим причинам (обслуживание, перегрузка и прочее).
+        if (ex instanceof FetchException fetchException) {
+            errorCode = fetchException.getCode();
+        } else if (ex instanceof IOException ioException) {
+            errorCode = FetchException.ofNetworkError(ioException, page).getCode();
         } else {
             errorCode = -1;
         }
         indexingPageEntity.setCode(errorCode);
     }
+
     private String cleanHtml(String htmlContent) {
         Document doc = Jsoup.parse(htmlContent);
         // Remove all HTML tags
@@ -1,108 +1,295 @@
 package searchengine.utils;
 
+import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
-import searchengine.model.IndexSearchEntity;
-import searchengine.model.LemmaEntity;
+import searchengine.config.WalSettings;
+import searchengine.index.IndexWriteAheadLog;
+import searchengine.index.PageDelta;
 import searchengine.model.PageEntity;
-import searchengine.repositories.IndexSearchRepository;
-import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.LemmaDictionaryService;
 import searchengine.services.LemmaService;
 import searchengine.services.PageIndexerService;
+import searchengine.services.SegmentIndexService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.storage.AppliedPage;
+import searchengine.storage.IndexStorage;
 
-import javax.transaction.Transactional;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Индексатор страниц. Леммы страницы сначала дописываются в журнал предзаписи,
+ * а затем отдельный поток фиксирует в хранилище индекса сразу пачку страниц.
+ * После перезапуска незафиксированные записи журнала применяются повторно.
+ * Checkpoint журнала не переходит через страницу, которую не удалось применить:
+ * такая страница повторяется отдельно от новых пачек и после перезапуска.
+ * Страница, удалённая из БД, отбрасывается, а после исчерпания попыток исключается
+ * из индекса с записью ошибки в статус сайта.
+ */
 @Component
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PageIndexerServiceImpl implements PageIndexerService {
     private final LemmaService lemmaService;
-    private final LemmaRepository lemmaRepository;
-    private final IndexSearchRepository indexSearchRepository;
+    private final IndexStorage indexStorage;
+    private final LemmaDictionaryService lemmaDictionaryService;
+    private final SegmentIndexService segmentIndexService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final WalSettings walSettings;
+    private final EngineMetrics metrics;
+    private final Object commitMonitor = new Object();
+    // Номер записи в журнале и порядок в очереди назначаются под одной блокировкой
+    private final Object appendLock = new Object();
+    // Непримененные дельты по id страницы; доступ только из потока фиксации
+    private final Map<Integer, FailedDelta> failedDeltas = new HashMap<>();
+    // Исключённые после исчерпания попыток страницы: id страницы -> id сайта
+    private final Map<Integer, Integer> deadPages = new ConcurrentHashMap<>();
+    private BlockingQueue<PageDelta> pendingDeltas;
+    private IndexWriteAheadLog writeAheadLog;
+    private Thread committer;
+    private volatile boolean running;
+    // Номер последней записи, которую поток фиксации уже пытался применить
+    private long processedSequence;
+    // Номер самой ранней дельты, которая ещё ждёт повтора
+    private long oldestFailedSequence = Long.MAX_VALUE;
+    private long nextRetryNanos;
+
+    @PostConstruct
+    public void start() throws IOException {
+        pendingDeltas = new LinkedBlockingQueue<>(walSettings.getQueueCapacity());
+        writeAheadLog = new IndexWriteAheadLog(Paths.get(walSettings.getDirectory()));
+        List<PageDelta> notCommitted = writeAheadLog.open();
+        processedSequence = notCommitted.isEmpty() ? writeAheadLog.lastSequence() : notCommitted.get(0).getSequence() - 1;
+
+        running = true;
+        committer = new Thread(this::commitLoop, "index-committer");
+        committer.start();
+        if (!notCommitted.isEmpty()) {
+            log.info("Повторное применение журнала индексации: страниц {}", notCommitted.size());
+            synchronized (appendLock) {
+                for (PageDelta delta : notCommitted) {
+                    enqueue(delta);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        running = false;
+        committer.join();
+        writeAheadLog.close();
+    }
 
     @Override
     public void indexHtml(String html, PageEntity indexingPageEntity) {
         long start = System.currentTimeMillis();
         try {
             Map<String, Integer> lemmas = lemmaService.getLemmasFromText(html);
-            lemmas.entrySet().parallelStream().forEach(entry -> saveLemma(entry.getKey(), entry.getValue(), indexingPageEntity));
-            log.debug("Индексация страницы " + (System.currentTimeMillis() - start) + " lemmas:" + lemmas.size());
+            synchronized (appendLock) {
+                enqueue(writeAheadLog.append(indexingPageEntity.getSiteId(), indexingPageEntity.getId(), lemmas));
+            }
+            metrics.countIndexedPage(lemmas.size());
+            log.debug("Индексация страницы {} мс, lemmas: {}", System.currentTimeMillis() - start, lemmas.size());
         } catch (IOException e) {
             log.error(String.valueOf(e));
             throw new RuntimeException(e);
         }
     }
 
+    // Дельта страницы заменяет её индекс целиком, поэтому обновление не отличается от первичной индексации
     @Override
     public void refreshIndex(String html, PageEntity refreshPageEntity) {
-        long start = System.currentTimeMillis();
+        indexHtml(html, refreshPageEntity);
+    }
+
+    // Метод ожидания обработки всех страниц, записанных в журнал к моменту вызова, включая повторы неудачных.
+    // Возвращает число исключённых из индекса страниц по id сайта
+    @Override
+    public Map<Integer, Integer> awaitIndexed() {
+        long target;
+        synchronized (appendLock) {
+            target = writeAheadLog.lastSequence();
+        }
+        synchronized (commitMonitor) {
+            while ((processedSequence < target || oldestFailedSequence <= target) && running) {
+                try {
+                    commitMonitor.wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        Map<Integer, Integer> failedPages = new HashMap<>();
+        deadPages.values().forEach(siteId -> failedPages.merge(siteId, 1, Integer::sum));
+        return failedPages;
+    }
+
+    private void enqueue(PageDelta delta) {
         try {
-            Map<String, Integer> lemmas = lemmaService.getLemmasFromText(html);
-            refreshLemma(refreshPageEntity);
-            indexSearchRepository.deleteAllByPageId(refreshPageEntity.getId());
-            lemmas.entrySet().parallelStream().forEach(entry -> saveLemma(entry.getKey(), entry.getValue(), refreshPageEntity));
-            log.debug("Обновление индекса страницы " + (System.currentTimeMillis() - start) + " lemmas:" + lemmas.size());
-        } catch (IOException e) {
-            log.error(String.valueOf(e));
+            pendingDeltas.put(delta);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
     }
 
-    @Transactional
-    private void refreshLemma(PageEntity refreshPageEntity) {
-        List<IndexSearchEntity> indexes = indexSearchRepository.findAllByPageId(refreshPageEntity.getId());
-        indexes.forEach(idx -> {
-            Optional<LemmaEntity> lemmaToRefresh = lemmaRepository.findById(idx.getLemmaId());
-            lemmaToRefresh.ifPresent(lemma -> {
-                lemma.setFrequency(lemma.getFrequency() - idx.getLemmaCount());
-                lemmaRepository.saveAndFlush(lemma);
-            });
-        });
-    }
-
-    @Transactional
-    private void saveLemma(String k, Integer v, PageEntity indexingPageEntity) {
-        LemmaEntity existLemmaInDBEntity = lemmaRepository.lemmaExist(k, indexingPageEntity.getSiteId());
-        if (existLemmaInDBEntity != null) {
-            existLemmaInDBEntity.setFrequency(existLemmaInDBEntity.getFrequency() + v);
-            lemmaRepository.saveAndFlush(existLemmaInDBEntity);
-            createIndex(indexingPageEntity, existLemmaInDBEntity, v);
-        } else {
+    private void commitLoop() {
+        List<PageDelta> batch = new ArrayList<>(walSettings.getBatchSize());
+        while (running || !pendingDeltas.isEmpty()) {
             try {
-                LemmaEntity newLemmaToDBEntity = new LemmaEntity();
-                newLemmaToDBEntity.setSiteId(indexingPageEntity.getSiteId());
-                newLemmaToDBEntity.setLemma(k);
-                newLemmaToDBEntity.setFrequency(v);
-                newLemmaToDBEntity.setSiteEntity(indexingPageEntity.getSiteEntity());
-                lemmaRepository.saveAndFlush(newLemmaToDBEntity);
-                createIndex(indexingPageEntity, newLemmaToDBEntity, v);
-            } catch (DataIntegrityViolationException ex) {
-                log.debug("Ошибка при сохранении леммы, такая лемма уже существует. Вызов повторного сохранения");
-                saveLemma(k, v, indexingPageEntity);
+                PageDelta first = pendingDeltas.poll(walSettings.getCommitIntervalMs(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pendingDeltas.drainTo(batch, walSettings.getBatchSize() - 1);
+                    commitBatch(batch);
+                }
+                retryFailed();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ошибка фиксации пачки индекса", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Метод групповой фиксации: пачка применяется целиком, при ошибке - по одной странице.
+    // Непримененные страницы повторяются отдельно, checkpoint ставится перед самой ранней из них
+    private void commitBatch(List<PageDelta> batch) {
+        long start = System.nanoTime();
+        List<AppliedPage> applied = new ArrayList<>(batch.size());
+        try {
+            writeAheadLog.sync();
+            applied.addAll(indexStorage.applyPages(batch));
+            // Более новая дельта страницы заменяет непримененную старую
+            batch.forEach(delta -> forget(delta.getPageId()));
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Пачка из {} страниц не зафиксирована, повтор по одной странице: {}", batch.size(), ex.getMessage());
+            applied.clear();
+            for (PageDelta delta : batch) {
+                applySingle(delta, 1, applied);
             }
         }
+        applied.forEach(this::publish);
+        advance(batch.get(batch.size() - 1).getSequence());
+        metrics.recordCommitBatch(batch.size(), start);
+        log.debug("Зафиксирована пачка {} страниц за {} мс", batch.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
-    private void createIndex(PageEntity indexingPageEntity, LemmaEntity lemmaEntityInDB, Integer rank) {
-        IndexSearchEntity indexSearchEntityExist = indexSearchRepository.indexSearchExist(indexingPageEntity.getId(), lemmaEntityInDB.getId());
-        if (indexSearchEntityExist != null) {
-            indexSearchEntityExist.setLemmaCount(indexSearchEntityExist.getLemmaCount() + rank);
-            indexSearchRepository.save(indexSearchEntityExist);
-        } else {
-            IndexSearchEntity index = new IndexSearchEntity();
-            index.setPageId(indexingPageEntity.getId());
-            index.setLemmaId(lemmaEntityInDB.getId());
-            index.setLemmaCount(rank);
-            index.setLemmaEntity(lemmaEntityInDB);
-            index.setPageEntity(indexingPageEntity);
-            indexSearchRepository.save(index);
+    // Метод повтора непримененных страниц не чаще раза за интервал фиксации, старые первыми
+    private void retryFailed() {
+        if (failedDeltas.isEmpty() || System.nanoTime() < nextRetryNanos) {
+            return;
         }
+        nextRetryNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(walSettings.getCommitIntervalMs());
+        List<FailedDelta> retries = new ArrayList<>(failedDeltas.values());
+        retries.sort(Comparator.comparingLong(failed -> failed.delta.getSequence()));
+        List<AppliedPage> applied = new ArrayList<>(retries.size());
+        for (FailedDelta failed : retries) {
+            applySingle(failed.delta, failed.attempts + 1, applied);
+        }
+        applied.forEach(this::publish);
+        advance(processedSequence);
+    }
+
+    private void applySingle(PageDelta delta, int attempt, List<AppliedPage> applied) {
+        try {
+            applied.addAll(indexStorage.applyPages(List.of(delta)));
+            forget(delta.getPageId());
+        } catch (RuntimeException ex) {
+            if (!pageExists(delta)) {
+                log.info("Страница {} сайта {} удалена, её дельта отброшена", delta.getPageId(), delta.getSiteId());
+                forget(delta.getPageId());
+            } else if (attempt >= walSettings.getMaxApplyAttempts()) {
+                log.error("Страница {} сайта {} не зафиксирована за {} попыток и исключена из индекса: {}",
+                        delta.getPageId(), delta.getSiteId(), attempt, ex.getMessage());
+                failedDeltas.remove(delta.getPageId());
+                deadPages.put(delta.getPageId(), delta.getSiteId());
+                reportDeadPages(delta.getSiteId());
+            } else {
+                log.warn("Страница {} сайта {} не зафиксирована, попытка {}: {}",
+                        delta.getPageId(), delta.getSiteId(), attempt, ex.getMessage());
+                failedDeltas.put(delta.getPageId(), new FailedDelta(delta, attempt));
+                deadPages.remove(delta.getPageId());
+            }
+        }
+    }
+
+    private void forget(int pageId) {
+        failedDeltas.remove(pageId);
+        deadPages.remove(pageId);
+    }
+
+    // При ошибке самой БД страница считается существующей и повторяется
+    private boolean pageExists(PageDelta delta) {
+        try {
+            return pageRepository.existsById(delta.getPageId()) && siteRepository.existsById(delta.getSiteId());
+        } catch (RuntimeException ex) {
+            return true;
+        }
+    }
+
+    private void reportDeadPages(int siteId) {
+        long count = deadPages.values().stream().filter(id -> id == siteId).count();
+        try {
+            siteRepository.updateLastError(siteId, "Не удалось проиндексировать страниц: " + count);
+        } catch (RuntimeException ex) {
+            log.warn("Не удалось записать ошибку индексации сайта {}: {}", siteId, ex.getMessage());
+        }
+    }
+
+    // Метод переноса checkpoint журнала и отметки обработанных записей
+    private void advance(long lastSequence) {
+        long oldestFailed = failedDeltas.values().stream()
+                .mapToLong(failed -> failed.delta.getSequence())
+                .min()
+                .orElse(Long.MAX_VALUE);
+        try {
+            writeAheadLog.checkpoint(Math.min(oldestFailed - 1, lastSequence));
+        } catch (IOException ex) {
+            log.error("Не удалось записать checkpoint журнала индексации", ex);
+        }
+        synchronized (commitMonitor) {
+            processedSequence = lastSequence;
+            oldestFailedSequence = oldestFailed;
+            commitMonitor.notifyAll();
+        }
+    }
+
+    // После фиксации изменения становятся видны словарю подсказок и сегментам индекса
+    private void publish(AppliedPage appliedPage) {
+        PageDelta delta = appliedPage.getDelta();
+        delta.getLemmas().keySet().forEach(lemma -> lemmaDictionaryService.addLemma(delta.getSiteId(), lemma, 1));
+        segmentIndexService.addPage(delta.getSiteId(), delta.getPageId(), appliedPage.getLemmaRanks());
+        siteStatisticsService.lemmasAdded(delta.getSiteId(), appliedPage.getNewLemmas());
+    }
+
+    @AllArgsConstructor
+    private static class FailedDelta {
+        private final PageDelta delta;
+        private final int attempts;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package searchengine.utils;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Счётчик SQL-запросов текущего потока. Hibernate передаёт сюда каждый подготавливаемый запрос,
+ * считаются только запросы потоков, где счёт включён методом start().
+ */
+public class QueryCounter implements StatementInspector {
+    private static final ThreadLocal<long[]> COUNTER = new ThreadLocal<>();
+
+    public static void start() {
+        COUNTER.set(new long[1]);
+    }
+
+    public static long current() {
+        long[] counter = COUNTER.get();
+        return counter == null ? 0 : counter[0];
+    }
+
+    public static void stop() {
+        COUNTER.remove();
+    }
+
+    @Override
+    public String inspect(String sql) {
+        long[] counter = COUNTER.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,24 @@
+package searchengine.utils;
+
+/**
+ * Признак потока, что его читающие транзакции можно направлять на реплики.
+ * Включается только для поиска и статистики: обход читает свои же свежие записи и работает с основной базой.
+ */
+public final class ReadRouting {
+    private static final ThreadLocal<Boolean> REPLICA_READS = new ThreadLocal<>();
+
+    private ReadRouting() {
+    }
+
+    public static void preferReplica() {
+        REPLICA_READS.set(Boolean.TRUE);
+    }
+
+    public static void reset() {
+        REPLICA_READS.remove();
+    }
+
+    public static boolean isReplicaPreferred() {
+        return REPLICA_READS.get() != null;
+    }
+}
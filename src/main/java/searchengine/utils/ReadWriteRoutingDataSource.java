@@ -0,0 +1,148 @@
+package searchengine.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Источник данных с маршрутизацией чтения на реплики. На реплику уходят только транзакции только для чтения
+ * (или запросы вне транзакции) потоков, где включён ReadRouting; реплики перебираются по кругу.
+ * Отставание реплик проверяется по расписанию: отстающая, остановленная, недоступная реплика
+ * и экземпляр без настроенной репликации (например, адрес основной базы по ошибке) исключаются, а при отсутствии исправных реплик чтение идёт в основную базу.
+ * Используется через LazyConnectionDataSourceProxy, чтобы соединение бралось после установки признака readOnly.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+    private static final long NOT_A_REPLICA = -1;
+
+    private final Map<String, DataSource> replicas;
+    private final long maxLagSeconds;
+    private final EngineMetrics metrics;
+    private final Set<String> healthyReplicas = ConcurrentHashMap.newKeySet();
+    private volatile List<String> healthyOrder = List.of();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagSeconds, EngineMetrics metrics) {
+        this.replicas = new LinkedHashMap<>(replicas);
+        this.maxLagSeconds = maxLagSeconds;
+        this.metrics = metrics;
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        checkReplicas();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!ReadRouting.isReplicaPreferred() || replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        List<String> candidates = healthyOrder;
+        if (candidates.isEmpty()) {
+            metrics.countReadRoute("primary-fallback");
+            return PRIMARY;
+        }
+        metrics.countReadRoute("replica");
+        return candidates.get(Math.floorMod(nextReplica.getAndIncrement(), candidates.size()));
+    }
+
+    // Метод проверки отставания реплик
+    @Scheduled(fixedDelayString = "${datasource-routing.lag-check-interval-ms:2000}")
+    public void checkReplicas() {
+        for (Map.Entry<String, DataSource> replica : replicas.entrySet()) {
+            boolean healthy;
+            String reason;
+            try (Connection connection = replica.getValue().getConnection()) {
+                Long lag = replicationLag(connection);
+                healthy = lag != null && lag != NOT_A_REPLICA && lag <= maxLagSeconds;
+                if (lag == null) {
+                    reason = "репликация остановлена";
+                } else if (lag == NOT_A_REPLICA) {
+                    reason = "репликация не настроена";
+                } else {
+                    reason = "отставание " + lag + " с";
+                }
+            } catch (SQLException ex) {
+                healthy = false;
+                reason = ex.getMessage();
+            }
+            if (healthy ? healthyReplicas.add(replica.getKey()) : healthyReplicas.remove(replica.getKey())) {
+                if (healthy) {
+                    log.info("Реплика {} включена в чтение: {}", replica.getKey(), reason);
+                } else {
+                    log.warn("Реплика {} исключена из чтения: {}", replica.getKey(), reason);
+                }
+            }
+        }
+        List<String> order = new ArrayList<>();
+        replicas.keySet().stream().filter(healthyReplicas::contains).forEach(order::add);
+        healthyOrder = List.copyOf(order);
+    }
+
+    // Отставание в секундах; null - репликация остановлена, NOT_A_REPLICA - экземпляр не является репликой
+    private Long replicationLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet status = replicaStatus(statement)) {
+            if (!status.next()) {
+                return NOT_A_REPLICA;
+            }
+            long lag = status.getLong(lagColumn(status.getMetaData()));
+            return status.wasNull() ? null : lag;
+        }
+    }
+
+    // SHOW REPLICA STATUS появился в MySQL 8.0.22, более старые версии понимают только SHOW SLAVE STATUS
+    private ResultSet replicaStatus(Statement statement) throws SQLException {
+        try {
+            return statement.executeQuery("SHOW REPLICA STATUS");
+        } catch (SQLException ex) {
+            return statement.executeQuery("SHOW SLAVE STATUS");
+        }
+    }
+
+    private String lagColumn(ResultSetMetaData metaData) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (metaData.getColumnLabel(i).equalsIgnoreCase("Seconds_Behind_Source")) {
+                return "Seconds_Behind_Source";
+            }
+        }
+        return "Seconds_Behind_Master";
+    }
+
+    // Метод закрытия пулов реплик при остановке приложения; пул основной базы закрывается отдельно
+    public void close() throws IOException {
+        for (DataSource replica : replicas.values()) {
+            if (replica instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Правила robots.txt для одного сайта. Выбирается группа, где агент совпадает с нашим,
+ * иначе группа "*". Побеждает самое длинное совпавшее правило, при равной длине - Allow.
+ * Поддерживаются шаблоны "*" и "$" в конце правила.
+ */
+public class RobotsRules {
+    private static final RobotsRules ALLOW_ALL = new RobotsRules(Collections.emptyList(), Collections.emptyList(), 0);
+
+    private final List<Rule> rules;
+    @Getter
+    private final List<String> sitemaps;
+    // Задержка между запросами из Crawl-delay, мс
+    @Getter
+    private final long crawlDelayMs;
+
+    private RobotsRules(List<Rule> rules, List<String> sitemaps, long crawlDelayMs) {
+        this.rules = rules;
+        this.sitemaps = sitemaps;
+        this.crawlDelayMs = crawlDelayMs;
+    }
+
+    public static RobotsRules allowAll() {
+        return ALLOW_ALL;
+    }
+
+    // Метод разбора robots.txt; userAgent - строка User-Agent краулера
+    public static RobotsRules parse(String content, String userAgent) {
+        String agentToken = agentToken(userAgent);
+        List<Rule> ownRules = new ArrayList<>();
+        List<Rule> commonRules = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        long ownDelay = -1;
+        long commonDelay = -1;
+        boolean ownGroupFound = false;
+
+        List<String> groupAgents = new ArrayList<>();
+        boolean groupHasRules = false;
+        for (String rawLine : content.split("\r?\n|\r")) {
+            String line = stripComment(rawLine);
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (field) {
+                case "user-agent" -> {
+                    if (groupHasRules) {
+                        groupAgents.clear();
+                        groupHasRules = false;
+                    }
+                    groupAgents.add(value.toLowerCase(Locale.ROOT));
+                }
+                case "allow", "disallow" -> {
+                    groupHasRules = true;
+                    boolean ownGroup = matchesAgent(groupAgents, agentToken);
+                    ownGroupFound |= ownGroup;
+                    // Пустой Disallow разрешает всё и правилом не является
+                    if (!value.isEmpty()) {
+                        Rule rule = new Rule(value, field.equals("allow"));
+                        if (ownGroup) {
+                            ownRules.add(rule);
+                        } else if (groupAgents.contains("*")) {
+                            commonRules.add(rule);
+                        }
+                    }
+                }
+                case "crawl-delay" -> {
+                    groupHasRules = true;
+                    long delay = parseDelay(value);
+                    if (matchesAgent(groupAgents, agentToken)) {
+                        ownDelay = delay;
+                        ownGroupFound = true;
+                    } else if (groupAgents.contains("*")) {
+                        commonDelay = delay;
+                    }
+                }
+                case "sitemap" -> {
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        List<Rule> rules = ownGroupFound ? ownRules : commonRules;
+        long delay = ownGroupFound ? ownDelay : commonDelay;
+        return new RobotsRules(rules, sitemaps, Math.max(delay, 0));
+    }
+
+    // Метод проверки пути (с query-строкой) на разрешение обхода
+    public boolean isAllowed(String path) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String target = path == null || path.isEmpty() ? "/" : path;
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (rule.matches(target) && (best == null || rule.getLength() > best.getLength()
+                    || (rule.getLength() == best.getLength() && rule.isAllow()))) {
+                best = rule;
+            }
+        }
+        return best == null || best.isAllow();
+    }
+
+    private static String agentToken(String userAgent) {
+        if (userAgent == null) {
+            return "";
+        }
+        String token = userAgent.trim().split("[\\s/;]+", 2)[0];
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean matchesAgent(List<String> groupAgents, String agentToken) {
+        return !agentToken.isEmpty() && groupAgents.stream()
+                .anyMatch(agent -> !agent.isEmpty() && !agent.equals("*") && agentToken.startsWith(agent));
+    }
+
+    private static String stripComment(String line) {
+        int hash = line.indexOf('#');
+        return hash >= 0 ? line.substring(0, hash) : line;
+    }
+
+    private static long parseDelay(String value) {
+        try {
+            return (long) (Double.parseDouble(value) * 1000);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class Rule {
+        private final String pattern;
+        private final boolean allow;
+
+        private int getLength() {
+            return pattern.length();
+        }
+
+        private boolean matches(String path) {
+            boolean anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            return matchFrom(body, 0, path, 0, anchored);
+        }
+
+        // Сопоставление с шаблоном, где "*" - любая последовательность символов
+        private static boolean matchFrom(String pattern, int p, String path, int s, boolean anchored) {
+            while (p < pattern.length()) {
+                char c = pattern.charAt(p);
+                if (c == '*') {
+                    while (p < pattern.length() && pattern.charAt(p) == '*') {
+                        p++;
+                    }
+                    if (p == pattern.length()) {
+                        return true;
+                    }
+                    for (int i = s; i <= path.length(); i++) {
+                        if (matchFrom(pattern, p, path, i, anchored)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (s >= path.length() || path.charAt(s) != c) {
+                    return false;
+                }
+                p++;
+                s++;
+            }
+            return !anchored || s == path.length();
+        }
+    }
+}
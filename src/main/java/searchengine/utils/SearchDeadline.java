@@ -0,0 +1,28 @@
+package searchengine.utils;
+
+/**
+ * Срок выполнения поискового запроса, отсчитываемый от его поступления, включая ожидание в очереди.
+ * Проверяется между этапами конвейера поиска.
+ */
+public class SearchDeadline {
+    private final long deadlineNanos;
+
+    private SearchDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static SearchDeadline after(long timeoutMs) {
+        return new SearchDeadline(System.nanoTime() + timeoutMs * 1_000_000);
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    // Метод проверки срока между этапами: после истечения продолжать этап бессмысленно
+    public void check(String stage) {
+        if (isExpired()) {
+            throw new SearchDeadlineException(stage);
+        }
+    }
+}
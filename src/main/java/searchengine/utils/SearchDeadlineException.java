@@ -0,0 +1,13 @@
+package searchengine.utils;
+
+import lombok.Getter;
+
+@Getter
+public class SearchDeadlineException extends RuntimeException {
+    private final String stage;
+
+    public SearchDeadlineException(String stage) {
+        super("Истёк срок выполнения поиска на этапе " + stage);
+        this.stage = stage;
+    }
+}
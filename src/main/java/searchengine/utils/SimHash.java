@@ -0,0 +1,65 @@
+package searchengine.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 64-битный SimHash текста по шинглам из нескольких слов.
+ * У похожих текстов отпечатки отличаются в небольшом числе бит.
+ */
+public final class SimHash {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    // Метод расчёта отпечатка; возвращает 0, если слов меньше размера шингла
+    public static long of(String text, int shingleSize) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        if (words.size() < shingleSize) {
+            return 0;
+        }
+        int[] weights = new int[64];
+        StringBuilder shingle = new StringBuilder();
+        for (int i = 0; i + shingleSize <= words.size(); i++) {
+            shingle.setLength(0);
+            for (int j = i; j < i + shingleSize; j++) {
+                shingle.append(words.get(j)).append(' ');
+            }
+            long hash = fnv1a(shingle);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    private static long fnv1a(CharSequence value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,143 @@
+package searchengine.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики сайта, которые ведёт конвейер индексации: страницы, леммы, ошибки по кодам и объём загруженных данных.
+ * Статистика читает их без запросов к таблицам page и lemma.
+ */
+public class SiteCounters {
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder lemmas = new LongAdder();
+    private final LongAdder bytesFetched = new LongAdder();
+    private final Map<Integer, LongAdder> errorsByCode = new ConcurrentHashMap<>();
+    // Страницы, загруженные, но не сохранённые: дубликаты и неканонические адреса. В БД не сохраняются
+    private final Map<String, LongAdder> skippedByReason = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    // Время последней загруженной страницы; в БД пишется периодически, а не на каждую страницу
+    private final AtomicLong lastActivity = new AtomicLong();
+    private final AtomicLong persistedActivity = new AtomicLong();
+
+    public void addPage() {
+        pages.increment();
+        dirty.set(true);
+    }
+
+    public void addFetch(int code, long bytes) {
+        lastActivity.set(System.currentTimeMillis());
+        bytesFetched.add(bytes);
+        if (isError(code)) {
+            errorsByCode.computeIfAbsent(code, key -> new LongAdder()).increment();
+        }
+        dirty.set(true);
+    }
+
+    public void addLemmas(int count) {
+        if (count > 0) {
+            lemmas.add(count);
+            dirty.set(true);
+        }
+    }
+
+    public void resetLemmas(long count) {
+        lemmas.reset();
+        lemmas.add(count);
+        dirty.set(true);
+    }
+
+    public void addSkipped(String reason) {
+        skippedByReason.computeIfAbsent(reason, key -> new LongAdder()).increment();
+    }
+
+    public Map<String, Long> getSkippedByReason() {
+        Map<String, Long> result = new TreeMap<>();
+        skippedByReason.forEach((reason, count) -> result.put(reason, count.sum()));
+        return result;
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public long getLemmas() {
+        return lemmas.sum();
+    }
+
+    public long getBytesFetched() {
+        return bytesFetched.sum();
+    }
+
+    public long getErrors() {
+        return errorsByCode.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public Map<Integer, Long> getErrorsByCode() {
+        Map<Integer, Long> result = new TreeMap<>();
+        errorsByCode.forEach((code, count) -> result.put(code, count.sum()));
+        return result;
+    }
+
+    public long getLastActivity() {
+        return lastActivity.get();
+    }
+
+    // Метод возвращает время активности, ещё не сохранённое в БД, или 0
+    public long takeActivity() {
+        long activity = lastActivity.get();
+        return persistedActivity.getAndSet(activity) != activity ? activity : 0;
+    }
+
+    // Метод сброса признака изменений; возвращает true, если счётчики нужно сохранить
+    public boolean takeDirty() {
+        return dirty.getAndSet(false);
+    }
+
+    // Метод восстановления счётчиков из сохранённых в БД значений
+    public void restore(long pageCount, long lemmaCount, long bytes, String errorCodes) {
+        pages.add(pageCount);
+        lemmas.add(lemmaCount);
+        bytesFetched.add(bytes);
+        for (Map.Entry<Integer, Long> entry : parseErrorCodes(errorCodes).entrySet()) {
+            errorsByCode.computeIfAbsent(entry.getKey(), key -> new LongAdder()).add(entry.getValue());
+        }
+    }
+
+    // Ошибки по кодам хранятся в БД строкой вида "404:12,500:3"
+    public String formatErrorCodes() {
+        StringBuilder builder = new StringBuilder();
+        getErrorsByCode().forEach((code, count) -> {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(code).append(':').append(count);
+        });
+        return builder.toString();
+    }
+
+    public static boolean isError(int code) {
+        return code < 200 || code >= 400;
+    }
+
+    private static Map<Integer, Long> parseErrorCodes(String errorCodes) {
+        Map<Integer, Long> result = new TreeMap<>();
+        if (errorCodes == null || errorCodes.isBlank()) {
+            return result;
+        }
+        for (String pair : errorCodes.split(",")) {
+            String[] parts = pair.split(":");
+            if (parts.length == 2) {
+                try {
+                    result.put(Integer.parseInt(parts[0].trim()), Long.parseLong(parts[1].trim()));
+                } catch (NumberFormatException ignored) {
+                    // повреждённая пара пропускается
+                }
+            }
+        }
+        return result;
+    }
+}
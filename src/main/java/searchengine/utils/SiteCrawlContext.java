@@ -0,0 +1,32 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Общее состояние обхода одного сайта, разделяемое задачами PageFinder:
+ * загрузчик страниц, правила robots.txt, нормализация адресов и индекс почти-дубликатов.
+ */
+@Getter
+@RequiredArgsConstructor
+public class SiteCrawlContext {
+    public static final String SKIP_CANONICAL = "canonical";
+    public static final String SKIP_DUPLICATE = "duplicate";
+
+    private final PageFetcher pageFetcher;
+    private final RobotsRules robotsRules;
+    private final UrlNormalizer urlNormalizer;
+    private final boolean canonicalLinks;
+    // null, если поиск почти-дубликатов для сайта выключен
+    private final NearDuplicateIndex nearDuplicates;
+    private final int shingleSize;
+
+    // Метод проверки текста страницы; false - страница почти совпадает с уже обработанной
+    public boolean isUniqueText(String text) {
+        if (nearDuplicates == null) {
+            return true;
+        }
+        long fingerprint = SimHash.of(text, shingleSize);
+        return fingerprint == 0 || nearDuplicates.addIfUnique(fingerprint);
+    }
+}
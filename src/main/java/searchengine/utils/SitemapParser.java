@@ -0,0 +1,109 @@
+package searchengine.utils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Потоковый разбор sitemap.xml и индекса карт сайта через StAX: документ не загружается в память целиком.
+ * Сжатые gzip карты распознаются по сигнатуре потока.
+ */
+public class SitemapParser {
+    private static final XMLInputFactory XML_INPUT_FACTORY = createFactory();
+
+    public interface Handler {
+        // Адрес страницы и время изменения из lastmod, 0 - если не задано
+        void url(String loc, long lastModified);
+
+        // Адрес вложенной карты из индекса карт
+        void sitemap(String loc);
+    }
+
+    public static void parse(InputStream input, Handler handler) throws IOException {
+        InputStream stream = unwrapGzip(input);
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(stream);
+            String loc = null;
+            long lastModified = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "url", "sitemap" -> {
+                            loc = null;
+                            lastModified = 0;
+                        }
+                        case "loc" -> loc = reader.getElementText().trim();
+                        case "lastmod" -> lastModified = parseLastModified(reader.getElementText().trim());
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && loc != null && !loc.isEmpty()) {
+                    if (reader.getLocalName().equals("url")) {
+                        handler.url(loc, lastModified);
+                        loc = null;
+                    } else if (reader.getLocalName().equals("sitemap")) {
+                        handler.sitemap(loc);
+                        loc = null;
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Некорректная карта сайта: " + ex.getMessage(), ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // поток закрывает вызывающий код
+                }
+            }
+        }
+    }
+
+    // Формат даты W3C: от "2024-01-31" до "2024-01-31T10:15:30+03:00"
+    static long parseLastModified(String value) {
+        if (value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            try {
+                return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value)
+                        .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            } catch (DateTimeParseException dateEx) {
+                return 0;
+            }
+        }
+    }
+
+    private static InputStream unwrapGzip(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered);
+        }
+        return buffered;
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
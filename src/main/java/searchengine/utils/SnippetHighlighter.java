@@ -0,0 +1,175 @@
+package searchengine.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.jsoup.nodes.Entities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Подсветка слов запроса и выбор лучшего фрагмента текста страницы для сниппета.
+ * Текст просматривается за один проход: каждое слово сопоставляется с термом запроса через словарь
+ * словоформ, который пополняется лемматизацией только для ещё не встречавшихся форм и общий для всех
+ * страниц одного запроса. Из окон длины snippetLength выбирается окно с наибольшим числом разных термов,
+ * при равенстве - с наибольшим числом совпадений, поэтому размер сниппета не зависит от размера страницы.
+ */
+public class SnippetHighlighter {
+    private static final int NO_TERM = -1;
+
+    private final Map<String, Integer> termsByLemma;
+    private final Function<String, String> lemmatizer;
+    private final int snippetLength;
+    private final Map<String, Integer> termsBySurfaceForm = new HashMap<>();
+
+    // lemmaGroups - термы запроса, каждый терм - набор альтернативных лемм
+    public SnippetHighlighter(List<? extends Iterable<String>> lemmaGroups, Function<String, String> lemmatizer, int snippetLength) {
+        this.termsByLemma = new HashMap<>();
+        for (int term = 0; term < lemmaGroups.size(); term++) {
+            for (String lemma : lemmaGroups.get(term)) {
+                termsByLemma.putIfAbsent(lemma, term);
+            }
+        }
+        this.lemmatizer = lemmatizer;
+        this.snippetLength = Math.max(snippetLength, 20);
+    }
+
+    // Метод построения сниппета; возвращает null, если в тексте нет слов запроса
+    public String snippet(String text) {
+        List<Match> matches = findMatches(text);
+        if (matches.isEmpty()) {
+            return null;
+        }
+        int[] window = bestWindow(matches);
+        int from = matches.get(window[0]).start;
+        int to = matches.get(window[1]).end;
+        int start = Math.max(0, from - (snippetLength - (to - from)) / 2);
+        int end = Math.min(text.length(), Math.max(start + snippetLength, to));
+        start = Math.max(0, Math.min(start, end - snippetLength));
+        start = alignStart(text, start, from);
+        end = alignEnd(text, end, to);
+        return render(text, matches, start, end);
+    }
+
+    private List<Match> findMatches(String text) {
+        List<Match> matches = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetter(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetter(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                int term = termOf(text.substring(start, i).toLowerCase());
+                if (term != NO_TERM) {
+                    matches.add(new Match(start, i, term));
+                }
+            }
+        }
+        return matches;
+    }
+
+    private int termOf(String word) {
+        Integer term = termsBySurfaceForm.get(word);
+        if (term == null) {
+            Integer lemmaTerm = termsByLemma.get(lemmatizer.apply(word));
+            term = lemmaTerm == null ? NO_TERM : lemmaTerm;
+            termsBySurfaceForm.put(word, term);
+        }
+        return term;
+    }
+
+    // Скользящее окно по совпадениям: индексы первого и последнего совпадения лучшего окна
+    private int[] bestWindow(List<Match> matches) {
+        int[] termCounts = new int[termsByLemma.isEmpty() ? 1 : termsByLemma.values().stream().mapToInt(Integer::intValue).max().getAsInt() + 1];
+        int distinct = 0;
+        long bestScore = -1;
+        int[] best = {0, 0};
+        int right = 0;
+        for (int left = 0; left < matches.size(); left++) {
+            while (right < matches.size() && matches.get(right).end - matches.get(left).start <= snippetLength) {
+                if (termCounts[matches.get(right).term]++ == 0) {
+                    distinct++;
+                }
+                right++;
+            }
+            // Совпадение длиннее окна не попадает ни в одно окно и образует окно само
+            if (right == left) {
+                if (termCounts[matches.get(right).term]++ == 0) {
+                    distinct++;
+                }
+                right++;
+            }
+            int hits = right - left;
+            long score = (long) distinct * matches.size() + hits;
+            if (score > bestScore) {
+                bestScore = score;
+                best = new int[]{left, right - 1};
+            }
+            if (--termCounts[matches.get(left).term] == 0) {
+                distinct--;
+            }
+        }
+        return best;
+    }
+
+    // Начало фрагмента переносится на начало слова, но не дальше первого совпадения
+    private int alignStart(String text, int start, int limit) {
+        if (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1))) {
+            return start;
+        }
+        int aligned = start;
+        while (aligned < limit && !Character.isWhitespace(text.charAt(aligned))) {
+            aligned++;
+        }
+        return aligned < limit ? aligned + 1 : limit;
+    }
+
+    private int alignEnd(String text, int end, int limit) {
+        if (end == text.length() || !Character.isLetterOrDigit(text.charAt(end))) {
+            return end;
+        }
+        int aligned = end;
+        while (aligned > limit && !Character.isWhitespace(text.charAt(aligned - 1))) {
+            aligned--;
+        }
+        return aligned > limit ? aligned - 1 : limit;
+    }
+
+    private String render(String text, List<Match> matches, int start, int end) {
+        StringBuilder snippet = new StringBuilder(end - start + 32);
+        if (start > 0) {
+            snippet.append("...");
+        }
+        int position = start;
+        for (Match match : matches) {
+            if (match.start < start) {
+                continue;
+            }
+            if (match.end > end) {
+                break;
+            }
+            snippet.append(Entities.escape(text.substring(position, match.start)))
+                    .append("<b>").append(Entities.escape(text.substring(match.start, match.end))).append("</b>");
+            position = match.end;
+        }
+        snippet.append(Entities.escape(text.substring(position, end)));
+        if (end < text.length()) {
+            snippet.append("...");
+        }
+        return snippet.toString();
+    }
+
+    @RequiredArgsConstructor
+    private static final class Match {
+        private final int start;
+        private final int end;
+        private final int term;
+    }
+}
@@ -0,0 +1,119 @@
+package searchengine.utils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Приведение адресов страниц к единому виду, чтобы "/page", "/page/", "/page?utm_source=x" и "/page#top"
+ * считались одной страницей. Путь очищается от фрагмента, повторных слешей, сегментов "." и ".."
+ * и завершающего слеша; параметры запроса без меток отслеживания сортируются.
+ */
+public class UrlNormalizer {
+    private final boolean dropQuery;
+    private final List<String> ignoredParams;
+
+    // ignoredParams - имена параметров; шаблон "utm_*" отбрасывает все параметры с префиксом
+    public UrlNormalizer(boolean dropQuery, Collection<String> ignoredParams) {
+        this.dropQuery = dropQuery;
+        this.ignoredParams = ignoredParams == null ? List.of() : ignoredParams.stream()
+                .map(param -> param.toLowerCase(Locale.ROOT))
+                .toList();
+    }
+
+    // Метод перевода абсолютного адреса в нормализованный путь сайта; адреса других хостов отбрасываются
+    public Optional<String> toSitePath(String absoluteUrl, String siteHost) {
+        if (absoluteUrl == null || absoluteUrl.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            URL url = new URL(absoluteUrl);
+            if (!url.getProtocol().startsWith("http") || !sameHost(url.getHost(), siteHost)) {
+                return Optional.empty();
+            }
+            String file = url.getQuery() == null ? url.getPath() : url.getPath() + "?" + url.getQuery();
+            return Optional.of(normalize(file));
+        } catch (MalformedURLException ex) {
+            return Optional.empty();
+        }
+    }
+
+    public String normalize(String pathWithQuery) {
+        String value = pathWithQuery == null ? "" : pathWithQuery.trim();
+        int hash = value.indexOf('#');
+        if (hash >= 0) {
+            value = value.substring(0, hash);
+        }
+        int question = value.indexOf('?');
+        String path = question >= 0 ? value.substring(0, question) : value;
+        String query = question >= 0 ? value.substring(question + 1) : "";
+        String normalizedPath = normalizePath(path);
+        String normalizedQuery = dropQuery ? "" : normalizeQuery(query);
+        return normalizedQuery.isEmpty() ? normalizedPath : normalizedPath + "?" + normalizedQuery;
+    }
+
+    // Метод склейки адреса сайта и пути без двойного слеша
+    public static String join(String siteUrl, String path) {
+        if (siteUrl.endsWith("/") && path.startsWith("/")) {
+            return siteUrl + path.substring(1);
+        }
+        return siteUrl + path;
+    }
+
+    public static boolean sameHost(String host, String siteHost) {
+        return stripWww(host).equalsIgnoreCase(stripWww(siteHost));
+    }
+
+    private static String stripWww(String host) {
+        return host.regionMatches(true, 0, "www.", 0, 4) ? host.substring(4) : host;
+    }
+
+    private String normalizePath(String path) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return segments.isEmpty() ? "/" : "/" + String.join("/", segments);
+    }
+
+    private String normalizeQuery(String query) {
+        if (query.isEmpty()) {
+            return "";
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int equals = param.indexOf('=');
+            String name = (equals >= 0 ? param.substring(0, equals) : param).toLowerCase(Locale.ROOT);
+            if (!isIgnored(name)) {
+                params.add(param);
+            }
+        }
+        params.sort(String::compareTo);
+        return String.join("&", params);
+    }
+
+    private boolean isIgnored(String name) {
+        for (String ignored : ignoredParams) {
+            if (ignored.endsWith("*") ? name.startsWith(ignored.substring(0, ignored.length() - 1)) : name.equals(ignored)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
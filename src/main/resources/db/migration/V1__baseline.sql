@@ -0,0 +1,43 @@
+-- Схема, которую до появления миграций создавал ddl-auto: update.
+-- Существующие базы отмечаются этой версией через baseline-on-migrate и не пересоздаются.
+
+CREATE TABLE site (
+    id            INT          NOT NULL AUTO_INCREMENT,
+    status        ENUM('INDEXING', 'INDEXED', 'FAILED') NOT NULL,
+    status_time   DATETIME(6),
+    last_error    VARCHAR(255),
+    url           VARCHAR(255),
+    name          VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE page (
+    id      INT          NOT NULL AUTO_INCREMENT,
+    site_id INT          NOT NULL,
+    path    VARCHAR(255) NOT NULL,
+    code    INT          NOT NULL,
+    content MEDIUMTEXT   NOT NULL,
+    PRIMARY KEY (id),
+    INDEX path_index (path),
+    CONSTRAINT fk_page_site FOREIGN KEY (site_id) REFERENCES site (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE lemma (
+    id             INT          NOT NULL AUTO_INCREMENT,
+    site_id        INT          NOT NULL,
+    lemma          VARCHAR(255) NOT NULL,
+    frequency      INT          NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_lemma_site (lemma, site_id),
+    CONSTRAINT fk_lemma_site FOREIGN KEY (site_id) REFERENCES site (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE index_search (
+    id         INT NOT NULL AUTO_INCREMENT,
+    page_id    INT NOT NULL,
+    lemma_id   INT NOT NULL,
+    lemma_rank INT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_index_page FOREIGN KEY (page_id) REFERENCES page (id) ON DELETE CASCADE,
+    CONSTRAINT fk_index_lemma FOREIGN KEY (lemma_id) REFERENCES lemma (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
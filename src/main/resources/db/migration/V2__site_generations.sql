@@ -0,0 +1,42 @@
+-- Поколения и счётчики сайтов, частота лемм в страницах и аренды обхода.
+
+ALTER TABLE site
+    ADD COLUMN generation    INT    NOT NULL DEFAULT 1,
+    ADD COLUMN active        BIT(1) NOT NULL DEFAULT 1,
+    ADD COLUMN page_count    BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN lemma_count   BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN error_count   BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN bytes_fetched BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN error_codes   VARCHAR(1024);
+
+-- Прежние строки одного адреса нумеруются поколениями по порядку создания, активным остаётся последнее.
+-- Счётчики остаются нулевыми: SiteStatisticsService пересчитает их по таблицам при запуске
+UPDATE site s
+    JOIN (SELECT id, ROW_NUMBER() OVER (PARTITION BY url ORDER BY id) AS generation,
+                 MAX(id) OVER (PARTITION BY url) AS latest_id
+          FROM site) g ON g.id = s.id
+SET s.generation = g.generation,
+    s.active     = (s.id = g.latest_id);
+
+-- Сумма рангов леммы по всем страницам сайта; для существующих лемм считается по index_search
+ALTER TABLE lemma ADD COLUMN term_frequency INT NOT NULL DEFAULT 0;
+
+UPDATE lemma l
+    JOIN (SELECT lemma_id, SUM(lemma_rank) AS total
+          FROM index_search
+          GROUP BY lemma_id) t ON t.lemma_id = l.id
+SET l.term_frequency = t.total;
+
+CREATE TABLE crawl_lease (
+    id          INT          NOT NULL AUTO_INCREMENT,
+    site_url    VARCHAR(255) NOT NULL,
+    site_name   VARCHAR(255) NOT NULL,
+    site_id     INT,
+    status      ENUM('PENDING', 'RUNNING', 'DONE', 'FAILED', 'CANCELLED') NOT NULL,
+    owner       VARCHAR(255),
+    lease_until DATETIME(3),
+    attempts    INT          NOT NULL DEFAULT 0,
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_crawl_lease_site_url (site_url),
+    INDEX lease_status_index (status, lease_until)
+) ENGINE = InnoDB;
@@ -0,0 +1,19 @@
+-- Покрывающие индексы под запросы репозиториев.
+
+-- IndexSearchRepository.findPostingsByLemma и streamPostingsBySiteId: постинги леммы читаются
+-- только из индекса, уже упорядоченные по page_id, без обращения к строкам таблицы
+CREATE INDEX idx_index_lemma_page_rank ON index_search (lemma_id, page_id, lemma_rank);
+
+-- indexSearchExist, findAllByPageId, deleteAllByPageId: поиск по странице и паре (страница, лемма)
+CREATE INDEX idx_index_page_lemma ON index_search (page_id, lemma_id);
+
+-- PageRepository.findPageBySiteIdAndPath и подсчёт страниц сайта: поиск всегда идёт по (site_id, path),
+-- индекс только по path при этом просматривает одноимённые пути всех сайтов и поколений
+CREATE INDEX idx_page_site_path ON page (site_id, path);
+DROP INDEX path_index ON page;
+
+-- LemmaRepository.findCountRecordBySiteId и findLemmaWeightsBySiteId: словарь сайта читается из индекса
+CREATE INDEX idx_lemma_site_lemma_freq ON lemma (site_id, lemma, frequency);
+
+-- Выбор активного поколения сайта по адресу
+CREATE INDEX idx_site_url_generation ON site (url, active, generation);
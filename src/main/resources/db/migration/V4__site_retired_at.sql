@@ -0,0 +1,3 @@
+-- Поколения, выведенные из работы, удаляются фоновой очисткой частями, а не каскадным удалением
+ALTER TABLE site ADD COLUMN retired_at DATETIME(6) NULL;
+CREATE INDEX idx_site_retired ON site (retired_at);
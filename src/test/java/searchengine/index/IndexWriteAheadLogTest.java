@@ -0,0 +1,93 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexWriteAheadLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsAfterCheckpointAreReplayed() throws Exception {
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            assertThat(log.open()).isEmpty();
+            log.append(1, 10, Map.of("дом", 2));
+            log.append(1, 11, Map.of("кот", 1));
+            log.append(2, 12, Map.of("дом", 1, "сад", 3));
+            log.sync();
+            log.checkpoint(1);
+        }
+
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            List<PageDelta> pending = log.open();
+            assertThat(pending).extracting(PageDelta::getSequence).containsExactly(2L, 3L);
+            assertThat(pending.get(1).getLemmas()).isEqualTo(Map.of("дом", 1, "сад", 3));
+            assertThat(log.append(1, 13, Map.of()).getSequence()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void fullCheckpointTruncatesLogAndKeepsNumbering() throws Exception {
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            log.open();
+            log.append(1, 10, Map.of("дом", 2));
+            log.append(1, 11, Map.of("кот", 1));
+            log.checkpoint(2);
+            assertThat(Files.size(directory.resolve("index.wal"))).isZero();
+        }
+
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            assertThat(log.open()).isEmpty();
+            assertThat(log.lastSequence()).isEqualTo(2);
+            assertThat(log.append(1, 12, Map.of()).getSequence()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void checkpointNeverMovesBackwards() throws Exception {
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            log.open();
+            log.append(1, 10, Map.of("дом", 2));
+            log.append(1, 11, Map.of("кот", 1));
+            log.append(1, 12, Map.of("сад", 1));
+            log.checkpoint(2);
+            log.checkpoint(1);
+        }
+
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            assertThat(log.open()).extracting(PageDelta::getPageId).containsExactly(12);
+        }
+    }
+
+    @Test
+    void damagedTailIsCutOff() throws Exception {
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            log.open();
+            log.append(1, 10, Map.of("дом", 2));
+            log.append(1, 11, Map.of("кот", 1));
+        }
+        Path file = directory.resolve("index.wal");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            List<PageDelta> pending = log.open();
+            assertThat(pending.stream().map(PageDelta::getPageId).collect(Collectors.toList())).containsExactly(10);
+            assertThat(log.append(1, 11, Map.of("кот", 1)).getSequence()).isEqualTo(2);
+        }
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            assertThat(log.open()).extracting(PageDelta::getPageId).containsExactly(10, 11);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SiteSegmentsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void newerPageVersionReplacesOlderAcrossSegments() throws Exception {
+        SiteSegments segments = open();
+        segments.addPage(1, Map.of(10, 3, 11, 1));
+        segments.addPage(2, Map.of(10, 2));
+        segments.flush();
+        segments.addPage(1, Map.of(11, 5));
+        segments.flush();
+
+        assertThat(postings(segments, 10)).containsExactly("2:2");
+        assertThat(postings(segments, 11)).containsExactly("1:5");
+        assertThat(segments.segmentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void bufferedPagesAreVisibleBeforeFlush() throws Exception {
+        SiteSegments segments = open();
+        segments.addPage(1, Map.of(10, 3));
+        segments.flush();
+        segments.addPage(1, Map.of(12, 4));
+
+        assertThat(postings(segments, 10)).isEmpty();
+        assertThat(postings(segments, 12)).containsExactly("1:4");
+    }
+
+    @Test
+    void mergeKeepsOnlyLatestVersions() throws Exception {
+        SiteSegments segments = open();
+        for (int rank = 1; rank <= 3; rank++) {
+            segments.addPage(1, Map.of(10, rank));
+            segments.flush();
+        }
+        assertThat(segments.mergeSmallest(3, Long.MAX_VALUE)).isTrue();
+
+        assertThat(segments.segmentCount()).isEqualTo(1);
+        assertThat(postings(segments, 10)).containsExactly("1:3");
+    }
+
+    @Test
+    void droppedSiteCanBeFlushedAgain() throws Exception {
+        SiteSegments segments = open();
+        segments.addPage(1, Map.of(10, 3));
+        segments.flush();
+        segments.drop();
+
+        assertThat(postings(segments, 10)).isEmpty();
+        segments.load();
+        segments.addPage(2, Map.of(10, 1));
+        segments.flush();
+        assertThat(postings(segments, 10)).containsExactly("2:1");
+    }
+
+    @Test
+    void segmentsSurviveReload() throws Exception {
+        SiteSegments segments = open();
+        segments.addPage(1, Map.of(10, 3));
+        segments.addPage(5, Map.of(10, 1));
+        segments.flush();
+
+        assertThat(postings(open(), 10)).containsExactly("1:3", "5:1");
+    }
+
+    private SiteSegments open() throws Exception {
+        SiteSegments segments = new SiteSegments(1, directory.resolve("site-1"));
+        segments.load();
+        return segments;
+    }
+
+    private List<String> postings(SiteSegments segments, int lemmaId) {
+        List<String> postings = new ArrayList<>();
+        segments.forEachPosting(lemmaId, (pageId, rank) -> postings.add(pageId + ":" + rank));
+        postings.sort(null);
+        return postings;
+    }
+}
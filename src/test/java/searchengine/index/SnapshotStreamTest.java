@@ -0,0 +1,104 @@
+package searchengine.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotStreamTest {
+    // Сигнатура и версия файла, затем заголовок блока: исходная длина, длина сжатых данных, CRC32
+    private static final int CHECKSUM_OFFSET = Integer.BYTES * 2 + Integer.BYTES * 2;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+
+    @BeforeEach
+    void write() throws IOException {
+        file = directory.resolve("snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(file, 256, 6)) {
+            writer.site(1, "https://site.test", "site", "INDEXED", 2, true);
+            for (int pageId = 1; pageId <= 20; pageId++) {
+                writer.page(pageId, "/page-" + pageId, 200, "текст страницы " + pageId);
+            }
+            writer.lemma("текст", new int[]{1, 2, 3}, new int[]{4, 5, 6}, 3);
+            writer.finish();
+        }
+    }
+
+    @Test
+    void snapshotIsReadBack() throws IOException {
+        List<String> records = read();
+
+        assertThat(records).hasSize(22);
+        assertThat(records.get(0)).isEqualTo("site 1 https://site.test 2 true");
+        assertThat(records.get(20)).isEqualTo("page 1 20 /page-20 текст страницы 20");
+        assertThat(records.get(21)).isEqualTo("lemma 1 текст 3");
+    }
+
+    @Test
+    void corruptedBlockIsRejectedByChecksum() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(checksum, CHECKSUM_OFFSET);
+            checksum.flip();
+            int corrupted = checksum.getInt() ^ 1;
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(corrupted).flip(), CHECKSUM_OFFSET);
+        }
+
+        assertThatThrownBy(this::read).isInstanceOf(IOException.class).hasMessageContaining("контрольная сумма");
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        assertThatThrownBy(this::read).isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void snapshotWithoutEndBlockIsRejected() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - SnapshotOutputStream.BLOCK_HEADER_BYTES);
+        }
+
+        assertThatThrownBy(this::read).isInstanceOf(EOFException.class);
+    }
+
+    private List<String> read() throws IOException {
+        List<String> records = new ArrayList<>();
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            reader.read(new SnapshotReader.Handler() {
+                @Override
+                public void site(int siteId, String url, String name, String status, int generation, boolean active) {
+                    records.add("site " + siteId + " " + url + " " + generation + " " + active);
+                }
+
+                @Override
+                public void page(int siteId, int pageId, String path, int code, String content) {
+                    records.add("page " + siteId + " " + pageId + " " + path + " " + content);
+                }
+
+                @Override
+                public void lemma(int siteId, String lemma, int[] pageIds, int[] ranks) {
+                    records.add("lemma " + siteId + " " + lemma + " " + pageIds.length);
+                }
+            });
+        }
+        return records;
+    }
+}
@@ -0,0 +1,135 @@
+package searchengine.services.Impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.SegmentSettings;
+import searchengine.repositories.SiteRepository;
+import searchengine.storage.IndexStorage;
+import searchengine.storage.PostingStreamHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class SegmentIndexServiceImplTest {
+    private static final int SITE_ID = 7;
+
+    @TempDir
+    Path directory;
+
+    private final IndexStorage indexStorage = mock(IndexStorage.class);
+    private SegmentIndexServiceImpl service;
+
+    @BeforeEach
+    void start() {
+        SegmentSettings settings = new SegmentSettings();
+        settings.setDirectory(directory.toString());
+        service = new SegmentIndexServiceImpl(settings, mock(SiteRepository.class), indexStorage);
+    }
+
+    @AfterEach
+    void stop() {
+        service.close();
+    }
+
+    @Test
+    void newSiteIsReadyOnlyAfterBuildFromStorage() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            invocation.<PostingStreamHandler>getArgument(1).accept(Stream.of(new int[]{10, 1, 3}));
+            return null;
+        }).when(indexStorage).streamPostings(eq(SITE_ID), any());
+
+        service.addPage(SITE_ID, 2, Map.of(10, 5));
+        assertThat(service.isReady(SITE_ID)).isFalse();
+
+        release.countDown();
+        awaitReady();
+        assertThat(postings(10)).containsExactly("1:3", "2:5");
+    }
+
+    @Test
+    void failedBuildLeavesSiteNotReady() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            failed.countDown();
+            throw new IOException("хранилище недоступно");
+        }).when(indexStorage).streamPostings(eq(SITE_ID), any());
+
+        service.addPage(SITE_ID, 1, Map.of(10, 3));
+        assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+        service.addPage(SITE_ID, 2, Map.of(10, 4));
+
+        assertThat(service.isReady(SITE_ID)).isFalse();
+        assertThat(Files.exists(directory.resolve("site-" + SITE_ID).resolve("complete"))).isFalse();
+
+        doAnswer(invocation -> null).when(indexStorage).streamPostings(eq(SITE_ID), any());
+        service.rebuildSite(SITE_ID);
+        awaitReady();
+    }
+
+    @Test
+    void rebuildKeepsSiteNotReadyUntilNewBuildFinishes() throws Exception {
+        CountDownLatch staleStarted = new CountDownLatch(1);
+        CountDownLatch releaseStale = new CountDownLatch(1);
+        CountDownLatch releaseFresh = new CountDownLatch(1);
+        AtomicInteger builds = new AtomicInteger();
+        doAnswer(invocation -> {
+            int rank;
+            if (builds.incrementAndGet() == 1) {
+                staleStarted.countDown();
+                releaseStale.await(5, TimeUnit.SECONDS);
+                rank = 3;
+            } else {
+                releaseFresh.await(5, TimeUnit.SECONDS);
+                rank = 4;
+            }
+            invocation.<PostingStreamHandler>getArgument(1).accept(Stream.of(new int[]{10, 1, rank}));
+            return null;
+        }).when(indexStorage).streamPostings(eq(SITE_ID), any());
+        service.addPage(SITE_ID, 1, Map.of(10, 3));
+        assertThat(staleStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        service.rebuildSite(SITE_ID);
+        service.addPage(SITE_ID, 2, Map.of(10, 5));
+        releaseStale.countDown();
+
+        assertThat(service.isReady(SITE_ID)).isFalse();
+        assertThat(postings(10)).containsExactly("2:5");
+
+        releaseFresh.countDown();
+        awaitReady();
+        assertThat(postings(10)).containsExactly("1:4", "2:5");
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!service.isReady(SITE_ID) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(service.isReady(SITE_ID)).isTrue();
+    }
+
+    private List<String> postings(int lemmaId) {
+        List<String> postings = new ArrayList<>();
+        service.forEachPosting(SITE_ID, lemmaId, (pageId, rank) -> postings.add(pageId + ":" + rank));
+        postings.sort(null);
+        return postings;
+    }
+}
@@ -0,0 +1,68 @@
+package searchengine.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.StorageSettings;
+import searchengine.index.PageDelta;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileIndexStorageTest extends IndexStorageContractTest {
+    @TempDir
+    Path directory;
+
+    private FileIndexStorage storage;
+    private int siteIds;
+    private int pageIds;
+
+    @BeforeEach
+    void open() throws Exception {
+        storage = open(directory);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        storage.close();
+    }
+
+    @Override
+    protected IndexStorage storage() {
+        return storage;
+    }
+
+    @Override
+    protected int createSite() {
+        return ++siteIds;
+    }
+
+    @Override
+    protected int createPage(int siteId) {
+        return ++pageIds;
+    }
+
+    @Test
+    void indexSurvivesReopen() throws Exception {
+        storage.applyPages(List.of(new PageDelta(1, 1, 10, Map.of("кот", 2))));
+        storage.deletePostings(1, List.of(11));
+        storage.close();
+
+        storage = open(directory);
+
+        assertThat(storage.findLemmas("кот", 1)).singleElement()
+                .satisfies(lemma -> assertThat(lemma.getTermFrequency()).isEqualTo(2));
+    }
+
+    private static FileIndexStorage open(Path directory) throws Exception {
+        StorageSettings settings = new StorageSettings();
+        settings.setDirectory(directory.toString());
+        FileIndexStorage storage = new FileIndexStorage(settings);
+        storage.load();
+        return storage;
+    }
+}
@@ -0,0 +1,138 @@
+package searchengine.storage;
+
+import org.junit.jupiter.api.Test;
+import searchengine.index.PageDelta;
+import searchengine.model.LemmaEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Общие проверки хранилища индекса; каждая реализация запускает их в своём наследнике.
+ */
+abstract class IndexStorageContractTest {
+    private long sequence;
+
+    protected abstract IndexStorage storage();
+
+    // Сайт и страница должны существовать до применения дельты, если этого требует хранилище
+    protected abstract int createSite();
+
+    protected abstract int createPage(int siteId);
+
+    @Test
+    void appliedPageIsFoundByLemma() {
+        int siteId = createSite();
+        int pageId = createPage(siteId);
+
+        List<AppliedPage> applied = storage().applyPages(List.of(delta(siteId, pageId, Map.of("кот", 3, "дом", 1))));
+
+        assertThat(applied).hasSize(1);
+        assertThat(applied.get(0).getNewLemmas()).isEqualTo(2);
+        LemmaEntity lemma = single("кот", siteId);
+        assertThat(lemma.getFrequency()).isEqualTo(1);
+        assertThat(lemma.getTermFrequency()).isEqualTo(3);
+        assertThat(applied.get(0).getLemmaRanks()).containsEntry(lemma.getId(), 3);
+        assertThat(postings(lemma)).containsExactly(Map.entry(pageId, 3));
+        assertThat(storage().countLemmas(siteId)).isEqualTo(2);
+        assertThat(storage().findLemmaNames(siteId)).containsValues("кот", "дом");
+    }
+
+    @Test
+    void deltaReplacesPageIndex() {
+        int siteId = createSite();
+        int pageId = createPage(siteId);
+        storage().applyPages(List.of(delta(siteId, pageId, Map.of("кот", 3, "дом", 1))));
+
+        storage().applyPages(List.of(delta(siteId, pageId, Map.of("кот", 5))));
+
+        LemmaEntity cat = single("кот", siteId);
+        assertThat(cat.getFrequency()).isEqualTo(1);
+        assertThat(cat.getTermFrequency()).isEqualTo(5);
+        assertThat(postings(cat)).containsExactly(Map.entry(pageId, 5));
+        LemmaEntity house = single("дом", siteId);
+        assertThat(house.getFrequency()).isZero();
+        assertThat(postings(house)).isEmpty();
+    }
+
+    @Test
+    void lemmasAreSeparatedBySite() {
+        int first = createSite();
+        int second = createSite();
+        storage().applyPages(List.of(
+                delta(first, createPage(first), Map.of("кот", 1)),
+                delta(second, createPage(second), Map.of("кот", 2))));
+
+        assertThat(storage().findLemmas("кот", null)).hasSize(2);
+        assertThat(storage().findLemmas("кот", first)).extracting(LemmaEntity::getTermFrequency).containsExactly(1);
+        assertThat(storage().findLemmas("пёс", first)).isEmpty();
+    }
+
+    @Test
+    void failedBatchChangesNothing() {
+        int siteId = createSite();
+        int pageId = createPage(siteId);
+        storage().applyPages(List.of(delta(siteId, pageId, Map.of("кот", 3))));
+        Map<String, Integer> broken = new HashMap<>();
+        broken.put("пёс", null);
+
+        assertThatThrownBy(() -> storage().applyPages(List.of(
+                delta(siteId, pageId, Map.of("кот", 7, "мышь", 1)),
+                delta(siteId, createPage(siteId), broken))))
+                .isInstanceOf(RuntimeException.class);
+
+        LemmaEntity cat = single("кот", siteId);
+        assertThat(cat.getTermFrequency()).isEqualTo(3);
+        assertThat(postings(cat)).containsExactly(Map.entry(pageId, 3));
+        assertThat(storage().findLemmas("мышь", siteId)).isEmpty();
+        assertThat(storage().findLemmas("пёс", siteId)).isEmpty();
+    }
+
+    @Test
+    void deletedPostingsAreNotFound() {
+        int siteId = createSite();
+        int removed = createPage(siteId);
+        int kept = createPage(siteId);
+        storage().applyPages(List.of(
+                delta(siteId, removed, Map.of("кот", 1)),
+                delta(siteId, kept, Map.of("кот", 2))));
+
+        storage().deletePostings(siteId, List.of(removed));
+
+        assertThat(postings(single("кот", siteId))).containsExactly(Map.entry(kept, 2));
+    }
+
+    @Test
+    void deletedLemmasAreNotFound() {
+        int siteId = createSite();
+        storage().applyPages(List.of(delta(siteId, createPage(siteId), Map.of("кот", 1, "дом", 1))));
+
+        while (storage().deleteLemmas(siteId, 1) > 0) {
+            // удаление частями до пустого словаря
+        }
+
+        assertThat(storage().countLemmas(siteId)).isZero();
+        assertThat(storage().findLemmas("кот", siteId)).isEmpty();
+    }
+
+    private PageDelta delta(int siteId, int pageId, Map<String, Integer> lemmas) {
+        return new PageDelta(++sequence, siteId, pageId, lemmas);
+    }
+
+    private LemmaEntity single(String lemma, int siteId) {
+        List<LemmaEntity> found = storage().findLemmas(lemma, siteId);
+        assertThat(found).hasSize(1);
+        return found.get(0);
+    }
+
+    private List<Map.Entry<Integer, Integer>> postings(LemmaEntity lemma) {
+        List<Map.Entry<Integer, Integer>> postings = new ArrayList<>();
+        storage().forEachPosting(lemma, (pageId, rank) -> postings.add(Map.entry(pageId, rank)));
+        return postings;
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.model.SiteStatus;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+
+import java.sql.Timestamp;
+
+// Транзакция теста отключена: applyPages сам открывает транзакцию на пачку и откатывает её при сбое
+@DataJpaTest
+@Import(JpaIndexStorage.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:index;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.flyway.enabled=false"})
+class JpaIndexStorageTest extends IndexStorageContractTest {
+    @Autowired
+    private JpaIndexStorage storage;
+    @Autowired
+    private SiteRepository siteRepository;
+    @Autowired
+    private PageRepository pageRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Без транзакции теста данные остаются в базе, поэтому таблицы очищаются перед каждой проверкой
+    @BeforeEach
+    void clean() {
+        jdbcTemplate.update("delete from index_search");
+        jdbcTemplate.update("delete from lemma");
+        jdbcTemplate.update("delete from page");
+        jdbcTemplate.update("delete from site");
+    }
+
+    @Override
+    protected IndexStorage storage() {
+        return storage;
+    }
+
+    @Override
+    protected int createSite() {
+        SiteEntity site = new SiteEntity();
+        site.setUrl("https://site.test/" + siteRepository.count());
+        site.setName("site");
+        site.setStatus(SiteStatus.INDEXED);
+        site.setStatusTime(new Timestamp(System.currentTimeMillis()));
+        return siteRepository.save(site).getId();
+    }
+
+    @Override
+    protected int createPage(int siteId) {
+        PageEntity page = new PageEntity();
+        page.setSiteId(siteId);
+        page.setPath("/" + pageRepository.count());
+        page.setCode(200);
+        page.setContent("");
+        return pageRepository.save(page).getId();
+    }
+}
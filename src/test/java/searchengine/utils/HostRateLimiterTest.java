@@ -0,0 +1,101 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.FetchSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostRateLimiterTest {
+    @Test
+    void requestsAreSpacedByRate() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(settings(10));
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire();
+        }
+
+        // Первый токен есть сразу, остальные пять - по одному в 100 мс
+        assertThat(elapsedMs(start)).isBetween(450L, 1500L);
+    }
+
+    @Test
+    void rateGrowsOnHealthyResponsesAndDropsOnThrottling() {
+        FetchSettings settings = settings(4);
+        settings.setMaxRate(5);
+        HostRateLimiter limiter = new HostRateLimiter(settings);
+
+        limiter.onResponse(10);
+        limiter.onResponse(10);
+        assertThat(limiter.getRate()).isEqualTo(5);
+        limiter.onResponse(settings.getSlowResponseMs() + 1);
+        assertThat(limiter.getRate()).isEqualTo(2.5);
+        limiter.onThrottled(0);
+        limiter.onThrottled(0);
+        limiter.onThrottled(0);
+        limiter.onThrottled(0);
+        assertThat(limiter.getRate()).isEqualTo(settings.getMinRate());
+    }
+
+    @Test
+    void retryAfterPausesHost() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(settings(100));
+        limiter.onThrottled(300);
+        long start = System.nanoTime();
+        limiter.acquire();
+
+        assertThat(elapsedMs(start)).isGreaterThanOrEqualTo(250L);
+    }
+
+    @Test
+    void throttledHostDoesNotGrowCrawlPool() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(settings(100));
+        limiter.onThrottled(300);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    limiter.acquire();
+                    return null;
+                }));
+            }
+            ForkJoinTask<?> crawl = pool.submit(() -> ForkJoinTask.invokeAll(tasks));
+            int maxPoolSize = 0;
+            while (!crawl.isDone()) {
+                maxPoolSize = Math.max(maxPoolSize, pool.getPoolSize());
+                Thread.sleep(5);
+            }
+            crawl.get();
+
+            assertThat(maxPoolSize).isLessThanOrEqualTo(2);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void crawlDelayCapsRate() {
+        HostRateLimiter limiter = new HostRateLimiter(settings(10));
+        limiter.limitByCrawlDelay(2000);
+        limiter.onResponse(10);
+
+        assertThat(limiter.getRate()).isEqualTo(0.5);
+    }
+
+    private FetchSettings settings(double rate) {
+        FetchSettings settings = new FetchSettings();
+        settings.setInitialRate(rate);
+        settings.setMaxRate(Math.max(rate, settings.getMaxRate()));
+        return settings;
+    }
+
+    private long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
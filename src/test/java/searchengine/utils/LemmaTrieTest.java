@@ -0,0 +1,98 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class LemmaTrieTest {
+
+    @Test
+    void prefixExpansionIsAlphabeticalAndLimited() {
+        LemmaTrie trie = trie("кот", "котик", "котлета", "кол", "дом");
+
+        assertThat(trie.findByPrefix("кот", 10)).containsExactly("кот", "котик", "котлета");
+        assertThat(trie.findByPrefix("кот", 2)).containsExactly("кот", "котик");
+        assertThat(trie.findByPrefix("ко", 0)).isEmpty();
+        assertThat(trie.findByPrefix("пёс", 10)).isEmpty();
+    }
+
+    @Test
+    void repeatedWordAccumulatesWeight() {
+        LemmaTrie trie = new LemmaTrie();
+
+        assertThat(trie.add("кот", 2)).isTrue();
+        assertThat(trie.add("кот", 3)).isFalse();
+
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(trie.findTopByPrefix("к", 1)).singleElement()
+                .satisfies(completion -> assertThat(completion.getWeight()).isEqualTo(5));
+    }
+
+    @Test
+    void forEachVisitsWordsAlphabeticallyWithWeights() {
+        LemmaTrie trie = new LemmaTrie();
+        trie.add("кот", 2);
+        trie.add("дом", 1);
+        trie.add("ко", 4);
+        List<String> visited = new ArrayList<>();
+
+        trie.forEach((word, weight) -> visited.add(word + "=" + weight));
+
+        assertThat(visited).containsExactly("дом=1", "ко=4", "кот=2");
+    }
+
+    @Test
+    void similarWordsWithinOneEdit() {
+        LemmaTrie trie = trie("кот", "кит", "коты", "ко", "кто", "дом");
+
+        // Замена, вставка, удаление и перестановка соседних букв - по одной правке
+        assertThat(trie.findSimilar("кот", 1, 10)).containsExactly("кот", "кит", "ко", "коты", "кто");
+        assertThat(trie.findSimilar("кот", 0, 10)).containsExactly("кот");
+    }
+
+    @Test
+    void similarWordsWithinTwoEdits() {
+        LemmaTrie trie = trie("собака", "сабака", "сабок", "кошка");
+
+        assertThat(trie.findSimilarMatches("сбоака", 2, 10))
+                .extracting(LemmaTrie.Match::getWord, LemmaTrie.Match::getDistance)
+                .containsExactly(tuple("собака", 1), tuple("сабака", 2));
+    }
+
+    @Test
+    void similarWordsAtEqualDistanceArePickedByWeight() {
+        LemmaTrie trie = new LemmaTrie();
+        trie.add("кит", 1);
+        trie.add("кот", 7);
+        trie.add("кут", 3);
+
+        assertThat(trie.findSimilar("кат", 1, 2)).containsExactly("кот", "кут");
+    }
+
+    @Test
+    void topCompletionsAreOrderedByWeightThenAlphabetically() {
+        LemmaTrie trie = new LemmaTrie();
+        trie.add("котлета", 5);
+        trie.add("кот", 5);
+        trie.add("корова", 9);
+        trie.add("кол", 5);
+        trie.add("дом", 20);
+
+        assertThat(trie.findTopByPrefix("ко", 3)).extracting(LemmaTrie.Completion::getLemma)
+                .containsExactly("корова", "кол", "кот");
+        assertThat(trie.findTopByPrefix("ко", 10)).extracting(LemmaTrie.Completion::getLemma)
+                .containsExactly("корова", "кол", "кот", "котлета");
+    }
+
+    private static LemmaTrie trie(String... words) {
+        LemmaTrie trie = new LemmaTrie();
+        for (String word : words) {
+            trie.add(word, 1);
+        }
+        return trie;
+    }
+}
@@ -0,0 +1,86 @@
+package searchengine.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.FetchSettings;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class PageFetcherTest {
+    private HttpServer server;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/fast", exchange -> {
+            byte[] body = "<html><title>Быстро</title></html>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        // Заголовки приходят сразу, а тело - по байту в 100 мс
+        server.createContext("/slow", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream output = exchange.getResponseBody()) {
+                for (int i = 0; i < 100; i++) {
+                    output.write('a');
+                    output.flush();
+                    Thread.sleep(100);
+                }
+            } catch (Exception ignored) {
+                // клиент закрыл соединение
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        watchdog.shutdownNow();
+    }
+
+    @Test
+    void readsPageWithinDeadline() throws Exception {
+        FetchedPage page = fetcher(2000).fetch(url("/fast"));
+
+        assertThat(page.getDocument().title()).isEqualTo("Быстро");
+    }
+
+    @Test
+    void slowBodyIsCutAtDeadline() {
+        long start = System.currentTimeMillis();
+        FetchException failure = catchThrowableOfType(() -> fetcher(500).fetch(url("/slow")), FetchException.class);
+
+        assertThat(failure.getCode()).isEqualTo(408);
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+    }
+
+    private PageFetcher fetcher(int readTimeoutMs) {
+        FetchSettings settings = new FetchSettings();
+        settings.setMaxRetries(0);
+        settings.setInitialRate(100);
+        return new PageFetcher(HttpClient.newHttpClient(), watchdog, new HostRateLimiter(settings), settings,
+                "test", null, readTimeoutMs, 1024 * 1024, List.of("text/html"));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
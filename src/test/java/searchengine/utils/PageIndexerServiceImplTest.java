@@ -0,0 +1,174 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.WalSettings;
+import searchengine.index.IndexWriteAheadLog;
+import searchengine.index.PageDelta;
+import searchengine.model.PageEntity;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.LemmaDictionaryService;
+import searchengine.services.LemmaService;
+import searchengine.services.SegmentIndexService;
+import searchengine.services.SiteStatisticsService;
+import searchengine.storage.AppliedPage;
+import searchengine.storage.IndexStorage;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PageIndexerServiceImplTest {
+    @TempDir
+    Path directory;
+
+    private final LemmaService lemmaService = mock(LemmaService.class);
+    private final Set<Integer> brokenPages = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> deletedPages = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Integer> attempts = new ConcurrentHashMap<>();
+    private final List<Integer> appliedPages = new CopyOnWriteArrayList<>();
+    private final PageRepository pageRepository = mock(PageRepository.class);
+    private final SiteRepository siteRepository = mock(SiteRepository.class);
+    private PageIndexerServiceImpl indexer;
+
+    @AfterEach
+    void stop() throws Exception {
+        if (indexer != null) {
+            indexer.stop();
+        }
+    }
+
+    @Test
+    void checkpointStopsBeforeFailedPage() throws Exception {
+        brokenPages.add(2);
+        indexer = start(Integer.MAX_VALUE);
+        index(1);
+        index(2);
+        index(3);
+        awaitAttempts(2, 3);
+        indexer.stop();
+        indexer = null;
+
+        assertThat(appliedPages).contains(1, 3).doesNotContain(2);
+        assertThat(pendingPageIds()).containsExactly(2, 3);
+    }
+
+    @Test
+    void failedPageIsRetriedSeparately() throws Exception {
+        brokenPages.add(2);
+        indexer = start(Integer.MAX_VALUE);
+        index(1);
+        index(2);
+        awaitAttempts(2, 2);
+        brokenPages.clear();
+
+        assertThat(indexer.awaitIndexed()).isEmpty();
+        indexer.stop();
+        indexer = null;
+
+        assertThat(appliedPages).contains(1, 2);
+        assertThat(pendingPageIds()).isEmpty();
+    }
+
+    @Test
+    void permanentlyFailingPageIsExcludedAfterMaxAttempts() throws Exception {
+        brokenPages.add(2);
+        indexer = start(3);
+        index(1);
+        index(2);
+        index(3);
+
+        assertThat(indexer.awaitIndexed()).containsExactly(Map.entry(1, 1));
+        indexer.stop();
+        indexer = null;
+
+        assertThat(attempts.get(2)).isEqualTo(4);
+        assertThat(appliedPages).contains(1, 3).doesNotContain(2);
+        assertThat(pendingPageIds()).isEmpty();
+        verify(siteRepository).updateLastError(1, "Не удалось проиндексировать страниц: 1");
+    }
+
+    @Test
+    void deltaOfDeletedPageIsDiscarded() throws Exception {
+        brokenPages.add(2);
+        deletedPages.add(2);
+        indexer = start(Integer.MAX_VALUE);
+        index(1);
+        index(2);
+
+        assertThat(indexer.awaitIndexed()).isEmpty();
+        indexer.stop();
+        indexer = null;
+
+        assertThat(attempts.get(2)).isEqualTo(2);
+        assertThat(pendingPageIds()).isEmpty();
+        verify(siteRepository, never()).updateLastError(anyInt(), anyString());
+    }
+
+    private PageIndexerServiceImpl start(int maxApplyAttempts) throws Exception {
+        when(lemmaService.getLemmasFromText(anyString())).thenReturn(Map.of("дом", 1));
+        when(pageRepository.existsById(anyInt())).thenAnswer(invocation -> !deletedPages.contains(invocation.<Integer>getArgument(0)));
+        when(siteRepository.existsById(anyInt())).thenReturn(true);
+        WalSettings settings = new WalSettings();
+        settings.setDirectory(directory.toString());
+        settings.setCommitIntervalMs(10);
+        settings.setMaxApplyAttempts(maxApplyAttempts);
+        PageIndexerServiceImpl service = new PageIndexerServiceImpl(lemmaService, storage(),
+                mock(LemmaDictionaryService.class), mock(SegmentIndexService.class),
+                mock(SiteStatisticsService.class), pageRepository, siteRepository, settings, mock(EngineMetrics.class));
+        service.start();
+        return service;
+    }
+
+    // Ожидание заданного числа попыток применить страницу: в пачке и по одной
+    private void awaitAttempts(int pageId, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (attempts.getOrDefault(pageId, 0) < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(attempts.getOrDefault(pageId, 0)).isGreaterThanOrEqualTo(count);
+    }
+
+    private void index(int pageId) {
+        PageEntity page = new PageEntity();
+        page.setId(pageId);
+        page.setSiteId(1);
+        indexer.indexHtml("<p>дом</p>", page);
+    }
+
+    private List<Integer> pendingPageIds() throws Exception {
+        try (IndexWriteAheadLog log = new IndexWriteAheadLog(directory)) {
+            return log.open().stream().map(PageDelta::getPageId).collect(Collectors.toList());
+        }
+    }
+
+    // Хранилище отклоняет пачку, в которой есть страница из brokenPages
+    private IndexStorage storage() {
+        IndexStorage storage = mock(IndexStorage.class);
+        when(storage.applyPages(anyList())).thenAnswer(invocation -> {
+            List<PageDelta> deltas = invocation.getArgument(0);
+            deltas.forEach(delta -> attempts.merge(delta.getPageId(), 1, Integer::sum));
+            if (deltas.stream().anyMatch(delta -> brokenPages.contains(delta.getPageId()))) {
+                throw new IllegalStateException("страница недоступна");
+            }
+            deltas.forEach(delta -> appliedPages.add(delta.getPageId()));
+            return deltas.stream().map(delta -> new AppliedPage(delta, Map.of(), 0)).collect(Collectors.toList());
+        });
+        return storage;
+    }
+}
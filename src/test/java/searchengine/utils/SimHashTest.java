@@ -0,0 +1,42 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimHashTest {
+    private static final String TEXT = "Поисковый движок обходит страницы сайта, приводит слова к леммам "
+            + "и сохраняет для каждой леммы список страниц с рангами. По запросу движок находит страницы, "
+            + "где встречаются все леммы запроса, и сортирует их по релевантности.";
+
+    @Test
+    void sameTextGivesSameFingerprint() {
+        assertThat(SimHash.of(TEXT, 3)).isEqualTo(SimHash.of(TEXT.toUpperCase(), 3)).isNotZero();
+    }
+
+    @Test
+    void smallEditKeepsFingerprintClose() {
+        long original = SimHash.of(TEXT, 3);
+        long edited = SimHash.of(TEXT.replace("рангами", "весами"), 3);
+        long other = SimHash.of("Совсем другой текст о погоде: завтра ожидается дождь, ветер северный, "
+                + "температура ночью опустится ниже нуля, на дорогах гололёд.", 3);
+
+        assertThat(SimHash.distance(original, edited)).isLessThan(SimHash.distance(original, other));
+        assertThat(SimHash.distance(original, other)).isGreaterThan(10);
+    }
+
+    @Test
+    void textShorterThanShingleHasNoFingerprint() {
+        assertThat(SimHash.of("два слова", 3)).isZero();
+    }
+
+    @Test
+    void nearDuplicateIndexFindsCloseFingerprints() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long fingerprint = 0x0123_4567_89ab_cdefL;
+
+        assertThat(index.addIfUnique(fingerprint)).isTrue();
+        assertThat(index.addIfUnique(fingerprint ^ 0b1011L << 40)).isFalse();
+        assertThat(index.addIfUnique(~fingerprint)).isTrue();
+    }
+}
@@ -0,0 +1,68 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnippetHighlighterTest {
+    // Словоформы запроса сводятся к лемме, остальные слова остаются как есть
+    private static final Map<String, String> LEMMAS = Map.of("коты", "кот", "кота", "кот", "домов", "дом");
+    private static final Function<String, String> LEMMATIZER = word -> LEMMAS.getOrDefault(word, word);
+
+    @Test
+    void textWithoutQueryWordsHasNoSnippet() {
+        SnippetHighlighter highlighter = highlighter(40, Set.of("кот"));
+
+        assertThat(highlighter.snippet("Собака лает, караван идёт.")).isNull();
+    }
+
+    @Test
+    void wordFormsAreHighlightedAndTextEscaped() {
+        SnippetHighlighter highlighter = highlighter(100, Set.of("кот"), Set.of("дом"));
+
+        assertThat(highlighter.snippet("Коты <и> кота около домов"))
+                .isEqualTo("<b>Коты</b> &lt;и&gt; <b>кота</b> около <b>домов</b>");
+    }
+
+    @Test
+    void windowWithMoreDistinctTermsWins() {
+        SnippetHighlighter highlighter = highlighter(30, Set.of("кот"), Set.of("дом"));
+        String text = "кот кот кот кот кот " + "слово ".repeat(20) + "кот и дом рядом " + "слово ".repeat(20);
+
+        String snippet = highlighter.snippet(text);
+
+        assertThat(snippet).contains("<b>кот</b> и <b>дом</b>").startsWith("...").endsWith("...");
+        assertThat(snippet.replaceAll("<[^>]+>", "").length()).isLessThanOrEqualTo(30 + 6);
+    }
+
+    @Test
+    void matchLongerThanWindowFormsItsOwnWindow() {
+        String longWord = "превысокомногорассмотрительствующий";
+        SnippetHighlighter highlighter = highlighter(20, Set.of(longWord), Set.of("кот"));
+
+        // Оба окна содержат по одному терму, при равенстве выигрывает первое
+        String snippet = highlighter.snippet(longWord + " " + "слово ".repeat(10) + "кот");
+
+        assertThat(snippet).contains("<b>" + longWord + "</b>").doesNotContain("кот");
+    }
+
+    @Test
+    void oversizedMatchDoesNotBeatWindowWithMoreTerms() {
+        String longWord = "превысокомногорассмотрительствующий";
+        SnippetHighlighter highlighter = highlighter(20, Set.of(longWord), Set.of("кот"), Set.of("дом"));
+
+        String snippet = highlighter.snippet(longWord + " " + "слово ".repeat(10) + "кот дом");
+
+        assertThat(snippet).contains("<b>кот</b> <b>дом</b>").doesNotContain(longWord);
+    }
+
+    @SafeVarargs
+    private SnippetHighlighter highlighter(int length, Set<String>... terms) {
+        return new SnippetHighlighter(List.of(terms), LEMMATIZER, length);
+    }
+}
@@ -0,0 +1,50 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlNormalizerTest {
+    private final UrlNormalizer normalizer = new UrlNormalizer(false, List.of("utm_*", "sessionid"));
+
+    @Test
+    void variantsOfOnePathAreEqual() {
+        assertThat(normalizer.normalize("/page")).isEqualTo("/page");
+        assertThat(normalizer.normalize("/page/")).isEqualTo("/page");
+        assertThat(normalizer.normalize("//page#top")).isEqualTo("/page");
+        assertThat(normalizer.normalize("/a/./b/../page")).isEqualTo("/a/page");
+        assertThat(normalizer.normalize("")).isEqualTo("/");
+        assertThat(normalizer.normalize("/..")).isEqualTo("/");
+    }
+
+    @Test
+    void trackingParamsAreDroppedAndRestSorted() {
+        assertThat(normalizer.normalize("/page?utm_source=x&b=2&SessionId=7&a=1")).isEqualTo("/page?a=1&b=2");
+        assertThat(normalizer.normalize("/page?utm_medium=x")).isEqualTo("/page");
+        assertThat(normalizer.normalize("/page?&a=1&")).isEqualTo("/page?a=1");
+    }
+
+    @Test
+    void dropQueryRemovesWholeQuery() {
+        UrlNormalizer withoutQuery = new UrlNormalizer(true, null);
+
+        assertThat(withoutQuery.normalize("/list/?page=2#end")).isEqualTo("/list");
+    }
+
+    @Test
+    void onlySameHostBecomesSitePath() {
+        assertThat(normalizer.toSitePath("https://www.example.com/news/?utm_campaign=1", "example.com")).contains("/news");
+        assertThat(normalizer.toSitePath("https://EXAMPLE.com", "www.example.com")).contains("/");
+        assertThat(normalizer.toSitePath("https://other.com/news", "example.com")).isEmpty();
+        assertThat(normalizer.toSitePath("mailto:info@example.com", "example.com")).isEmpty();
+        assertThat(normalizer.toSitePath("not a url", "example.com")).isEmpty();
+    }
+
+    @Test
+    void joinAvoidsDoubleSlash() {
+        assertThat(UrlNormalizer.join("https://example.com/", "/news")).isEqualTo("https://example.com/news");
+        assertThat(UrlNormalizer.join("https://example.com", "/news")).isEqualTo("https://example.com/news");
+    }
+}